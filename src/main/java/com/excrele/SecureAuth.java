@@ -8,18 +8,24 @@ import com.excrele.auth.PasswordRecoveryManager;
 import com.excrele.auth.RateLimitManager;
 import com.excrele.auth.SessionManager;
 import com.excrele.auth.TwoFactorAuthManager;
+import com.excrele.cache.CacheManager;
 import com.excrele.commands.AdminCommandHandler;
 import com.excrele.commands.AuthCommandHandler;
 import com.excrele.commands.PlayerAccountCommandHandler;
 import com.excrele.config.ConfigManager;
+import com.excrele.database.AccountDao;
 import com.excrele.database.DatabaseManager;
 import com.excrele.listeners.PlayerEventListener;
+import com.excrele.placeholders.SecureAuthPlaceholders;
+import com.excrele.premium.PremiumLookupService;
 import com.excrele.security.IPFilterManager;
+import com.excrele.statistics.StatisticsManager;
 
 public class SecureAuth extends JavaPlugin {
     private ConfigManager configManager;
     private PasswordManager passwordManager;
     private DatabaseManager databaseManager;
+    private AccountDao accountDao;
     private SessionManager sessionManager;
     private RateLimitManager rateLimitManager;
     private IPFilterManager ipFilterManager;
@@ -27,6 +33,7 @@ public class SecureAuth extends JavaPlugin {
     private PasswordRecoveryManager passwordRecoveryManager;
     private StatisticsManager statisticsManager;
     private CacheManager cacheManager;
+    private PremiumLookupService premiumLookupService;
     private AuthManager authManager;
     private AuthCommandHandler commandHandler;
     private AdminCommandHandler adminCommandHandler;
@@ -45,8 +52,13 @@ public class SecureAuth extends JavaPlugin {
         passwordManager = new PasswordManager(configManager, this);
         getLogger().info("Password manager initialized (algorithm: " + configManager.getHashAlgorithm() + ")");
 
+        // Initialize cache manager (holds the account cache the database reads through)
+        cacheManager = new CacheManager(configManager, this);
+        getLogger().info("Cache manager initialized");
+
         // Initialize database
-        databaseManager = new DatabaseManager(configManager, this);
+        databaseManager = new DatabaseManager(configManager, cacheManager, this);
+        accountDao = new AccountDao(configManager, databaseManager, this);
         getLogger().info("Database manager initialized");
 
         // Initialize session manager
@@ -77,20 +89,19 @@ public class SecureAuth extends JavaPlugin {
         statisticsManager = new StatisticsManager(configManager, this);
         getLogger().info("Statistics manager initialized");
 
-        // Initialize cache manager
-        cacheManager = new CacheManager(this);
-        getLogger().info("Cache manager initialized");
+        // Initialize premium lookups
+        premiumLookupService = new PremiumLookupService(configManager, cacheManager, this);
 
         // Initialize auth manager
         authManager = new AuthManager(configManager, passwordManager, databaseManager,
-                                     sessionManager, rateLimitManager, ipFilterManager,
+                                     accountDao, sessionManager, rateLimitManager, ipFilterManager,
                                      twoFactorAuthManager, passwordRecoveryManager,
-                                     statisticsManager, cacheManager, this);
+                                     statisticsManager, premiumLookupService, this);
         getLogger().info("Auth manager initialized");
 
         // Register PlaceholderAPI expansion if available
         if (getServer().getPluginManager().getPlugin("PlaceholderAPI") != null) {
-            new SecureAuthPlaceholders(authManager, sessionManager, twoFactorAuthManager, statisticsManager).register();
+            new SecureAuthPlaceholders(authManager, sessionManager, statisticsManager).register();
             getLogger().info("PlaceholderAPI expansion registered!");
         }
 
@@ -108,19 +119,21 @@ public class SecureAuth extends JavaPlugin {
         
         // Initialize migration tool
         com.excrele.database.MigrationTool migrationTool = new com.excrele.database.MigrationTool(configManager, this, databaseManager);
+        migrationTool.startScheduledBackups();
         
         // Register admin commands
-        adminCommandHandler = new AdminCommandHandler(authManager, configManager, databaseManager,
+        adminCommandHandler = new AdminCommandHandler(authManager, passwordManager, configManager,
+                                                      databaseManager, accountDao,
                                                       ipFilterManager, twoFactorAuthManager,
                                                       passwordRecoveryManager, statisticsManager,
-                                                      migrationTool, this);
+                                                      cacheManager, premiumLookupService, migrationTool, this);
         if (this.getCommand("auth") != null) {
             this.getCommand("auth").setExecutor(adminCommandHandler);
             this.getCommand("auth").setTabCompleter(adminCommandHandler);
         }
         
         // Register player account commands
-        playerAccountCommandHandler = new PlayerAccountCommandHandler(authManager, sessionManager,
+        playerAccountCommandHandler = new PlayerAccountCommandHandler(authManager, accountDao, sessionManager,
                                                                      twoFactorAuthManager, configManager, this);
         if (this.getCommand("authinfo") != null) {
             this.getCommand("authinfo").setExecutor(playerAccountCommandHandler);
@@ -162,6 +175,18 @@ public class SecureAuth extends JavaPlugin {
             rateLimitManager.stop();
         }
 
+        if (premiumLookupService != null) {
+            premiumLookupService.shutdown();
+        }
+
+        if (passwordManager != null) {
+            passwordManager.shutdown();
+        }
+
+        if (accountDao != null) {
+            accountDao.shutdown();
+        }
+
         if (databaseManager != null) {
             databaseManager.close();
         }
@@ -0,0 +1,68 @@
+package com.excrele.auth;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the memory Argon2 calls hold at once.
+ *
+ * Every hash and verify allocates its m= cost in KiB (off-heap, or on the heap with the
+ * Java backend), so concurrent logins add up quickly. Each call takes its memory from
+ * a fixed budget before starting. It waits for running calls to release theirs, and
+ * fails with RejectedExecutionException if it can't start within the wait limit. A
+ * call needing more than the whole budget runs alone.
+ */
+class Argon2MemoryGovernor {
+    private final int budgetKib;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+    private final AtomicLong peakKib = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+
+    Argon2MemoryGovernor(int budgetKib, long maxWaitMs) {
+        this.budgetKib = Math.max(1, budgetKib);
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+        this.permits = new Semaphore(this.budgetKib, true); // Fair, so large calls are not starved by small ones
+    }
+
+    /**
+     * Reserve memory for one Argon2 call; pass the result to release afterwards
+     */
+    int acquire(int memoryKib) {
+        int kib = Math.max(1, Math.min(memoryKib, budgetKib));
+        try {
+            if (!permits.tryAcquire(kib, maxWaitMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new RejectedExecutionException("Argon2 memory budget of " + budgetKib + " KiB exhausted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for Argon2 memory", e);
+        }
+        peakKib.accumulateAndGet(getUsedKib(), Math::max);
+        return kib;
+    }
+
+    void release(int kib) {
+        permits.release(kib);
+    }
+
+    int getBudgetKib() {
+        return budgetKib;
+    }
+
+    long getUsedKib() {
+        return budgetKib - permits.availablePermits();
+    }
+
+    long getPeakKib() {
+        return peakKib.get();
+    }
+
+    long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -1,163 +1,122 @@
 package com.excrele.auth;
 
-import com.excrele.cache.CacheManager;
 import com.excrele.config.ConfigManager;
+import com.excrele.database.AccountDao;
+import com.excrele.database.AccountSnapshot;
 import com.excrele.database.DatabaseManager;
+import com.excrele.database.FileAccountStore;
+import com.excrele.premium.PremiumLookupService;
 import com.excrele.security.IPFilterManager;
 import com.excrele.statistics.StatisticsManager;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.io.UncheckedIOException;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
 public class AuthManager {
     private final ConfigManager config;
     private final PasswordManager passwordManager;
     private final DatabaseManager databaseManager;
+    private final AccountDao accountDao;
     private final SessionManager sessionManager;
     private final RateLimitManager rateLimitManager;
     private final IPFilterManager ipFilterManager;
     private final TwoFactorAuthManager twoFactorAuthManager;
     private final PasswordRecoveryManager passwordRecoveryManager;
     private final StatisticsManager statisticsManager;
-    private final CacheManager cacheManager;
+    private final PremiumLookupService premiumLookup;
     private final JavaPlugin plugin;
-    private File passwordFile; // For file-based storage (legacy)
+    private final Executor mainThread;
+    private final Set<UUID> pendingRequests = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> cacheLoads = ConcurrentHashMap.newKeySet(); // Background loads for the getCached* methods
 
     public AuthManager(ConfigManager config, PasswordManager passwordManager, 
-                      DatabaseManager databaseManager, SessionManager sessionManager,
+                      DatabaseManager databaseManager, AccountDao accountDao, SessionManager sessionManager,
                       RateLimitManager rateLimitManager, IPFilterManager ipFilterManager,
                       TwoFactorAuthManager twoFactorAuthManager, PasswordRecoveryManager passwordRecoveryManager,
-                      StatisticsManager statisticsManager, CacheManager cacheManager, JavaPlugin plugin) {
+                      StatisticsManager statisticsManager, PremiumLookupService premiumLookup, JavaPlugin plugin) {
         this.config = config;
         this.passwordManager = passwordManager;
         this.databaseManager = databaseManager;
+        this.accountDao = accountDao;
         this.sessionManager = sessionManager;
         this.rateLimitManager = rateLimitManager;
         this.ipFilterManager = ipFilterManager;
         this.twoFactorAuthManager = twoFactorAuthManager;
         this.passwordRecoveryManager = passwordRecoveryManager;
         this.statisticsManager = statisticsManager;
-        this.cacheManager = cacheManager;
+        this.premiumLookup = premiumLookup;
         this.plugin = plugin;
-        
-        if (databaseManager.isFileBased()) {
-            setupFileStorage();
-        }
+        this.mainThread = task -> Bukkit.getScheduler().runTask(plugin, task);
     }
 
-    private void setupFileStorage() {
-        passwordFile = new File(plugin.getDataFolder(), "passwords.txt");
-        if (!passwordFile.exists()) {
-            try {
-                plugin.getDataFolder().mkdirs();
-                passwordFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Failed to create passwords.txt", e);
-            }
-        }
+    /**
+     * Load the player's account into the account cache in the background, so the login
+     * that follows needs no further queries
+     */
+    public void loadAccount(UUID playerId) {
+        databaseManager.stopPreload();
+        accountDao.supply(() -> databaseManager.getAccountSnapshot(playerId));
     }
 
-    public boolean hasPassword(UUID playerId) {
+    /**
+     * Whether the player is registered, answered from memory only (the file store index
+     * or the account cache). On a cache miss it returns null and loads the account in
+     * the background, so a later call can answer.
+     */
+    public Boolean getCachedRegistration(UUID playerId) {
         if (databaseManager.isFileBased()) {
             return hasRegisteredPasswordFile(playerId);
         }
-        return databaseManager.hasPassword(playerId);
+        AccountSnapshot account = getCachedAccount(playerId);
+        return account != null ? account.isRegistered() : null;
     }
 
-    private boolean hasRegisteredPasswordFile(UUID playerId) {
-        try {
-            String content = new String(Files.readAllBytes(passwordFile.toPath()));
-            return content.contains(playerId.toString() + ":");
-        } catch (IOException e) {
-            return false;
+    /**
+     * Whether the player has 2FA set up, answered from memory only like
+     * {@link #getCachedRegistration}
+     */
+    public Boolean getCachedTwoFactor(UUID playerId) {
+        if (!twoFactorAuthManager.isEnabled() || databaseManager.isFileBased()) {
+            return false; // File storage has no 2FA
         }
+        AccountSnapshot account = getCachedAccount(playerId);
+        return account != null ? account.has2FA() : null;
     }
 
-    public String getPasswordHash(UUID playerId) {
-        if (databaseManager.isFileBased()) {
-            return getSavedHashFile(playerId);
-        }
-        return databaseManager.getPasswordHash(playerId);
-    }
-
-    private String getSavedHashFile(UUID playerId) {
-        try {
-            String content = new String(Files.readAllBytes(passwordFile.toPath()));
-            String[] lines = content.split("\n");
-            for (String line : lines) {
-                if (line.startsWith(playerId.toString() + ":")) {
-                    return line.split(":", 2)[1].trim();
-                }
-            }
-        } catch (IOException e) {
-            plugin.getLogger().warning("Couldn't read password file for " + playerId);
-        }
-        return null;
-    }
-
-    public void setPassword(UUID playerId, String password) {
-        String hashed = passwordManager.hashPassword(password);
-        
-        if (databaseManager.isFileBased()) {
-            updatePasswordFile(playerId, hashed);
-        } else {
-            databaseManager.setPassword(playerId, hashed);
+    private AccountSnapshot getCachedAccount(UUID playerId) {
+        AccountSnapshot account = databaseManager.getCachedAccountSnapshot(playerId);
+        if (account == null && cacheLoads.add(playerId)) {
+            accountDao.supply(() -> databaseManager.getAccountSnapshot(playerId))
+                .whenComplete((loaded, error) -> cacheLoads.remove(playerId));
         }
+        return account;
     }
 
-    private void updatePasswordFile(UUID playerId, String newHashedPass) {
-        try {
-            String content = new String(Files.readAllBytes(passwordFile.toPath()));
-            String[] lines = content.split("\n");
-            String playerLine = playerId.toString() + ":" + newHashedPass;
-            boolean found = false;
-
-            for (int i = 0; i < lines.length; i++) {
-                if (lines[i].startsWith(playerId.toString() + ":")) {
-                    lines[i] = playerLine;
-                    found = true;
-                    break;
-                }
-            }
-
-            if (!found) {
-                String[] newLines = new String[lines.length + 1];
-                System.arraycopy(lines, 0, newLines, 0, lines.length);
-                newLines[lines.length] = playerLine;
-                lines = newLines;
-            }
-
-            String newContent = String.join("\n", lines) + "\n";
-            Files.write(Paths.get(passwordFile.getPath()), newContent.getBytes(), 
-                       StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.WARNING, "Failed to update password for " + playerId, e);
-        }
-    }
-
-    public void appendPasswordFile(UUID playerId, String hashedPass) throws IOException {
-        String line = playerId.toString() + ":" + hashedPass + "\n";
-        Files.write(Paths.get(passwordFile.getPath()), line.getBytes(), 
-                   StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+    private boolean hasRegisteredPasswordFile(UUID playerId) {
+        FileAccountStore store = databaseManager.getFileStore();
+        return store != null && store.contains(playerId);
     }
 
-    public boolean register(Player player, String password, String repeatPassword) {
+    public CompletableFuture<Boolean> register(Player player, String password, String repeatPassword) {
         UUID playerId = player.getUniqueId();
         
         // Validation
         if (!password.equals(repeatPassword)) {
             player.sendMessage(config.getMessage("register-password-mismatch",
                 "&cPasswords don't match!"));
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         
         if (!passwordManager.isPasswordValid(password)) {
@@ -169,33 +128,55 @@ public class AuthManager {
             if (feedback != null && config.isComplexityRequired()) {
                 player.sendMessage("§c" + feedback);
             }
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         
-        if (hasPassword(playerId)) {
-            player.sendMessage(config.getMessage("register-already-registered",
-                "&cYou're already registered! Use /login instead."));
-            return false;
+        if (!beginRequest(player)) {
+            return CompletableFuture.completedFuture(false);
         }
         
-        // Register
-        setPassword(playerId, password);
-        sessionManager.setLoggedIn(playerId, true, getPlayerIp(player));
-        rateLimitManager.clearAttempts(playerId, getPlayerIp(player));
-        
-        // Record statistics
-        statisticsManager.recordRegistration();
-        
-        if (config.shouldLogLogins()) {
-            plugin.getLogger().info("Player " + player.getName() + " registered successfully");
-        }
-        
-        player.sendMessage(config.getMessage("register-success",
-            "&aRegistered successfully! You're now logged in."));
-        return true;
+        // Storage lookup runs on the database pool, hashing on the hashing pool
+        return accountDao.hasPassword(playerId)
+            .thenCompose(registered -> {
+                if (registered) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return passwordManager.hashAsync(password)
+                    .thenCompose(hashed -> accountDao.setPassword(playerId, hashed))
+                    .thenApply(ignored -> true);
+            })
+            .handleAsync((registered, error) -> {
+                pendingRequests.remove(playerId);
+                if (error != null) {
+                    return handleStorageError(player, "register", error);
+                }
+                if (!player.isOnline()) {
+                    return registered;
+                }
+                
+                if (!registered) {
+                    player.sendMessage(config.getMessage("register-already-registered",
+                        "&cYou're already registered! Use /login instead."));
+                    return false;
+                }
+                
+                sessionManager.setLoggedIn(playerId, true, getPlayerIp(player));
+                rateLimitManager.clearAttempts(playerId, getPlayerIp(player));
+                
+                // Record statistics
+                statisticsManager.recordRegistration();
+                
+                if (config.shouldLogLogins()) {
+                    plugin.getLogger().info("Player " + player.getName() + " registered successfully");
+                }
+                
+                player.sendMessage(config.getMessage("register-success",
+                    "&aRegistered successfully! You're now logged in."));
+                return true;
+            }, mainThread);
     }
 
-    public boolean login(Player player, String password) {
+    public CompletableFuture<Boolean> login(Player player, String password) {
         UUID playerId = player.getUniqueId();
         String ip = getPlayerIp(player);
         
@@ -205,14 +186,7 @@ public class AuthManager {
             if (config.shouldLogFailedAttempts()) {
                 plugin.getLogger().warning("Blacklisted IP " + ip + " attempted login from " + player.getName());
             }
-            return false;
-        }
-        
-        // Check if registered
-        if (!hasPassword(playerId)) {
-            player.sendMessage(config.getMessage("login-not-registered",
-                "&cYou're not registered! Use /register first."));
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         
         // Check IP lockout (skip if whitelisted)
@@ -222,7 +196,7 @@ public class AuthManager {
                 player.sendMessage(config.getMessage("login-ip-locked",
                     "&cYour IP is locked out! Wait {minutes} more minutes.")
                     .replace("{minutes}", String.valueOf(remaining)));
-                return false;
+                return CompletableFuture.completedFuture(false);
             }
         }
         
@@ -232,103 +206,150 @@ public class AuthManager {
             player.sendMessage(config.getMessage("login-locked-out",
                 "&cYou're locked out! Wait {minutes} more minutes.")
                 .replace("{minutes}", String.valueOf(remaining)));
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         
-        // Verify password
-        String savedHash = getPasswordHash(playerId);
-        if (savedHash != null && passwordManager.verifyPassword(password, savedHash)) {
-            // Check 2FA if enabled
-            if (twoFactorAuthManager.isEnabled() && twoFactorAuthManager.has2FAEnabled(playerId)) {
+        if (!beginRequest(player)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        // Fetch and verify the hash (and the 2FA secret if needed) off the main thread
+        return accountDao.getPasswordHash(playerId)
+            .thenCompose(savedHash -> {
+                if (savedHash == null) {
+                    return CompletableFuture.completedFuture(LoginResult.NOT_REGISTERED);
+                }
+                return passwordManager.verifyAsync(password, savedHash).thenCompose(matches -> {
+                    if (!matches) {
+                        return CompletableFuture.completedFuture(LoginResult.WRONG_PASSWORD);
+                    }
+                    if (passwordManager.needsRehash(savedHash)) {
+                        upgradeHash(playerId, password, savedHash);
+                    }
+                    if (!twoFactorAuthManager.isEnabled()) {
+                        return CompletableFuture.completedFuture(LoginResult.SUCCESS);
+                    }
+                    return accountDao.get2FASecret(playerId).thenApply(secret ->
+                        secret != null && !secret.isEmpty() ? LoginResult.NEEDS_2FA : LoginResult.SUCCESS);
+                });
+            })
+            .handleAsync((result, error) -> {
+                pendingRequests.remove(playerId);
+                if (error != null) {
+                    return handleStorageError(player, "login", error);
+                }
+                if (!player.isOnline()) {
+                    return false;
+                }
+                return completeLogin(player, ip, result);
+            }, mainThread);
+    }
+
+    /**
+     * Replace a hash made with outdated settings while the plaintext is at hand. Runs
+     * after the login answer and is skipped if the hashing pool is busy; the next login
+     * tries again. The new hash replaces the old one only if it is still stored, in one
+     * conditional write, so a password changed in the meantime is kept.
+     */
+    private void upgradeHash(UUID playerId, String password, String oldHash) {
+        passwordManager.hashAsync(password)
+            .thenCompose(newHash -> accountDao.replacePasswordHash(playerId, oldHash, newHash))
+            .whenComplete((upgraded, error) -> {
+                if (error == null && upgraded) {
+                    passwordManager.recordRehash();
+                } else if (error != null && !(error.getCause() instanceof RejectedExecutionException)) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to upgrade the password hash of " + playerId, error);
+                }
+            });
+    }
+
+    private enum LoginResult {
+        SUCCESS, NEEDS_2FA, WRONG_PASSWORD, NOT_REGISTERED
+    }
+
+    private boolean completeLogin(Player player, String ip, LoginResult result) {
+        UUID playerId = player.getUniqueId();
+        
+        switch (result) {
+            case NOT_REGISTERED:
+                player.sendMessage(config.getMessage("login-not-registered",
+                    "&cYou're not registered! Use /register first."));
+                return false;
+            
+            case NEEDS_2FA:
                 // 2FA verification will be handled separately via command
                 // For now, we'll require 2FA code in a separate step
                 player.sendMessage("§e[SecureAuth] Please verify your 2FA code with /2faverify <code>");
                 // Don't log in yet, wait for 2FA
                 return false;
-            }
-            
-            sessionManager.setLoggedIn(playerId, true);
-            // Only clear attempts if not whitelisted (whitelisted IPs bypass rate limiting)
-            if (!ipFilterManager.isWhitelisted(ip)) {
-                rateLimitManager.clearAttempts(playerId, ip);
-            }
-            
-            // Record statistics
-            statisticsManager.recordLogin(playerId);
             
-            // Invalidate password cache on successful login
-            cacheManager.invalidatePasswordHash(playerId);
-            
-            if (config.shouldLogLogins()) {
-                plugin.getLogger().info("Player " + player.getName() + " logged in successfully");
-            }
-            
-            player.sendMessage(config.getMessage("login-success",
-                "&aLogin successful! Welcome back."));
-            return true;
-        } else {
-            // Failed attempt (skip rate limiting for whitelisted IPs)
-            if (!ipFilterManager.isWhitelisted(ip)) {
-                rateLimitManager.recordFailedAttempt(playerId, ip);
-            }
-            
-            // Record statistics
-            statisticsManager.recordFailedAttempt();
-            int attempts = rateLimitManager.getAttemptCount(playerId);
-            int maxAttempts = config.getMaxAttempts();
-            
-            if (config.shouldLogFailedAttempts()) {
-                plugin.getLogger().warning("Failed login attempt for " + player.getName() + 
-                    " (IP: " + ip + ") - Attempts: " + attempts + "/" + maxAttempts);
-            }
-            
-            if (rateLimitManager.isLockedOut(playerId)) {
-                player.sendMessage(config.getMessage("login-locked-out",
-                    "&cToo many wrong tries! Locked for " + config.getLockoutDurationMinutes() + " minutes."));
-            } else {
-                player.sendMessage(config.getMessage("login-wrong-password",
-                    "&cWrong password! Attempts: {attempts}/{max}")
-                    .replace("{attempts}", String.valueOf(attempts))
-                    .replace("{max}", String.valueOf(maxAttempts)));
-            }
-            
-            if (config.isIpLimitsEnabled() && rateLimitManager.isIpLockedOut(ip)) {
-                player.sendMessage("§cToo many tries from your IP! Locked for " + 
-                    config.getLockoutDurationMinutes() + " minutes.");
-            }
+            case SUCCESS:
+                sessionManager.setLoggedIn(playerId, true);
+                // Only clear attempts if not whitelisted (whitelisted IPs bypass rate limiting)
+                if (!ipFilterManager.isWhitelisted(ip)) {
+                    rateLimitManager.clearAttempts(playerId, ip);
+                }
+                
+                // Record statistics
+                statisticsManager.recordLogin(playerId);
+                
+                if (config.shouldLogLogins()) {
+                    plugin.getLogger().info("Player " + player.getName() + " logged in successfully");
+                }
+                
+                player.sendMessage(config.getMessage("login-success",
+                    "&aLogin successful! Welcome back."));
+                return true;
             
-            return false;
+            default:
+                // Failed attempt (skip rate limiting for whitelisted IPs)
+                if (!ipFilterManager.isWhitelisted(ip)) {
+                    rateLimitManager.recordFailedAttempt(playerId, ip);
+                }
+                
+                // Record statistics
+                statisticsManager.recordFailedAttempt();
+                int attempts = rateLimitManager.getAttemptCount(playerId);
+                int maxAttempts = config.getMaxAttempts();
+                
+                if (config.shouldLogFailedAttempts()) {
+                    plugin.getLogger().warning("Failed login attempt for " + player.getName() + 
+                        " (IP: " + ip + ") - Attempts: " + attempts + "/" + maxAttempts);
+                }
+                
+                if (rateLimitManager.isLockedOut(playerId)) {
+                    player.sendMessage(config.getMessage("login-locked-out",
+                        "&cToo many wrong tries! Locked for " + config.getLockoutDurationMinutes() + " minutes."));
+                } else {
+                    player.sendMessage(config.getMessage("login-wrong-password",
+                        "&cWrong password! Attempts: {attempts}/{max}")
+                        .replace("{attempts}", String.valueOf(attempts))
+                        .replace("{max}", String.valueOf(maxAttempts)));
+                }
+                
+                if (config.isIpLimitsEnabled() && rateLimitManager.isIpLockedOut(ip)) {
+                    player.sendMessage("§cToo many tries from your IP! Locked for " + 
+                        config.getLockoutDurationMinutes() + " minutes.");
+                }
+                
+                return false;
         }
     }
 
-    public boolean changePassword(Player player, String oldPassword, String newPassword, String repeatNewPassword) {
+    public CompletableFuture<Boolean> changePassword(Player player, String oldPassword, String newPassword, String repeatNewPassword) {
         UUID playerId = player.getUniqueId();
         
         if (!sessionManager.isLoggedIn(playerId)) {
             player.sendMessage(config.getMessage("changepass-not-logged-in",
                 "&cYou must be logged in to change your password!"));
-            return false;
-        }
-        
-        if (!hasPassword(playerId)) {
-            player.sendMessage(config.getMessage("changepass-not-registered",
-                "&cYou're not registered!"));
-            return false;
-        }
-        
-        // Verify old password
-        String savedHash = getPasswordHash(playerId);
-        if (savedHash == null || !passwordManager.verifyPassword(oldPassword, savedHash)) {
-            player.sendMessage(config.getMessage("changepass-wrong-old",
-                "&cWrong old password!"));
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         
         // Validate new password
         if (!newPassword.equals(repeatNewPassword)) {
             player.sendMessage(config.getMessage("register-password-mismatch",
                 "&cNew passwords don't match!"));
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         
         if (!passwordManager.isPasswordValid(newPassword)) {
@@ -336,53 +357,130 @@ public class AuthManager {
             player.sendMessage(config.getMessage("register-password-too-short",
                 "&cNew password must be at least {min} characters!")
                 .replace("{min}", String.valueOf(minLength)));
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         
-        // Update password
-        setPassword(playerId, newPassword);
-        sessionManager.updateActivity(playerId);
-        
-        // Invalidate cache
-        cacheManager.invalidatePasswordHash(playerId);
-        
-        // Record statistics
-        statisticsManager.recordPasswordChange();
-        
-        if (config.shouldLogPasswordChanges()) {
-            plugin.getLogger().info("Player " + player.getName() + " changed their password");
+        if (!beginRequest(player)) {
+            return CompletableFuture.completedFuture(false);
         }
         
-        player.sendMessage(config.getMessage("changepass-success",
-            "&aPassword changed successfully!"));
-        return true;
+        // Verify old password and store the new one off the main thread
+        return accountDao.getPasswordHash(playerId)
+            .thenCompose(savedHash -> {
+                if (savedHash == null) {
+                    return CompletableFuture.completedFuture("changepass-not-registered");
+                }
+                return passwordManager.verifyAsync(oldPassword, savedHash).thenCompose(matches -> {
+                    if (!matches) {
+                        return CompletableFuture.completedFuture("changepass-wrong-old");
+                    }
+                    return passwordManager.hashAsync(newPassword)
+                        .thenCompose(hashed -> accountDao.setPassword(playerId, hashed))
+                        .thenApply(ignored -> (String) null);
+                });
+            })
+            .handleAsync((failureKey, error) -> {
+                pendingRequests.remove(playerId);
+                if (error != null) {
+                    return handleStorageError(player, "change password", error);
+                }
+                if (!player.isOnline()) {
+                    return failureKey == null;
+                }
+                
+                if ("changepass-not-registered".equals(failureKey)) {
+                    player.sendMessage(config.getMessage("changepass-not-registered",
+                        "&cYou're not registered!"));
+                    return false;
+                }
+                if ("changepass-wrong-old".equals(failureKey)) {
+                    player.sendMessage(config.getMessage("changepass-wrong-old",
+                        "&cWrong old password!"));
+                    return false;
+                }
+                
+                sessionManager.updateActivity(playerId);
+                
+                // Record statistics
+                statisticsManager.recordPasswordChange();
+                
+                if (config.shouldLogPasswordChanges()) {
+                    plugin.getLogger().info("Player " + player.getName() + " changed their password");
+                }
+                
+                player.sendMessage(config.getMessage("changepass-success",
+                    "&aPassword changed successfully!"));
+                return true;
+            }, mainThread);
     }
 
-    public void setPasswordAdmin(Player targetPlayer, String newPassword) {
+    public CompletableFuture<Boolean> setPasswordAdmin(Player targetPlayer, String newPassword) {
         UUID targetId = targetPlayer.getUniqueId();
         String ip = getPlayerIp(targetPlayer);
         
         if (!passwordManager.isPasswordValid(newPassword)) {
-            return; // Validation should be done before calling this
+            return CompletableFuture.completedFuture(false); // Validation should be done before calling this
         }
         
-        setPassword(targetId, newPassword);
-        sessionManager.setLoggedIn(targetId, false);
-        rateLimitManager.clearAttempts(targetId, ip);
-        
-        if (config.shouldLogAdminActions()) {
-            plugin.getLogger().info("Admin reset password for " + targetPlayer.getName());
+        return passwordManager.hashAsync(newPassword)
+            .thenCompose(hashed -> accountDao.setPassword(targetId, hashed))
+            .handleAsync((ignored, error) -> {
+                if (error != null) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to reset password for " + targetPlayer.getName(), error);
+                    return false;
+                }
+                
+                sessionManager.setLoggedIn(targetId, false);
+                rateLimitManager.clearAttempts(targetId, ip);
+                
+                if (config.shouldLogAdminActions()) {
+                    plugin.getLogger().info("Admin reset password for " + targetPlayer.getName());
+                }
+                
+                if (targetPlayer.isOnline()) {
+                    targetPlayer.sendMessage(config.getMessage("setpass-success",
+                        "&eYour password was reset by an admin! Log in with the new one to play.")
+                        .replace("{player}", targetPlayer.getName()));
+                }
+                return true;
+            }, mainThread);
+    }
+
+    /**
+     * Allow one in-flight storage request per player so command spam can't queue up work
+     */
+    private boolean beginRequest(Player player) {
+        if (!pendingRequests.add(player.getUniqueId())) {
+            player.sendMessage(config.getMessage("auth-pending",
+                "&ePlease wait, your previous request is still being processed."));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Log a failed storage or hashing call and tell the player to try again
+     *
+     * @return false, the result of the failed action
+     */
+    public boolean handleStorageError(Player player, String action, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException || cause instanceof RejectedExecutionException) {
+            plugin.getLogger().warning("Storage or hashing too busy to " + action + " for " + player.getName() +
+                " (" + cause.getClass().getSimpleName() + ")");
+        } else {
+            plugin.getLogger().log(Level.WARNING, "Failed to " + action + " for " + player.getName(), cause);
         }
         
-        targetPlayer.sendMessage(config.getMessage("setpass-success",
-            "&eYour password was reset by an admin! Log in with the new one to play.")
-            .replace("{player}", targetPlayer.getName()));
+        if (player.isOnline()) {
+            player.sendMessage(config.getMessage("auth-busy",
+                "&cThe server is busy, please try again in a moment."));
+        }
+        return false;
     }
 
     public CompletableFuture<Boolean> checkPremiumAndHandle(Player player) {
-        String username = player.getName().toLowerCase();
-        
-        return CompletableFuture.supplyAsync(() -> isPremiumUser(username))
+        return premiumLookup.isPremium(player)
             .thenApply(isPremium -> {
                 Bukkit.getScheduler().runTask(plugin, () -> {
                     UUID playerId = player.getUniqueId();
@@ -394,77 +492,62 @@ public class AuthManager {
                         player.sendMessage(config.getMessage("premium-auto-login",
                             "&aWelcome, premium player! Auto-logged in."));
                     } else {
-                        if (hasPassword(playerId)) {
-                            player.sendMessage(config.getMessage("welcome-registered",
-                                "&ePlease login with /login <password>"));
-                        } else {
-                            player.sendMessage(config.getMessage("welcome-cracked",
-                                "&eWelcome! Please register with /register <password> <repeat>"));
-                        }
-                        sessionManager.setLoggedIn(playerId, false);
+                        sendLoginPrompt(player);
                     }
                 });
                 return isPremium;
             });
     }
 
-    private boolean isPremiumUser(String username) {
-        // Check cache first
-        Boolean cached = cacheManager.getPremiumStatus(username);
-        if (cached != null) {
-            return cached;
-        }
+    /**
+     * Log the player out and tell them to /login or /register once storage has answered
+     */
+    public void sendLoginPrompt(Player player) {
+        UUID playerId = player.getUniqueId();
+        sessionManager.setLoggedIn(playerId, false);
         
-        try {
-            java.net.URI uri = new java.net.URI("https://api.mojang.com/users/profiles/minecraft/" + username);
-            java.net.URL url = uri.toURL();
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(config.getApiTimeoutMs());
-            conn.setReadTimeout(config.getApiTimeoutMs());
-            int responseCode = conn.getResponseCode();
-            boolean isPremium = responseCode == 200;
-            
-            // Cache the result
-            cacheManager.setPremiumStatus(username, isPremium);
-            
-            return isPremium;
-        } catch (Exception e) {
-            plugin.getLogger().warning("Premium check failed for " + username + ": " + e.getMessage());
-            boolean isPremium = !config.isFailSafeCracked(); // Return false if fail-safe is cracked
-            cacheManager.setPremiumStatus(username, isPremium);
-            return isPremium;
-        }
+        accountDao.hasPassword(playerId).whenCompleteAsync((registered, error) -> {
+            if (!player.isOnline()) {
+                return;
+            }
+            if (error != null) {
+                handleStorageError(player, "check registration", error);
+            } else if (registered) {
+                player.sendMessage(config.getMessage("welcome-registered",
+                    "&ePlease login with /login <password>"));
+            } else {
+                player.sendMessage(config.getMessage("welcome-cracked",
+                    "&eWelcome! Please register with /register <password> <repeat>"));
+            }
+        }, mainThread);
     }
 
-    public void deleteAccount(UUID playerId) {
-        if (databaseManager.isFileBased()) {
-            // Delete from file
-            try {
-                String content = new String(Files.readAllBytes(passwordFile.toPath()));
-                String[] lines = content.split("\n");
-                StringBuilder newContent = new StringBuilder();
-                for (String line : lines) {
-                    if (!line.startsWith(playerId.toString() + ":")) {
-                        newContent.append(line).append("\n");
+    /**
+     * Delete the account on the database pool; the session is cleared on the main thread
+     * once storage has answered
+     */
+    public CompletableFuture<Void> deleteAccount(UUID playerId) {
+        boolean twoFactor = twoFactorAuthManager.isEnabled();
+        return accountDao.<Void>supply(() -> {
+            if (databaseManager.isFileBased()) {
+                FileAccountStore store = databaseManager.getFileStore();
+                if (store != null) {
+                    try {
+                        store.remove(playerId);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
                 }
-                Files.write(Paths.get(passwordFile.getPath()), newContent.toString().getBytes(),
-                           StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
-            } catch (IOException e) {
-                plugin.getLogger().warning("Failed to delete account from file: " + e.getMessage());
+                return null;
             }
-        } else {
+            
             databaseManager.deletePassword(playerId);
-        }
-        
-        // Clear 2FA if exists
-        if (twoFactorAuthManager.isEnabled() && twoFactorAuthManager.has2FAEnabled(playerId)) {
-            twoFactorAuthManager.disable2FA(playerId);
-        }
-        
-        // Clear session
-        sessionManager.removePlayer(playerId);
+            // Clear 2FA if exists
+            if (twoFactor && databaseManager.get2FASecret(playerId) != null) {
+                databaseManager.delete2FASecret(playerId);
+            }
+            return null;
+        }).whenCompleteAsync((ignored, error) -> sessionManager.removePlayer(playerId), mainThread);
     }
 
     private String getPlayerIp(Player player) {
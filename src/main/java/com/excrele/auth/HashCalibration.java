@@ -0,0 +1,224 @@
+package com.excrele.auth;
+
+import com.excrele.config.ConfigManager;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Picks hashing cost settings for this machine by timing real hashes.
+ *
+ * The budget per hash is the configured target latency, lowered further if the hashing
+ * pool could not otherwise reach the configured hashes per second. BCrypt gets the
+ * highest cost factor that fits; Argon2 keeps the configured memory (halved towards
+ * the floor only if even the minimum iterations are too slow) and gets the most
+ * iterations that fit. Settings never go below the configured safety floor, even if
+ * that misses the budget. The result is kept in hash-calibration.yml and reused until
+ * the hardware or the calibration settings change.
+ */
+class HashCalibration {
+    private static final int MAX_BCRYPT_COST = 20;
+    private static final int MAX_ARGON2_ITERATIONS = 20;
+    private static final int SAMPLES = 3;
+
+    /**
+     * Calibrated cost settings
+     */
+    static final class Result {
+        private final String algorithm;
+        private final int bcryptCost;
+        private final int argon2Memory;
+        private final int argon2Iterations;
+        private final int argon2Parallelism;
+        private final double millis;
+
+        Result(String algorithm, int bcryptCost, int argon2Memory, int argon2Iterations, int argon2Parallelism,
+               double millis) {
+            this.algorithm = algorithm;
+            this.bcryptCost = bcryptCost;
+            this.argon2Memory = argon2Memory;
+            this.argon2Iterations = argon2Iterations;
+            this.argon2Parallelism = argon2Parallelism;
+            this.millis = millis;
+        }
+
+        String getAlgorithm() {
+            return algorithm;
+        }
+
+        int getBcryptCost() {
+            return bcryptCost;
+        }
+
+        int getArgon2Memory() {
+            return argon2Memory;
+        }
+
+        int getArgon2Iterations() {
+            return argon2Iterations;
+        }
+
+        int getArgon2Parallelism() {
+            return argon2Parallelism;
+        }
+
+        /**
+         * Measured time of one hash with these settings
+         */
+        double getMillis() {
+            return millis;
+        }
+    }
+
+    /**
+     * Times one hash with the given settings (BCrypt uses only the cost)
+     */
+    interface Hasher {
+        void hash(String algorithm, int bcryptCost, int argon2Memory, int argon2Iterations, int argon2Parallelism,
+                  String password);
+    }
+
+    private final ConfigManager config;
+    private final JavaPlugin plugin;
+    private final File file;
+    private final int threads;
+
+    HashCalibration(ConfigManager config, int threads, JavaPlugin plugin) {
+        this.config = config;
+        this.plugin = plugin;
+        this.threads = threads;
+        this.file = new File(plugin.getDataFolder(), "hash-calibration.yml");
+    }
+
+    /**
+     * Time per hash the calibration aims for
+     */
+    long getBudgetMs() {
+        long budget = Math.max(1, config.getHashCalibrationTargetMs());
+        int rate = config.getHashCalibrationMinHashesPerSecond();
+        if (rate > 0) {
+            budget = Math.min(budget, Math.max(1, threads * 1000L / rate));
+        }
+        return budget;
+    }
+
+    /**
+     * Everything the result depends on; a saved result for other settings is stale
+     */
+    private String fingerprint(String algorithm) {
+        return algorithm + "|" + getBudgetMs() + "|" + config.getHashCalibrationMinBcryptCost() + "|" +
+            config.getHashCalibrationMinArgon2Iterations() + "|" + config.getHashCalibrationMinArgon2Memory() + "|" +
+            config.getArgon2Memory() + "|" + config.getArgon2Parallelism() + "|" +
+            Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The saved result, or null if there is none for the current settings
+     */
+    Result load(String algorithm) {
+        if (!file.exists()) {
+            return null;
+        }
+        FileConfiguration saved = YamlConfiguration.loadConfiguration(file);
+        if (!fingerprint(algorithm).equals(saved.getString("settings", ""))) {
+            return null;
+        }
+        return new Result(algorithm, saved.getInt("bcrypt-cost", config.getBcryptCostFactor()),
+            saved.getInt("argon2-memory", config.getArgon2Memory()),
+            saved.getInt("argon2-iterations", config.getArgon2Iterations()),
+            saved.getInt("argon2-parallelism", config.getArgon2Parallelism()), saved.getDouble("millis", 0));
+    }
+
+    private void save(Result result) {
+        FileConfiguration saved = new YamlConfiguration();
+        saved.set("settings", fingerprint(result.getAlgorithm()));
+        saved.set("bcrypt-cost", result.getBcryptCost());
+        saved.set("argon2-memory", result.getArgon2Memory());
+        saved.set("argon2-iterations", result.getArgon2Iterations());
+        saved.set("argon2-parallelism", result.getArgon2Parallelism());
+        saved.set("millis", result.getMillis());
+        saved.set("calibrated-at", System.currentTimeMillis());
+        try {
+            saved.save(file);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to save " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Time hashes on this machine and save the strongest settings that fit the budget
+     */
+    Result run(String algorithm, Hasher hasher) {
+        long budget = getBudgetMs();
+        Result result = "argon2".equals(algorithm) ? calibrateArgon2(hasher, budget) : calibrateBcrypt(hasher, budget);
+        if (result.getMillis() > budget) {
+            plugin.getLogger().warning("Hash calibration: even the minimum settings take " +
+                String.format("%.0f", result.getMillis()) + "ms, over the " + budget + "ms budget; keeping the minimum");
+        }
+        save(result);
+        return result;
+    }
+
+    private Result calibrateBcrypt(Hasher hasher, long budget) {
+        int cost = Math.max(4, Math.min(MAX_BCRYPT_COST, config.getHashCalibrationMinBcryptCost()));
+        hasher.hash("bcrypt", 4, 0, 0, 0, "warmup"); // Load and JIT the code outside the timings
+        double millis = time(hasher, "bcrypt", cost, 0, 0, 0);
+        // Each step doubles the work, so stop as soon as one step no longer fits
+        while (cost < MAX_BCRYPT_COST && millis * 2 <= budget * 1.2) {
+            double next = time(hasher, "bcrypt", cost + 1, 0, 0, 0);
+            if (next > budget) {
+                break;
+            }
+            cost++;
+            millis = next;
+        }
+        return new Result("bcrypt", cost, config.getArgon2Memory(), config.getArgon2Iterations(),
+            config.getArgon2Parallelism(), millis);
+    }
+
+    private Result calibrateArgon2(Hasher hasher, long budget) {
+        int minMemory = Math.max(8, config.getHashCalibrationMinArgon2Memory());
+        int memory = Math.max(minMemory, config.getArgon2Memory());
+        int iterations = Math.max(1, config.getHashCalibrationMinArgon2Iterations());
+        int parallelism = Math.max(1, config.getArgon2Parallelism());
+        hasher.hash("argon2", 0, minMemory, 1, parallelism, "warmup");
+
+        double millis = time(hasher, "argon2", 0, memory, iterations, parallelism);
+        while (millis > budget && memory / 2 >= minMemory) {
+            memory /= 2;
+            millis = time(hasher, "argon2", 0, memory, iterations, parallelism);
+        }
+        while (millis <= budget && iterations < MAX_ARGON2_ITERATIONS) {
+            double next = time(hasher, "argon2", 0, memory, iterations + 1, parallelism);
+            if (next > budget) {
+                break;
+            }
+            iterations++;
+            millis = next;
+        }
+        return new Result("argon2", config.getBcryptCostFactor(), memory, iterations, parallelism, millis);
+    }
+
+    /**
+     * Median time of a few hashes, in milliseconds
+     */
+    private static double time(Hasher hasher, String algorithm, int bcryptCost, int argon2Memory,
+                               int argon2Iterations, int argon2Parallelism) {
+        SecureRandom random = new SecureRandom();
+        double[] samples = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            String password = Long.toHexString(random.nextLong());
+            long started = System.nanoTime();
+            hasher.hash(algorithm, bcryptCost, argon2Memory, argon2Iterations, argon2Parallelism, password);
+            samples[i] = (System.nanoTime() - started) / 1_000_000.0;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+}
@@ -0,0 +1,453 @@
+package com.excrele.auth;
+
+import de.mkammerer.argon2.Argon2Factory.Argon2Types;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Argon2 (RFC 9106) in plain Java, as an alternative to the native library that
+ * argon2-jvm calls through JNA.
+ *
+ * It needs no native library and skips the JNA marshalling on every call, but the
+ * memory cost is allocated on the heap instead of off-heap. Produces and reads the same
+ * encoded strings as libargon2 ("$argon2id$v=19$m=...,t=...,p=...$salt$hash", 16-byte
+ * salt, 32-byte hash, as argon2-jvm uses), so hashes from either backend verify with
+ * the other. Lanes are filled one after the other on the calling thread; the hashing
+ * pool already runs several hashes in parallel.
+ */
+final class JavaArgon2 {
+    private static final int VERSION = 0x13;
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+    private static final int BLOCK_WORDS = 128; // 1 KiB blocks of 64-bit words
+    private static final int SYNC_POINTS = 4;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private JavaArgon2() {
+    }
+
+    static String hash(Argon2Types type, int iterations, int memoryKib, int parallelism, String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        byte[] pwd = password.getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] tag = compute(type, VERSION, iterations, memoryKib, parallelism, pwd, salt, HASH_LENGTH);
+            Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+            return "$" + typeName(type) + "$v=" + VERSION + "$m=" + memoryKib + ",t=" + iterations + ",p=" + parallelism +
+                "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(tag);
+        } finally {
+            Arrays.fill(pwd, (byte) 0);
+        }
+    }
+
+    /**
+     * Check a password against an encoded hash; false if the hash can't be parsed
+     */
+    static boolean verify(String encoded, String password) {
+        // $argon2id$v=19$m=65536,t=3,p=4$salt$hash (libargon2 also writes hashes without v=, meaning 0x10)
+        String[] fields = encoded.split("\\$");
+        if (fields.length != 5 && fields.length != 6) {
+            return false;
+        }
+        Argon2Types type = typeOf(fields[1]);
+        int offset = fields.length == 6 ? 1 : 0;
+        if (type == null || (offset == 1 && !fields[2].startsWith("v="))) {
+            return false;
+        }
+        byte[] pwd = password.getBytes(StandardCharsets.UTF_8);
+        try {
+            int version = offset == 1 ? Integer.parseInt(fields[2].substring(2)) : 0x10;
+            int memory = 0;
+            int iterations = 0;
+            int parallelism = 0;
+            for (String parameter : fields[2 + offset].split(",")) {
+                int value = Integer.parseInt(parameter.substring(2));
+                if (parameter.startsWith("m=")) {
+                    memory = value;
+                } else if (parameter.startsWith("t=")) {
+                    iterations = value;
+                } else if (parameter.startsWith("p=")) {
+                    parallelism = value;
+                }
+            }
+            byte[] salt = Base64.getDecoder().decode(fields[3 + offset]);
+            byte[] expected = Base64.getDecoder().decode(fields[4 + offset]);
+            if ((version != 0x10 && version != VERSION) || iterations < 1 || parallelism < 1 || memory < 8 * parallelism ||
+                expected.length < 4) {
+                return false;
+            }
+            byte[] actual = compute(type, version, iterations, memory, parallelism, pwd, salt, expected.length);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false; // Malformed number or base64
+        } finally {
+            Arrays.fill(pwd, (byte) 0);
+        }
+    }
+
+    private static String typeName(Argon2Types type) {
+        switch (type) {
+            case ARGON2d:
+                return "argon2d";
+            case ARGON2id:
+                return "argon2id";
+            default:
+                return "argon2i";
+        }
+    }
+
+    private static Argon2Types typeOf(String name) {
+        switch (name) {
+            case "argon2d":
+                return Argon2Types.ARGON2d;
+            case "argon2i":
+                return Argon2Types.ARGON2i;
+            case "argon2id":
+                return Argon2Types.ARGON2id;
+            default:
+                return null;
+        }
+    }
+
+    private static int typeId(Argon2Types type) {
+        switch (type) {
+            case ARGON2d:
+                return 0;
+            case ARGON2id:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    static byte[] compute(Argon2Types type, int version, int iterations, int memoryKib, int parallelism,
+                          byte[] password, byte[] salt, int tagLength) {
+        int typeId = typeId(type);
+        int lanes = parallelism;
+        int blockCount = Math.max(memoryKib, 2 * SYNC_POINTS * lanes);
+        int segmentLength = blockCount / (lanes * SYNC_POINTS);
+        int laneLength = segmentLength * SYNC_POINTS;
+        blockCount = laneLength * lanes;
+
+        Blake2b h0 = new Blake2b(64);
+        h0.updateInt(lanes).updateInt(tagLength).updateInt(memoryKib).updateInt(iterations).updateInt(version)
+            .updateInt(typeId).updateInt(password.length).update(password).updateInt(salt.length).update(salt)
+            .updateInt(0).updateInt(0); // No secret, no associated data
+        byte[] initial = Arrays.copyOf(h0.digest(), 72);
+
+        long[] memory = new long[blockCount * BLOCK_WORDS];
+        for (int lane = 0; lane < lanes; lane++) {
+            for (int i = 0; i < 2; i++) {
+                writeInt(initial, 64, i);
+                writeInt(initial, 68, lane);
+                byte[] block = variableHash(initial, BLOCK_WORDS * 8);
+                int base = (lane * laneLength + i) * BLOCK_WORDS;
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    memory[base + w] = readLong(block, w * 8);
+                }
+            }
+        }
+
+        long[][] scratch = {new long[BLOCK_WORDS], new long[BLOCK_WORDS]};
+        long[] addresses = new long[BLOCK_WORDS];
+        long[] input = new long[BLOCK_WORDS];
+        long[] zero = new long[BLOCK_WORDS];
+        for (int pass = 0; pass < iterations; pass++) {
+            for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    boolean independent = typeId == 1 || (typeId == 2 && pass == 0 && slice < SYNC_POINTS / 2);
+                    int start = 0;
+                    if (independent) {
+                        Arrays.fill(input, 0);
+                        input[0] = pass;
+                        input[1] = lane;
+                        input[2] = slice;
+                        input[3] = blockCount;
+                        input[4] = iterations;
+                        input[5] = typeId;
+                    }
+                    if (pass == 0 && slice == 0) {
+                        start = 2; // The first two blocks of each lane are already filled
+                        if (independent) {
+                            nextAddresses(addresses, input, zero, scratch);
+                        }
+                    }
+
+                    int current = lane * laneLength + slice * segmentLength + start;
+                    int previous = current % laneLength == 0 ? current + laneLength - 1 : current - 1;
+                    for (int index = start; index < segmentLength; index++, current++, previous++) {
+                        if (current % laneLength == 1) {
+                            previous = current - 1;
+                        }
+                        long pseudoRandom;
+                        if (independent) {
+                            if (index % BLOCK_WORDS == 0) {
+                                nextAddresses(addresses, input, zero, scratch);
+                            }
+                            pseudoRandom = addresses[index % BLOCK_WORDS];
+                        } else {
+                            pseudoRandom = memory[previous * BLOCK_WORDS];
+                        }
+
+                        int refLane = (int) ((pseudoRandom >>> 32) % lanes);
+                        if (pass == 0 && slice == 0) {
+                            refLane = lane;
+                        }
+                        int refIndex = referenceIndex(pass, slice, index, pseudoRandom & 0xFFFFFFFFL, refLane == lane,
+                            segmentLength, laneLength);
+                        boolean withXor = version != 0x10 && pass != 0;
+                        fillBlock(memory, previous * BLOCK_WORDS, memory, (refLane * laneLength + refIndex) * BLOCK_WORDS,
+                            memory, current * BLOCK_WORDS, withXor, scratch);
+                    }
+                }
+            }
+        }
+
+        long[] last = new long[BLOCK_WORDS];
+        for (int lane = 0; lane < lanes; lane++) {
+            int base = (lane * laneLength + laneLength - 1) * BLOCK_WORDS;
+            for (int w = 0; w < BLOCK_WORDS; w++) {
+                last[w] ^= memory[base + w];
+            }
+        }
+        Arrays.fill(memory, 0);
+        byte[] lastBytes = new byte[BLOCK_WORDS * 8];
+        for (int w = 0; w < BLOCK_WORDS; w++) {
+            writeLong(lastBytes, w * 8, last[w]);
+        }
+        return variableHash(lastBytes, tagLength);
+    }
+
+    private static int referenceIndex(int pass, int slice, int index, long pseudoRandom, boolean sameLane,
+                                      int segmentLength, int laneLength) {
+        long area;
+        if (pass == 0) {
+            if (slice == 0) {
+                area = index - 1;
+            } else if (sameLane) {
+                area = (long) slice * segmentLength + index - 1;
+            } else {
+                area = (long) slice * segmentLength + (index == 0 ? -1 : 0);
+            }
+        } else if (sameLane) {
+            area = laneLength - segmentLength + index - 1;
+        } else {
+            area = laneLength - segmentLength + (index == 0 ? -1 : 0);
+        }
+        long relative = (pseudoRandom * pseudoRandom) >>> 32;
+        relative = area - 1 - ((area * relative) >>> 32);
+        long startPosition = pass != 0 && slice != SYNC_POINTS - 1 ? (long) (slice + 1) * segmentLength : 0;
+        return (int) ((startPosition + relative) % laneLength);
+    }
+
+    private static void nextAddresses(long[] addresses, long[] input, long[] zero, long[][] scratch) {
+        input[6]++;
+        fillBlock(zero, 0, input, 0, addresses, 0, false, scratch);
+        fillBlock(zero, 0, addresses, 0, addresses, 0, false, scratch);
+    }
+
+    /**
+     * next = G(prev, ref), XORed into the old contents of next when withXor is set
+     */
+    private static void fillBlock(long[] prev, int prevOffset, long[] ref, int refOffset, long[] next, int nextOffset,
+                                  boolean withXor, long[][] scratch) {
+        long[] r = scratch[0];
+        long[] tmp = scratch[1];
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            r[i] = prev[prevOffset + i] ^ ref[refOffset + i];
+            tmp[i] = withXor ? r[i] ^ next[nextOffset + i] : r[i];
+        }
+        for (int i = 0; i < 8; i++) {
+            int b = 16 * i;
+            round(r, b, b + 1, b + 2, b + 3, b + 4, b + 5, b + 6, b + 7,
+                b + 8, b + 9, b + 10, b + 11, b + 12, b + 13, b + 14, b + 15);
+        }
+        for (int i = 0; i < 8; i++) {
+            int b = 2 * i;
+            round(r, b, b + 1, b + 16, b + 17, b + 32, b + 33, b + 48, b + 49,
+                b + 64, b + 65, b + 80, b + 81, b + 96, b + 97, b + 112, b + 113);
+        }
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            next[nextOffset + i] = tmp[i] ^ r[i];
+        }
+    }
+
+    private static void round(long[] v, int v0, int v1, int v2, int v3, int v4, int v5, int v6, int v7,
+                              int v8, int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+        mix(v, v0, v4, v8, v12);
+        mix(v, v1, v5, v9, v13);
+        mix(v, v2, v6, v10, v14);
+        mix(v, v3, v7, v11, v15);
+        mix(v, v0, v5, v10, v15);
+        mix(v, v1, v6, v11, v12);
+        mix(v, v2, v7, v8, v13);
+        mix(v, v3, v4, v9, v14);
+    }
+
+    /**
+     * BlaMka variant of the BLAKE2b G function
+     */
+    private static void mix(long[] v, int a, int b, int c, int d) {
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+    }
+
+    private static long blaMka(long x, long y) {
+        return x + y + 2 * (x & 0xFFFFFFFFL) * (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * H' from RFC 9106: BLAKE2b stretched to any output length
+     */
+    private static byte[] variableHash(byte[] input, int length) {
+        byte[] out = new byte[length];
+        if (length <= 64) {
+            byte[] digest = new Blake2b(length).updateInt(length).update(input).digest();
+            System.arraycopy(digest, 0, out, 0, length);
+            return out;
+        }
+        byte[] v = new Blake2b(64).updateInt(length).update(input).digest();
+        System.arraycopy(v, 0, out, 0, 32);
+        int position = 32;
+        while (length - position > 64) {
+            v = new Blake2b(64).update(v).digest();
+            System.arraycopy(v, 0, out, position, 32);
+            position += 32;
+        }
+        v = new Blake2b(length - position).update(v).digest();
+        System.arraycopy(v, 0, out, position, length - position);
+        return out;
+    }
+
+    private static void writeInt(byte[] b, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            b[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static void writeLong(byte[] b, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            b[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static long readLong(byte[] b, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (b[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Unkeyed BLAKE2b (RFC 7693) with 1 to 64 bytes of output
+     */
+    private static final class Blake2b {
+        private static final long[] IV = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+            0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+        };
+        private static final byte[][] SIGMA = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+            {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+            {11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+            {7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+            {9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+            {2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+            {12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+            {13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+            {6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+            {10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0}
+        };
+
+        private final long[] h = IV.clone();
+        private final long[] m = new long[16];
+        private final long[] v = new long[16];
+        private final byte[] buffer = new byte[128];
+        private final int outLength;
+        private int buffered;
+        private long counter;
+
+        Blake2b(int outLength) {
+            this.outLength = outLength;
+            h[0] ^= 0x01010000L ^ outLength;
+        }
+
+        Blake2b updateInt(int value) {
+            byte[] b = new byte[4];
+            writeInt(b, 0, value);
+            return update(b);
+        }
+
+        Blake2b update(byte[] data) {
+            for (byte b : data) {
+                if (buffered == buffer.length) {
+                    // Only compress once more input follows; the final block is flagged in digest
+                    counter += buffered;
+                    compress(false);
+                    buffered = 0;
+                }
+                buffer[buffered++] = b;
+            }
+            return this;
+        }
+
+        byte[] digest() {
+            counter += buffered;
+            Arrays.fill(buffer, buffered, buffer.length, (byte) 0);
+            compress(true);
+            byte[] full = new byte[64];
+            for (int i = 0; i < 8; i++) {
+                writeLong(full, i * 8, h[i]);
+            }
+            return Arrays.copyOf(full, outLength);
+        }
+
+        private void compress(boolean last) {
+            for (int i = 0; i < 16; i++) {
+                m[i] = readLong(buffer, i * 8);
+            }
+            System.arraycopy(h, 0, v, 0, 8);
+            System.arraycopy(IV, 0, v, 8, 8);
+            v[12] ^= counter;
+            if (last) {
+                v[14] = ~v[14];
+            }
+            for (int round = 0; round < 12; round++) {
+                byte[] s = SIGMA[round % 10];
+                g(0, 4, 8, 12, m[s[0]], m[s[1]]);
+                g(1, 5, 9, 13, m[s[2]], m[s[3]]);
+                g(2, 6, 10, 14, m[s[4]], m[s[5]]);
+                g(3, 7, 11, 15, m[s[6]], m[s[7]]);
+                g(0, 5, 10, 15, m[s[8]], m[s[9]]);
+                g(1, 6, 11, 12, m[s[10]], m[s[11]]);
+                g(2, 7, 8, 13, m[s[12]], m[s[13]]);
+                g(3, 4, 9, 14, m[s[14]], m[s[15]]);
+            }
+            for (int i = 0; i < 8; i++) {
+                h[i] ^= v[i] ^ v[i + 8];
+            }
+        }
+
+        private void g(int a, int b, int c, int d, long x, long y) {
+            v[a] = v[a] + v[b] + x;
+            v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+            v[c] = v[c] + v[d];
+            v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+            v[a] = v[a] + v[b] + y;
+            v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+            v[c] = v[c] + v[d];
+            v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+        }
+    }
+}
@@ -5,76 +5,402 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import de.mkammerer.argon2.Argon2;
 import de.mkammerer.argon2.Argon2Factory;
+import de.mkammerer.argon2.Argon2Factory.Argon2Types;
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.regex.Pattern;
 
+/**
+ * Password hashing and policy checks.
+ *
+ * BCrypt and Argon2 cost tens of milliseconds of CPU per call, so the async methods
+ * run them on a dedicated pool sized to the cores, apart from the database workers.
+ * The queue is bounded: when a flood of /login attempts fills it, new calls fail
+ * with RejectedExecutionException at once, and the player is told to retry, instead
+ * of every attempt waiting behind the flood.
+ *
+ * Stored hashes are verified with the algorithm named by their prefix, so changing
+ * hash-algorithm or the cost settings keeps old hashes valid; needsRehash tells the
+ * login flow to replace weaker ones with current ones.
+ */
 public class PasswordManager {
+    private static final int RATE_WINDOW_SECONDS = 10;
+    private static final Argon2Types ARGON2_TYPE = Argon2Types.ARGON2i; // Type of new Argon2 hashes
+
     private final ConfigManager config;
     private final JavaPlugin plugin;
-    private Argon2 argon2;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+    private final long[] completedPerSecond = new long[RATE_WINDOW_SECONDS + 1]; // Guarded by itself
+    private long rateSecond; // Second of the newest slot; guarded by completedPerSecond
+    private final Map<Argon2Types, Argon2> argon2 = new ConcurrentHashMap<>();
+    private final LongAdder rehashed = new LongAdder();
+    private final HashCalibration calibration;
+    private final Argon2MemoryGovernor memoryGovernor;
+    private volatile boolean javaArgon2;
+    private final AtomicBoolean calibrating = new AtomicBoolean();
+    private volatile HashCalibration.Result calibrated; // Null while the config settings apply
 
     public PasswordManager(ConfigManager config, JavaPlugin plugin) {
         this.config = config;
         this.plugin = plugin;
-        
-        if ("argon2".equalsIgnoreCase(config.getHashAlgorithm())) {
-            this.argon2 = Argon2Factory.create();
+        this.javaArgon2 = "java".equalsIgnoreCase(config.getArgon2Backend());
+
+        int threads = config.getHashingThreads();
+        if (threads <= 0) {
+            // Leave a core for the server thread
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        }
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "SecureAuth-Hash-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, config.getHashingQueueSize())), threadFactory,
+            new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.memoryGovernor = new Argon2MemoryGovernor(config.getArgon2MemoryBudget(), config.getArgon2MemoryWaitMs());
+        this.calibration = new HashCalibration(config, threads, plugin);
+        if (config.isHashCalibrationEnabled()) {
+            calibrated = calibration.load(getAlgorithm());
+            if (calibrated != null) {
+                plugin.getLogger().info("Using calibrated password hashing: " + getCurrentScheme() + " (" +
+                    String.format("%.0f", calibrated.getMillis()) + "ms per hash)");
+            } else {
+                calibrate();
+            }
+        }
+    }
+
+    /**
+     * Time hashes on this machine in the background and switch to the strongest cost
+     * settings that fit the configured latency budget; completes with the new scheme
+     * label, or null if a calibration is already running
+     */
+    public CompletableFuture<String> calibrate() {
+        if (!calibrating.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        String algorithm = getAlgorithm();
+        plugin.getLogger().info("Calibrating " + algorithm + " for a " + calibration.getBudgetMs() + "ms budget...");
+        try {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                try {
+                    calibrated = calibration.run(algorithm, this::hashWith);
+                    String scheme = getCurrentScheme();
+                    plugin.getLogger().info("Hash calibration: " + scheme + " takes " +
+                        String.format("%.0f", calibrated.getMillis()) + "ms per hash");
+                    result.complete(scheme);
+                } catch (RuntimeException e) {
+                    plugin.getLogger().log(Level.WARNING, "Hash calibration failed; keeping the current settings", e);
+                    result.completeExceptionally(e);
+                } finally {
+                    calibrating.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            calibrating.set(false);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Configured algorithm, "bcrypt" or "argon2"
+     */
+    private String getAlgorithm() {
+        return "argon2".equalsIgnoreCase(config.getHashAlgorithm()) ? "argon2" : "bcrypt";
+    }
+
+    private HashCalibration.Result getCalibration() {
+        HashCalibration.Result result = calibrated;
+        return result != null && result.getAlgorithm().equals(getAlgorithm()) && config.isHashCalibrationEnabled()
+            ? result : null;
+    }
+
+    private int getBcryptCost() {
+        HashCalibration.Result result = getCalibration();
+        return result != null ? result.getBcryptCost() : config.getBcryptCostFactor();
+    }
+
+    private int getArgon2Memory() {
+        HashCalibration.Result result = getCalibration();
+        return result != null ? result.getArgon2Memory() : config.getArgon2Memory();
+    }
+
+    private int getArgon2Iterations() {
+        HashCalibration.Result result = getCalibration();
+        return result != null ? result.getArgon2Iterations() : config.getArgon2Iterations();
+    }
+
+    private int getArgon2Parallelism() {
+        HashCalibration.Result result = getCalibration();
+        return result != null ? result.getArgon2Parallelism() : config.getArgon2Parallelism();
+    }
+
+    /**
+     * Hash a password on the hashing pool; fails with RejectedExecutionException if
+     * the pool is saturated
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> hashPassword(password));
+    }
+
+    /**
+     * Verify a password on the hashing pool; fails with RejectedExecutionException if
+     * the pool is saturated
+     */
+    public CompletableFuture<Boolean> verifyAsync(String password, String hash) {
+        if (hash == null || hash.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return submit(() -> verifyPassword(password, hash));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.get();
+                } finally {
+                    recordCompletion();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     /**
-     * Hash a password using the configured algorithm
+     * Hash a password using the configured algorithm (with calibrated cost settings if
+     * calibration is enabled)
      */
     public String hashPassword(String password) {
         String algorithm = config.getHashAlgorithm().toLowerCase();
-        
-        switch (algorithm) {
-            case "bcrypt":
-                return BCrypt.hashpw(password, BCrypt.gensalt(config.getBcryptCostFactor()));
-            
-            case "argon2":
-                return argon2.hash(
-                    config.getArgon2Iterations(),
-                    config.getArgon2Memory(),
-                    config.getArgon2Parallelism(),
-                    password.toCharArray()
-                );
-            
-            default:
-                plugin.getLogger().warning("Unknown hash algorithm: " + algorithm + ", using bcrypt");
-                return BCrypt.hashpw(password, BCrypt.gensalt(config.getBcryptCostFactor()));
+        if (!algorithm.equals("bcrypt") && !algorithm.equals("argon2")) {
+            plugin.getLogger().warning("Unknown hash algorithm: " + algorithm + ", using bcrypt");
+        }
+        return hashWith(getAlgorithm(), getBcryptCost(), getArgon2Memory(), getArgon2Iterations(),
+            getArgon2Parallelism(), password);
+    }
+
+    private String hashWith(String algorithm, int bcryptCost, int argon2Memory, int argon2Iterations,
+                            int argon2Parallelism, String password) {
+        if ("argon2".equals(algorithm)) {
+            int reserved = memoryGovernor.acquire(argon2Memory);
+            try {
+                if (!javaArgon2) {
+                    try {
+                        return argon2(ARGON2_TYPE).hash(argon2Iterations, argon2Memory, argon2Parallelism,
+                            password.toCharArray());
+                    } catch (LinkageError e) {
+                        fallBackToJava(e);
+                    }
+                }
+                return JavaArgon2.hash(ARGON2_TYPE, argon2Iterations, argon2Memory, argon2Parallelism, password);
+            } finally {
+                memoryGovernor.release(reserved);
+            }
         }
+        return BCrypt.hashpw(password, BCrypt.gensalt(bcryptCost));
     }
 
     /**
-     * Verify a password against a hash
+     * Verify a password against a hash. The algorithm is taken from the hash itself,
+     * not from the config, so hashes made before a change of hash-algorithm keep working.
      */
     public boolean verifyPassword(String password, String hash) {
         if (hash == null || hash.isEmpty()) {
             return false;
         }
         
-        String algorithm = config.getHashAlgorithm().toLowerCase();
-        
         try {
-            switch (algorithm) {
-                case "bcrypt":
-                    return BCrypt.checkpw(password, hash);
-                
-                case "argon2":
-                    return argon2.verify(hash, password.toCharArray());
-                
-                default:
-                    // Try bcrypt as fallback
-                    return BCrypt.checkpw(password, hash);
+            if (isBcrypt(hash)) {
+                // jBCrypt only knows $2a$; $2b$ and $2y$ hash identically for passwords it accepts
+                return BCrypt.checkpw(password, "$2a$" + hash.substring(4));
+            }
+            Argon2Types type = argon2Type(hash);
+            if (type != null) {
+                int reserved = memoryGovernor.acquire(argon2MemoryOf(hash));
+                try {
+                    if (!javaArgon2) {
+                        try {
+                            return argon2(type).verify(hash, password.toCharArray());
+                        } catch (LinkageError e) {
+                            fallBackToJava(e);
+                        }
+                    }
+                    return JavaArgon2.verify(hash, password);
+                } finally {
+                    memoryGovernor.release(reserved);
+                }
             }
+            plugin.getLogger().warning("Password hash in an unknown format: " + hash.substring(0, Math.min(8, hash.length())) + "...");
+            return false;
+        } catch (RejectedExecutionException e) {
+            throw e; // Over the Argon2 memory budget: "busy", not a wrong password
         } catch (Exception e) {
             plugin.getLogger().warning("Password verification failed: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Whether a stored hash was made with another algorithm (or Argon2 type or version)
+     * or with weaker cost settings than the current ones, so it should be replaced at
+     * the next successful login. Hashes stronger than the current settings are kept, so
+     * lowering the configured or calibrated cost never downgrades them.
+     */
+    public boolean needsRehash(String hash) {
+        if (hash == null) {
+            return false;
+        }
+        if ("argon2".equals(getAlgorithm())) {
+            if (argon2Type(hash) != ARGON2_TYPE || !hash.contains("$v=19$")) {
+                return true;
+            }
+            return argon2Param(hash, "m") < getArgon2Memory() || argon2Param(hash, "t") < getArgon2Iterations()
+                || argon2Param(hash, "p") < getArgon2Parallelism();
+        }
+        if (!isBcrypt(hash)) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6)) < getBcryptCost();
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Short label of the algorithm and cost settings of a stored hash, such as
+     * "bcrypt cost 10" or "argon2i m=65536 t=3 p=4"
+     */
+    public String describeHash(String hash) {
+        if (hash == null) {
+            return "unknown";
+        }
+        if (isBcrypt(hash) && hash.length() > 7 && hash.charAt(6) == '$') {
+            try {
+                return "bcrypt cost " + Integer.parseInt(hash.substring(4, 6));
+            } catch (NumberFormatException e) {
+                return "unknown";
+            }
+        }
+        if (argon2Type(hash) != null) {
+            // $argon2i$v=19$m=65536,t=3,p=4$salt$hash
+            String[] fields = hash.split("\\$");
+            if (fields.length >= 5) {
+                String version = fields[2].equals("v=19") ? "" : " " + fields[2];
+                return fields[1] + version + " " + fields[3].replace(',', ' ');
+            }
+        }
+        return "unknown";
+    }
+
+    /**
+     * Label (as in describeHash) of the hashes hashPassword produces now
+     */
+    public String getCurrentScheme() {
+        if ("argon2".equals(getAlgorithm())) {
+            return ARGON2_TYPE.name().toLowerCase(Locale.ROOT) + " m=" + getArgon2Memory() + " t=" + getArgon2Iterations() + " p=" + getArgon2Parallelism();
+        }
+        return "bcrypt cost " + getBcryptCost();
+    }
+
+    /**
+     * Count a stored hash replaced with one made with the current settings
+     */
+    public void recordRehash() {
+        rehashed.increment();
+    }
+
+    /**
+     * Stored hashes upgraded to the current settings since startup
+     */
+    public long getRehashedCount() {
+        return rehashed.sum();
+    }
+
+    private static boolean isBcrypt(String hash) {
+        return hash.startsWith("$2a$") || hash.startsWith("$2b$") || hash.startsWith("$2y$");
+    }
+
+    private static Argon2Types argon2Type(String hash) {
+        if (hash.startsWith("$argon2id$")) {
+            return Argon2Types.ARGON2id;
+        }
+        if (hash.startsWith("$argon2i$")) {
+            return Argon2Types.ARGON2i;
+        }
+        if (hash.startsWith("$argon2d$")) {
+            return Argon2Types.ARGON2d;
+        }
+        return null;
+    }
+
+    /**
+     * Memory cost in KiB an Argon2 hash was made with (verifying it needs as much)
+     */
+    private int argon2MemoryOf(String hash) {
+        int memory = argon2Param(hash, "m");
+        return memory >= 0 ? memory : getArgon2Memory();
+    }
+
+    /**
+     * An m, t or p parameter of an encoded Argon2 hash, or -1 if it is missing
+     */
+    private static int argon2Param(String hash, String name) {
+        for (String field : hash.split("[$,]")) {
+            if (field.startsWith(name + "=")) {
+                try {
+                    return Integer.parseInt(field.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private Argon2 argon2(Argon2Types type) {
+        // The native library is only loaded once an Argon2 hash is actually used
+        return argon2.computeIfAbsent(type, Argon2Factory::create);
+    }
+
+    private void fallBackToJava(LinkageError error) {
+        if (!javaArgon2) {
+            javaArgon2 = true;
+            plugin.getLogger().log(Level.WARNING, "Failed to load the native Argon2 library; using the Java implementation", error);
+        }
+    }
+
+    /**
+     * "java" or "native", the Argon2 implementation in use
+     */
+    public String getArgon2Backend() {
+        return javaArgon2 ? "java" : "native";
+    }
+
     /**
      * Check if password meets minimum requirements
      */
@@ -143,5 +469,96 @@ public class PasswordManager {
         
         return null; // No complexity requirements
     }
-}
 
+    private void recordCompletion() {
+        long second = System.currentTimeMillis() / 1000;
+        synchronized (completedPerSecond) {
+            advanceTo(second);
+            completedPerSecond[(int) (second % completedPerSecond.length)]++;
+        }
+    }
+
+    /**
+     * Clear the slots of seconds that passed without a completion (caller holds the lock)
+     */
+    private void advanceTo(long second) {
+        if (second <= rateSecond) {
+            return;
+        }
+        long cleared = Math.min(second - rateSecond, completedPerSecond.length);
+        for (long s = second - cleared + 1; s <= second; s++) {
+            completedPerSecond[(int) (s % completedPerSecond.length)] = 0;
+        }
+        rateSecond = second;
+    }
+
+    /**
+     * Hashes and verifications completed per second, averaged over the last ten whole
+     * seconds
+     */
+    public double getHashesPerSecond() {
+        long second = System.currentTimeMillis() / 1000;
+        long total = 0;
+        synchronized (completedPerSecond) {
+            advanceTo(second);
+            for (int i = 0; i < completedPerSecond.length; i++) {
+                if (i != (int) (second % completedPerSecond.length)) {
+                    total += completedPerSecond[i]; // Skip the second still in progress
+                }
+            }
+        }
+        return (double) total / RATE_WINDOW_SECONDS;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Calls refused because the hashing queue was full or Argon2 memory ran out
+     */
+    public long getRejectedCount() {
+        return rejected.sum() + memoryGovernor.getRejectedCount();
+    }
+
+    /**
+     * Memory in KiB held by running Argon2 calls
+     */
+    public long getArgon2MemoryUsedKib() {
+        return memoryGovernor.getUsedKib();
+    }
+
+    /**
+     * Most memory in KiB Argon2 calls have held at once since startup
+     */
+    public long getArgon2MemoryPeakKib() {
+        return memoryGovernor.getPeakKib();
+    }
+
+    public int getArgon2MemoryBudgetKib() {
+        return memoryGovernor.getBudgetKib();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for " + executor.getActiveCount() +
+                    " password hashes to finish");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            plugin.getLogger().log(Level.WARNING, "Interrupted while stopping hashing workers", e);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -6,13 +6,14 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PasswordRecoveryManager {
     private final ConfigManager config;
     private final DatabaseManager databaseManager;
     private final JavaPlugin plugin;
     private final Map<String, RecoveryToken> recoveryTokens = new HashMap<>(); // token -> RecoveryToken
-    private final Map<UUID, List<String>> securityQuestions = new HashMap<>(); // UUID -> questions/answers
+    private final Map<UUID, List<String>> securityQuestions = new ConcurrentHashMap<>(); // UUID -> questions/answers; also read from the database pool
 
     public PasswordRecoveryManager(ConfigManager config, DatabaseManager databaseManager, JavaPlugin plugin) {
         this.config = config;
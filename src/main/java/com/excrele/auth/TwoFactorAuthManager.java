@@ -12,13 +12,15 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TwoFactorAuthManager {
     private final ConfigManager config;
     private final DatabaseManager databaseManager;
     private final JavaPlugin plugin;
-    private final Map<UUID, String> pending2FASetup = new HashMap<>(); // UUID -> secret key
-    private final Map<UUID, List<String>> backupCodes = new HashMap<>(); // UUID -> backup codes
+    // Also used from the database pool, where the storage calls below run
+    private final Map<UUID, String> pending2FASetup = new ConcurrentHashMap<>(); // UUID -> secret key
+    private final Map<UUID, List<String>> backupCodes = new ConcurrentHashMap<>(); // UUID -> backup codes
 
     public TwoFactorAuthManager(ConfigManager config, DatabaseManager databaseManager, JavaPlugin plugin) {
         this.config = config;
@@ -71,6 +73,13 @@ public class TwoFactorAuthManager {
         return pending2FASetup.get(playerId);
     }
 
+    /**
+     * Backup codes made by the last setup2FA, without reading storage
+     */
+    public List<String> getPendingBackupCodes(UUID playerId) {
+        return backupCodes.get(playerId);
+    }
+
     public boolean verifyTOTP(UUID playerId, String code) {
         if (!isEnabled() || !has2FAEnabled(playerId)) {
             return false;
@@ -166,7 +175,7 @@ public class TwoFactorAuthManager {
         return codes;
     }
 
-    private boolean verifyBackupCode(UUID playerId, String code) {
+    private synchronized boolean verifyBackupCode(UUID playerId, String code) { // One use per code
         List<String> codes = getBackupCodes(playerId);
         if (codes == null || !codes.contains(code)) {
             return false;
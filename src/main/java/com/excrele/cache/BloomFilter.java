@@ -0,0 +1,112 @@
+package com.excrele.cache;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of uuids: "no" answers are always right, "maybe" answers are wrong with
+ * roughly the configured probability. Adds and lookups are lock-free; entries cannot
+ * be removed, so deleted accounts stay "maybe" until the filter is rebuilt.
+ */
+public final class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashes;
+    private final long expectedInsertions;
+    private final AtomicLong setBits = new AtomicLong();
+
+    private BloomFilter(long bitSize, int hashes, long expectedInsertions) {
+        this.words = new AtomicLongArray((int) ((bitSize + 63) >>> 6));
+        this.bitSize = bitSize;
+        this.hashes = hashes;
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    /**
+     * Size a filter for the given number of entries and false-positive rate, using at
+     * most maxBytes (which raises the false-positive rate if it is too small)
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate, long maxBytes) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        long maxBits = Math.min(Math.max(64, maxBytes * 8), (long) Integer.MAX_VALUE * 64);
+        bits = Math.max(64, Math.min(bits, maxBits));
+        int hashes = (int) Math.max(1, Math.min(16, Math.round((double) bits / n * Math.log(2))));
+        return new BloomFilter(bits, hashes, n);
+    }
+
+    public void put(UUID id) {
+        long hash = hash(id);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(index);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(index, word, word | mask));
+            if ((word & mask) == 0) {
+                setBits.incrementAndGet();
+            }
+        }
+    }
+
+    public boolean mightContain(UUID id) {
+        long hash = hash(id);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of distinct entries added, estimated from the bits set
+     */
+    public long getApproximateCount() {
+        double fill = (double) setBits.get() / bitSize;
+        if (fill >= 1) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-(double) bitSize / hashes * Math.log(1 - fill));
+    }
+
+    /**
+     * Current chance that an absent uuid is reported as "maybe"
+     */
+    public double getFalsePositiveRate() {
+        return Math.pow((double) setBits.get() / bitSize, hashes);
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public long getMemoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    private static long hash(UUID id) {
+        return mix(id.getMostSignificantBits() ^ mix(id.getLeastSignificantBits()));
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb93fe1a85ec5L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -1,79 +1,96 @@
 package com.excrele.cache;
 
+import com.excrele.config.ConfigManager;
+import com.excrele.database.AccountSnapshot;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class CacheManager {
     private final JavaPlugin plugin;
-    private final Map<String, Boolean> premiumCache = new ConcurrentHashMap<>(); // username -> isPremium
-    private final Map<String, Long> premiumCacheTime = new ConcurrentHashMap<>(); // username -> timestamp
-    private final Map<UUID, String> passwordHashCache = new ConcurrentHashMap<>(); // UUID -> hash
+    private final Map<String, PremiumStatus> premiumCache = new ConcurrentHashMap<>(); // lower-case username
+    private final TinyLfuCache<UUID, AccountSnapshot> accountCache;
     private static final long PREMIUM_CACHE_TTL = 30 * 60 * 1000; // 30 minutes
-    private static final long PASSWORD_CACHE_TTL = 5 * 60 * 1000; // 5 minutes
 
-    public CacheManager(JavaPlugin plugin) {
+    public CacheManager(ConfigManager config, JavaPlugin plugin) {
         this.plugin = plugin;
+        this.accountCache = new TinyLfuCache<>(config.getAccountCacheMaximumSize(),
+            config.getAccountCacheExpireSeconds() * 1000, config.getAccountCacheRefreshSeconds() * 1000,
+            task -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task));
         
         // Start cache cleanup task
         plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
             long now = System.currentTimeMillis();
             
             // Clean expired premium cache
-            premiumCacheTime.entrySet().removeIf(entry -> {
-                if (now - entry.getValue() > PREMIUM_CACHE_TTL) {
-                    premiumCache.remove(entry.getKey());
-                    return true;
-                }
-                return false;
-            });
+            premiumCache.values().removeIf(status -> status.isOlderThan(PREMIUM_CACHE_TTL, now));
             
-            // Password cache is cleared on password change, so we don't need TTL cleanup
-            // (it's short-lived and cleared when needed)
+            // Release accounts that expired without being read again
+            accountCache.cleanUp();
         }, 6000L, 6000L); // Every 5 minutes
     }
 
     public Boolean getPremiumStatus(String username) {
-        String lowerUsername = username.toLowerCase();
-        Long cacheTime = premiumCacheTime.get(lowerUsername);
-        
-        if (cacheTime != null && (System.currentTimeMillis() - cacheTime) < PREMIUM_CACHE_TTL) {
-            return premiumCache.get(lowerUsername);
+        PremiumStatus status = premiumCache.get(username.toLowerCase());
+        if (status != null && !status.isOlderThan(PREMIUM_CACHE_TTL, System.currentTimeMillis())) {
+            return status.isPremium();
         }
         
         return null; // Cache miss
     }
 
     public void setPremiumStatus(String username, boolean isPremium) {
-        String lowerUsername = username.toLowerCase();
-        premiumCache.put(lowerUsername, isPremium);
-        premiumCacheTime.put(lowerUsername, System.currentTimeMillis());
+        premiumCache.put(username.toLowerCase(), new PremiumStatus(isPremium, System.currentTimeMillis()));
+    }
+
+    /**
+     * The cached account, or the loader's result (cached unless null). Must not be
+     * called on the main thread on a miss, since the loader queries the database.
+     */
+    public AccountSnapshot getAccount(UUID playerId, Function<UUID, AccountSnapshot> loader) {
+        return accountCache.get(playerId, loader);
+    }
+
+    /**
+     * The cached account without loading it, or null on a miss
+     */
+    public AccountSnapshot getCachedAccount(UUID playerId) {
+        return accountCache.getIfPresent(playerId);
+    }
+
+    /**
+     * Drop the cached account; called after every change to it
+     */
+    public void invalidateAccount(UUID playerId) {
+        accountCache.invalidate(playerId);
     }
 
-    public String getPasswordHash(UUID playerId) {
-        return passwordHashCache.get(playerId);
+    /**
+     * Fill the cache with an account read in bulk, unless anything was invalidated
+     * since the version was read (see {@link TinyLfuCache#getInvalidationCount})
+     */
+    public boolean preloadAccount(AccountSnapshot snapshot, long version) {
+        return accountCache.putIfAbsent(snapshot.getPlayerId(), snapshot, version);
     }
 
-    public void setPasswordHash(UUID playerId, String hash) {
-        passwordHashCache.put(playerId, hash);
+    public void invalidateAllAccounts() {
+        accountCache.invalidateAll();
     }
 
-    public void invalidatePasswordHash(UUID playerId) {
-        passwordHashCache.remove(playerId);
+    public TinyLfuCache<UUID, AccountSnapshot> getAccountCache() {
+        return accountCache;
     }
 
     public void clearAll() {
         premiumCache.clear();
-        premiumCacheTime.clear();
-        passwordHashCache.clear();
+        accountCache.invalidateAll();
     }
 
     public void clearPremiumCache() {
         premiumCache.clear();
-        premiumCacheTime.clear();
     }
 }
 
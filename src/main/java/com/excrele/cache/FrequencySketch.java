@@ -0,0 +1,84 @@
+package com.excrele.cache;
+
+/**
+ * Count-Min sketch of recent access frequency with 4-bit counters, sixteen to a long.
+ *
+ * Each key maps to one counter in each of four rows; its estimate is the smallest of
+ * the four. When the number of increments reaches ten times the cache size, every
+ * counter is halved, so the sketch follows changes in popularity. Not thread-safe;
+ * the cache calls it under its own lock.
+ */
+final class FrequencySketch {
+    private static final long[] SEED = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int maximumSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * Math.max(16, maximumSize);
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halve every counter (aging)
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        long mixed = (hash + SEED[row]) * SEED[row];
+        mixed += mixed >>> 32;
+        return ((int) mixed) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,26 @@
+package com.excrele.cache;
+
+/**
+ * Immutable premium lookup result and when it was obtained
+ */
+public final class PremiumStatus {
+    private final boolean premium;
+    private final long checkedAt;
+
+    public PremiumStatus(boolean premium, long checkedAt) {
+        this.premium = premium;
+        this.checkedAt = checkedAt;
+    }
+
+    public boolean isPremium() {
+        return premium;
+    }
+
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    public boolean isOlderThan(long ageMs, long now) {
+        return now - checkedAt >= ageMs;
+    }
+}
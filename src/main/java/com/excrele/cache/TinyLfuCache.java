@@ -0,0 +1,404 @@
+package com.excrele.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Size-bounded read-through cache with W-TinyLFU admission and eviction.
+ *
+ * New entries go into a small LRU window (1% of the size). An entry pushed out of the
+ * window only displaces the coldest entry of the main segmented LRU if a frequency
+ * sketch says it has been requested more often, so a burst of one-off keys cannot
+ * flush the entries that are read again and again. Entries expire a fixed time after
+ * they were loaded; once older than the refresh time, a read returns the cached value
+ * and reloads it in the background.
+ *
+ * A load that overlaps an invalidation of the same key is not stored, so a value read
+ * before a write commits is never cached after it.
+ */
+public class TinyLfuCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node<K, V> {
+        private final K key;
+        private V value;
+        private long loadedAt;
+        private int segment;
+        private boolean refreshing;
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+        Node(K key, V value, long loadedAt) {
+            this.key = key;
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Doubly linked LRU list; the head is the most recently used
+     */
+    private static final class Segment<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private int size;
+
+        void addFirst(Node<K, V> node) {
+            node.previous = null;
+            node.next = head;
+            if (head != null) {
+                head.previous = node;
+            } else {
+                tail = node;
+            }
+            head = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.previous != null) {
+                node.previous.next = node.next;
+            } else {
+                head = node.next;
+            }
+            if (node.next != null) {
+                node.next.previous = node.previous;
+            } else {
+                tail = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            size--;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * A load in progress; marked stale when its key is invalidated meanwhile
+     */
+    private static final class Load<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private volatile boolean stale;
+    }
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int protectedMax;
+    private final long expireNanos;
+    private final long refreshNanos;
+    private final Executor refreshExecutor;
+    private final Map<K, Node<K, V>> data = new HashMap<>(); // Everything below is guarded by this
+    private final FrequencySketch sketch;
+    private final Segment<K, V> window = new Segment<>();
+    private final Segment<K, V> probation = new Segment<>();
+    private final Segment<K, V> protectedSegment = new Segment<>();
+    private final Map<K, Load<V>> loads = new ConcurrentHashMap<>();
+    private long invalidations; // Guarded by this
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    /**
+     * @param expireAfterWriteMs entries are dropped this long after loading, 0 for never
+     * @param refreshAfterWriteMs reads after this age reload in the background, 0 for never
+     */
+    public TinyLfuCache(int maximumSize, long expireAfterWriteMs, long refreshAfterWriteMs, Executor refreshExecutor) {
+        this.maximumSize = Math.max(1, maximumSize);
+        this.windowMax = Math.max(1, this.maximumSize / 100);
+        this.protectedMax = (this.maximumSize - windowMax) * 80 / 100;
+        this.expireNanos = expireAfterWriteMs > 0 ? expireAfterWriteMs * 1_000_000L : Long.MAX_VALUE;
+        this.refreshNanos = refreshAfterWriteMs > 0 ? refreshAfterWriteMs * 1_000_000L : Long.MAX_VALUE;
+        this.refreshExecutor = refreshExecutor;
+        this.sketch = new FrequencySketch(this.maximumSize);
+    }
+
+    /**
+     * The cached value, or the loader's result on a miss. Concurrent misses for the
+     * same key share one load. Null results are returned but not cached.
+     */
+    public V get(K key, Function<K, V> loader) {
+        long now = System.nanoTime();
+        V value = null;
+        boolean refresh = false;
+        synchronized (this) {
+            sketch.increment(key);
+            Node<K, V> node = data.get(key);
+            if (node != null && now - node.loadedAt >= expireNanos) {
+                removeNode(node);
+                node = null;
+            }
+            if (node != null) {
+                onAccess(node);
+                value = node.value;
+                if (now - node.loadedAt >= refreshNanos && !node.refreshing) {
+                    node.refreshing = true;
+                    refresh = true;
+                }
+            }
+        }
+        if (value != null) {
+            hits.increment();
+            if (refresh) {
+                scheduleRefresh(key, loader);
+            }
+            return value;
+        }
+
+        misses.increment();
+        Load<V> load = new Load<>();
+        Load<V> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight.future.join();
+        }
+        try {
+            V loaded = loader.apply(key);
+            store(key, loaded, load);
+            load.future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            load.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    /**
+     * The cached value without loading, or null
+     */
+    public synchronized V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null || System.nanoTime() - node.loadedAt >= expireNanos) {
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Counter bumped by every invalidation; read it before fetching values for
+     * {@link #putIfAbsent}
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * Store a value fetched outside the cache (bulk preloading), unless the key is
+     * already cached or anything was invalidated since invalidationCount was read
+     *
+     * @return whether the value was stored
+     */
+    public synchronized boolean putIfAbsent(K key, V value, long invalidationCount) {
+        if (value == null || invalidations != invalidationCount || data.containsKey(key) || loads.containsKey(key)) {
+            return false;
+        }
+        insert(key, value);
+        return true;
+    }
+
+    private void scheduleRefresh(K key, Function<K, V> loader) {
+        Load<V> load = new Load<>();
+        if (loads.putIfAbsent(key, load) != null) {
+            clearRefreshing(key); // Already loading
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    V loaded = loader.apply(key);
+                    store(key, loaded, load);
+                    refreshes.increment();
+                    load.future.complete(loaded);
+                } catch (RuntimeException e) {
+                    load.future.completeExceptionally(e);
+                } finally {
+                    loads.remove(key, load);
+                    clearRefreshing(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor shut down (plugin disabling); the next read past expiry reloads it
+            loads.remove(key, load);
+            clearRefreshing(key);
+        }
+    }
+
+    private synchronized void clearRefreshing(K key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            node.refreshing = false;
+        }
+    }
+
+    private synchronized void store(K key, V value, Load<V> load) {
+        if (value != null && !load.stale) {
+            insert(key, value);
+        }
+    }
+
+    private void insert(K key, V value) {
+        long now = System.nanoTime();
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            node.value = value;
+            node.loadedAt = now;
+            return;
+        }
+        node = new Node<>(key, value, now);
+        node.segment = WINDOW;
+        data.put(key, node);
+        window.addFirst(node);
+        if (window.size > windowMax) {
+            admit(window.tail);
+        }
+    }
+
+    /**
+     * Move the window's oldest entry into the main space, evicting it or the main
+     * space's coldest entry, whichever was requested less often
+     */
+    private void admit(Node<K, V> candidate) {
+        window.remove(candidate);
+        candidate.segment = PROBATION;
+        probation.addFirst(candidate);
+        if (data.size() <= maximumSize) {
+            return;
+        }
+
+        Node<K, V> victim = probation.tail != candidate ? probation.tail : protectedSegment.tail;
+        if (victim == null || victim == candidate) {
+            evict(candidate);
+        } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            evict(victim);
+        } else {
+            evict(candidate);
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        removeNode(node);
+        evictions.increment();
+    }
+
+    private void onAccess(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node);
+                window.addFirst(node);
+                break;
+            case PROBATION:
+                // A second hit in the main space promotes it out of eviction's reach
+                probation.remove(node);
+                node.segment = PROTECTED;
+                protectedSegment.addFirst(node);
+                if (protectedSegment.size > protectedMax) {
+                    Node<K, V> demoted = protectedSegment.tail;
+                    protectedSegment.remove(demoted);
+                    demoted.segment = PROBATION;
+                    probation.addFirst(demoted);
+                }
+                break;
+            default:
+                protectedSegment.remove(node);
+                protectedSegment.addFirst(node);
+                break;
+        }
+    }
+
+    private void removeNode(Node<K, V> node) {
+        data.remove(node.key);
+        segmentOf(node).remove(node);
+    }
+
+    private Segment<K, V> segmentOf(Node<K, V> node) {
+        return node.segment == WINDOW ? window : node.segment == PROBATION ? probation : protectedSegment;
+    }
+
+    public void invalidate(K key) {
+        Load<V> load = loads.get(key);
+        if (load != null) {
+            load.stale = true;
+        }
+        synchronized (this) {
+            invalidations++;
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                removeNode(node);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        loads.values().forEach(load -> load.stale = true);
+        synchronized (this) {
+            invalidations++;
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        }
+    }
+
+    /**
+     * Drop expired entries so they stop taking up space before they are next read
+     */
+    public synchronized void cleanUp() {
+        long now = System.nanoTime();
+        Iterator<Node<K, V>> nodes = data.values().iterator();
+        while (nodes.hasNext()) {
+            Node<K, V> node = nodes.next();
+            if (now - node.loadedAt >= expireNanos) {
+                nodes.remove();
+                segmentOf(node).remove(node);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Fraction of reads answered from the cache
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
@@ -1,11 +1,21 @@
 package com.excrele.commands;
 
 import com.excrele.auth.AuthManager;
+import com.excrele.auth.PasswordManager;
 import com.excrele.auth.PasswordRecoveryManager;
 import com.excrele.auth.TwoFactorAuthManager;
+import com.excrele.cache.CacheManager;
+import com.excrele.cache.TinyLfuCache;
 import com.excrele.config.ConfigManager;
+import com.excrele.database.AccountDao;
+import com.excrele.database.AccountFilter;
+import com.excrele.database.AccountMembership;
+import com.excrele.database.AccountPage;
+import com.excrele.database.AccountSnapshot;
 import com.excrele.database.DatabaseManager;
 import com.excrele.database.MigrationTool;
+import com.excrele.premium.PremiumLookupService;
+import com.excrele.premium.PremiumSource;
 import com.excrele.security.IPFilterManager;
 import com.excrele.statistics.StatisticsManager;
 import org.bukkit.Bukkit;
@@ -16,32 +26,64 @@ import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.logging.Level;
 
 public class AdminCommandHandler implements CommandExecutor, TabCompleter {
+    private static final int LIST_PAGE_SIZE = 10;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
     private final AuthManager authManager;
+    private final PasswordManager passwordManager;
     private final ConfigManager config;
     private final DatabaseManager databaseManager;
+    private final AccountDao accountDao;
     private final IPFilterManager ipFilterManager;
     private final TwoFactorAuthManager twoFactorAuthManager;
     private final PasswordRecoveryManager passwordRecoveryManager;
     private final StatisticsManager statisticsManager;
+    private final CacheManager cacheManager;
+    private final PremiumLookupService premiumLookup;
     private final MigrationTool migrationTool;
     private final JavaPlugin plugin;
+    private final Map<String, ListCursor> listCursors = new HashMap<>(); // Main thread only
+
+    /**
+     * Where a sender's /auth list stopped, so "next" continues from there
+     */
+    private static final class ListCursor {
+        private final AccountFilter filter;
+        private final UUID lastKey;
+        private final int page;
+
+        ListCursor(AccountFilter filter, UUID lastKey, int page) {
+            this.filter = filter;
+            this.lastKey = lastKey;
+            this.page = page;
+        }
+    }
 
-    public AdminCommandHandler(AuthManager authManager, ConfigManager config,
-                              DatabaseManager databaseManager, IPFilterManager ipFilterManager,
+    public AdminCommandHandler(AuthManager authManager, PasswordManager passwordManager, ConfigManager config,
+                              DatabaseManager databaseManager, AccountDao accountDao,
+                              IPFilterManager ipFilterManager,
                               TwoFactorAuthManager twoFactorAuthManager,
                               PasswordRecoveryManager passwordRecoveryManager,
-                              StatisticsManager statisticsManager, MigrationTool migrationTool,
+                              StatisticsManager statisticsManager, CacheManager cacheManager,
+                              PremiumLookupService premiumLookup, MigrationTool migrationTool,
                               JavaPlugin plugin) {
         this.authManager = authManager;
+        this.passwordManager = passwordManager;
         this.config = config;
         this.databaseManager = databaseManager;
+        this.accountDao = accountDao;
         this.ipFilterManager = ipFilterManager;
         this.twoFactorAuthManager = twoFactorAuthManager;
         this.passwordRecoveryManager = passwordRecoveryManager;
         this.statisticsManager = statisticsManager;
+        this.cacheManager = cacheManager;
+        this.premiumLookup = premiumLookup;
         this.migrationTool = migrationTool;
         this.plugin = plugin;
     }
@@ -63,7 +105,7 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
 
         switch (subCommand) {
             case "list":
-                return handleList(sender);
+                return handleList(sender, args);
             case "info":
                 return handleInfo(sender, args);
             case "unlock":
@@ -80,8 +122,17 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
                 return handleRecovery(sender, args);
             case "stats":
                 return handleStats(sender);
+            case "hashes":
+                return handleHashes(sender);
+            case "calibrate":
+                return handleCalibrate(sender);
             case "migrate":
                 return handleMigrate(sender, args);
+            case "backup":
+                return handleBackup(sender, args);
+            case "restore":
+                migrationTool.restore(args.length > 1 ? args[1] : null, sender);
+                return true;
             default:
                 sendHelp(sender);
                 return true;
@@ -90,7 +141,7 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
 
     private void sendHelp(CommandSender sender) {
         sender.sendMessage("§6=== SecureAuth Admin Commands ===");
-        sender.sendMessage("§e/auth list §7- List all registered players");
+        sender.sendMessage("§e/auth list [since:<days>] [2fa] [inactive:<days>] §7- List registered players");
         sender.sendMessage("§e/auth info <player> §7- View player authentication info");
         sender.sendMessage("§e/auth unlock <player> §7- Unlock a locked account");
         sender.sendMessage("§e/auth delete <player> §7- Delete a player's account");
@@ -99,15 +150,87 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
         sender.sendMessage("§e/auth 2fa <setup|disable|info> <player> §7- Manage 2FA");
         sender.sendMessage("§e/auth recovery <setup|info> <player> §7- Manage password recovery");
         sender.sendMessage("§e/auth stats §7- View server statistics");
-        sender.sendMessage("§e/auth migrate <from> <to> §7- Migrate between storage types");
+        sender.sendMessage("§e/auth hashes §7- Count stored password hashes by algorithm and cost");
+        sender.sendMessage("§e/auth calibrate §7- Time password hashing and pick the cost settings for this machine");
+        sender.sendMessage("§e/auth migrate <from> <to> [restart] §7- Migrate between storage types");
+        sender.sendMessage("§e/auth backup [full|incremental] §7- Back up account data while the server runs");
+        sender.sendMessage("§e/auth restore [backup] §7- Restore account data from a backup");
     }
 
-    private boolean handleList(CommandSender sender) {
-        // This would require database access to list all players
-        sender.sendMessage("§cThis feature requires database storage. Use SQLite or MySQL.");
+    private boolean handleList(CommandSender sender, String[] args) {
+        if (databaseManager.isFileBased()) {
+            sender.sendMessage("§cThis feature requires database storage. Use SQLite or MySQL.");
+            return true;
+        }
+
+        ListCursor cursor;
+        if (args.length > 1 && args[1].equalsIgnoreCase("next")) {
+            cursor = listCursors.get(sender.getName());
+            if (cursor == null) {
+                sender.sendMessage("§cNo listing to continue! Use /auth list first.");
+                return true;
+            }
+        } else {
+            long now = System.currentTimeMillis();
+            long registeredSince = 0;
+            boolean twoFactorOnly = false;
+            long unchangedSince = 0;
+            try {
+                for (int i = 1; i < args.length; i++) {
+                    String arg = args[i].toLowerCase();
+                    if (arg.equals("2fa")) {
+                        twoFactorOnly = true;
+                    } else if (arg.startsWith("since:")) {
+                        registeredSince = now - Integer.parseInt(arg.substring(6)) * DAY_MS;
+                    } else if (arg.startsWith("inactive:")) {
+                        unchangedSince = now - Integer.parseInt(arg.substring(9)) * DAY_MS;
+                    } else {
+                        throw new NumberFormatException(arg);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                sender.sendMessage("§cUsage: /auth list [since:<days>] [2fa] [inactive:<days>] | /auth list next");
+                sender.sendMessage("§7inactive: password not changed in that many days");
+                return true;
+            }
+            cursor = new ListCursor(new AccountFilter(registeredSince, twoFactorOnly, unchangedSince), null, 0);
+        }
+
+        ListCursor from = cursor;
+        accountDao.listAccounts(from.filter, from.lastKey, LIST_PAGE_SIZE).whenComplete((page, error) ->
+            Bukkit.getScheduler().runTask(plugin, () -> sendListPage(sender, from, page, error)));
         return true;
     }
 
+    private void sendListPage(CommandSender sender, ListCursor from, AccountPage page, Throwable error) {
+        if (error != null || page == null) {
+            sender.sendMessage("§cFailed to list accounts! Check the console for details.");
+            return;
+        }
+        int pageNumber = from.page + 1;
+        if (page.getEntries().isEmpty()) {
+            listCursors.remove(sender.getName());
+            sender.sendMessage(pageNumber == 1 ? "§7No matching accounts" : "§7No more accounts");
+            return;
+        }
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        sender.sendMessage("§6=== Registered Players (page " + pageNumber + ") ===");
+        for (AccountPage.Entry entry : page.getEntries()) {
+            String name = Bukkit.getOfflinePlayer(entry.getPlayerId()).getName();
+            sender.sendMessage("§e" + (name != null ? name : entry.getPlayerId().toString()) +
+                " §7registered §f" + dateFormat.format(new Date(entry.getCreatedAt())) +
+                " §7changed §f" + dateFormat.format(new Date(entry.getLastChanged())) +
+                (entry.hasTwoFactor() ? " §b2FA" : ""));
+        }
+        if (page.hasMore()) {
+            listCursors.put(sender.getName(), new ListCursor(from.filter, page.getLastKey(), pageNumber));
+            sender.sendMessage("§7Use §e/auth list next §7for more");
+        } else {
+            listCursors.remove(sender.getName());
+        }
+    }
+
     private boolean handleInfo(CommandSender sender, String[] args) {
         if (args.length < 2) {
             sender.sendMessage("§cUsage: /auth info <player>");
@@ -121,17 +244,28 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
         }
 
         UUID playerId = target.getUniqueId();
-        boolean hasPassword = authManager.hasPassword(playerId);
-        boolean has2FA = twoFactorAuthManager.isEnabled() && twoFactorAuthManager.has2FAEnabled(playerId);
-        boolean hasRecovery = passwordRecoveryManager.hasSecurityQuestion(playerId);
+        String name = target.getName();
+        accountDao.getAccount(playerId).whenComplete((account, error) ->
+            Bukkit.getScheduler().runTask(plugin, () -> sendInfo(sender, name, playerId, account, error)));
+        return true;
+    }
 
-        sender.sendMessage("§6=== Player Info: " + target.getName() + " ===");
-        sender.sendMessage("§7Registered: " + (hasPassword ? "§aYes" : "§cNo"));
+    private void sendInfo(CommandSender sender, String name, UUID playerId, AccountSnapshot account, Throwable error) {
+        if (error != null) {
+            reportStorageError(sender, "load account info", name, error);
+            return;
+        }
+        boolean has2FA = twoFactorAuthManager.isEnabled() && account.has2FA();
+        // File storage keeps security questions in memory only
+        boolean hasRecovery = databaseManager.isFileBased()
+            ? passwordRecoveryManager.hasSecurityQuestion(playerId)
+            : account.hasSecurityQuestion();
+
+        sender.sendMessage("§6=== Player Info: " + name + " ===");
+        sender.sendMessage("§7Registered: " + (account.isRegistered() ? "§aYes" : "§cNo"));
         sender.sendMessage("§72FA Enabled: " + (has2FA ? "§aYes" : "§cNo"));
         sender.sendMessage("§7Recovery Setup: " + (hasRecovery ? "§aYes" : "§cNo"));
         sender.sendMessage("§7UUID: " + playerId.toString());
-
-        return true;
     }
 
     private boolean handleUnlock(CommandSender sender, String[] args) {
@@ -167,11 +301,17 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
         }
 
         UUID playerId = target.getUniqueId();
-        authManager.deleteAccount(playerId);
-        sender.sendMessage("§aAccount deleted for " + target.getName());
-        if (config.shouldLogAdminActions()) {
-            plugin.getLogger().info("Admin " + sender.getName() + " deleted account for " + target.getName());
-        }
+        String name = target.getName();
+        authManager.deleteAccount(playerId).whenComplete((ignored, error) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            if (error != null) {
+                reportStorageError(sender, "delete account", name, error);
+                return;
+            }
+            sender.sendMessage("§aAccount deleted for " + name);
+            if (config.shouldLogAdminActions()) {
+                plugin.getLogger().info("Admin " + sender.getName() + " deleted account for " + name);
+            }
+        }));
         return true;
     }
 
@@ -262,22 +402,45 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        UUID playerId = target.getUniqueId();
+        String name = target.getName();
         switch (action) {
             case "setup":
-                if (twoFactorAuthManager.setup2FA(target)) {
-                    sender.sendMessage("§a2FA setup initiated for " + target.getName());
-                    target.sendMessage("§e[SecureAuth] 2FA setup initiated. Check console for QR code URL.");
-                } else {
-                    sender.sendMessage("§cFailed to setup 2FA");
-                }
+                accountDao.supply(() -> twoFactorAuthManager.setup2FA(target)).whenComplete((started, error) ->
+                    Bukkit.getScheduler().runTask(plugin, () -> {
+                        if (error != null) {
+                            reportStorageError(sender, "set up 2FA", name, error);
+                        } else if (started) {
+                            sender.sendMessage("§a2FA setup initiated for " + name);
+                            if (target.isOnline()) {
+                                target.sendMessage("§e[SecureAuth] 2FA setup initiated. Check console for QR code URL.");
+                            }
+                        } else {
+                            sender.sendMessage("§cFailed to setup 2FA");
+                        }
+                    }));
                 break;
             case "disable":
-                twoFactorAuthManager.disable2FA(target.getUniqueId());
-                sender.sendMessage("§a2FA disabled for " + target.getName());
+                accountDao.supply(() -> {
+                    twoFactorAuthManager.disable2FA(playerId);
+                    return null;
+                }).whenComplete((ignored, error) -> Bukkit.getScheduler().runTask(plugin, () -> {
+                    if (error != null) {
+                        reportStorageError(sender, "disable 2FA", name, error);
+                    } else {
+                        sender.sendMessage("§a2FA disabled for " + name);
+                    }
+                }));
                 break;
             case "info":
-                boolean enabled = twoFactorAuthManager.has2FAEnabled(target.getUniqueId());
-                sender.sendMessage("§72FA Status for " + target.getName() + ": " + (enabled ? "§aEnabled" : "§cDisabled"));
+                accountDao.supply(() -> twoFactorAuthManager.has2FAEnabled(playerId)).whenComplete((enabled, error) ->
+                    Bukkit.getScheduler().runTask(plugin, () -> {
+                        if (error != null) {
+                            reportStorageError(sender, "check 2FA", name, error);
+                        } else {
+                            sender.sendMessage("§72FA Status for " + name + ": " + (enabled ? "§aEnabled" : "§cDisabled"));
+                        }
+                    }));
                 break;
         }
 
@@ -298,17 +461,29 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
         }
 
         if (action.equals("info")) {
-            boolean hasRecovery = passwordRecoveryManager.hasSecurityQuestion(target.getUniqueId());
-            sender.sendMessage("§7Recovery Status for " + target.getName() + ": " + (hasRecovery ? "§aSetup" : "§cNot Setup"));
-            if (hasRecovery) {
-                String question = passwordRecoveryManager.getSecurityQuestion(target.getUniqueId());
-                sender.sendMessage("§7Security Question: " + question);
-            }
+            UUID playerId = target.getUniqueId();
+            String name = target.getName();
+            accountDao.supply(() -> passwordRecoveryManager.getSecurityQuestion(playerId)).whenComplete((question, error) ->
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    if (error != null) {
+                        reportStorageError(sender, "check recovery", name, error);
+                        return;
+                    }
+                    sender.sendMessage("§7Recovery Status for " + name + ": " + (question != null ? "§aSetup" : "§cNot Setup"));
+                    if (question != null) {
+                        sender.sendMessage("§7Security Question: " + question);
+                    }
+                }));
         }
 
         return true;
     }
 
+    private void reportStorageError(CommandSender sender, String action, String name, Throwable error) {
+        plugin.getLogger().log(Level.WARNING, "Failed to " + action + " for " + name, error);
+        sender.sendMessage("§cFailed to " + action + "! Check the console for details.");
+    }
+
     private boolean handleStats(CommandSender sender) {
         sender.sendMessage("§6=== SecureAuth Statistics ===");
         sender.sendMessage("§7Total Registrations: §a" + statisticsManager.getTotalRegistrations());
@@ -317,31 +492,130 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
         sender.sendMessage("§7Total Password Changes: §e" + statisticsManager.getTotalPasswordChanges());
         sender.sendMessage("§7Total 2FA Setups: §b" + statisticsManager.getTotal2FASetups());
         sender.sendMessage("§7Active Sessions: §a" + statisticsManager.getStatistics().get("activeSessions"));
+        sender.sendMessage("§7Password Hashing: §e" + String.format("%.1f", passwordManager.getHashesPerSecond()) +
+            "§7/s, §e" + passwordManager.getActiveCount() + "§7/" + passwordManager.getThreadCount() +
+            " workers busy, §e" + passwordManager.getQueueDepth() + " §7queued, §c" +
+            passwordManager.getRejectedCount() + " §7refused, §a" + passwordManager.getRehashedCount() + " §7upgraded");
+        if ("argon2".equalsIgnoreCase(config.getHashAlgorithm()) || passwordManager.getArgon2MemoryPeakKib() > 0) {
+            sender.sendMessage("§7Argon2 Memory: §e" + passwordManager.getArgon2MemoryUsedKib() / 1024 + " MiB §7in use, peak §e" +
+                passwordManager.getArgon2MemoryPeakKib() / 1024 + " MiB§7, budget §e" +
+                passwordManager.getArgon2MemoryBudgetKib() / 1024 + " MiB §7(" + passwordManager.getArgon2Backend() + ")");
+        }
+        if (config.isPremiumAutoLogin()) {
+            StringBuilder sources = new StringBuilder();
+            for (PremiumSource source : PremiumSource.values()) {
+                sources.append(sources.length() == 0 ? "" : "§7, ").append("§e").append(source.getConfigName())
+                    .append(" §a").append(premiumLookup.getResolvedCount(source));
+            }
+            sender.sendMessage("§7Premium Checks: " + sources);
+            sender.sendMessage("§7Premium API: §e" + premiumLookup.getLookupCount() + " §7names in §e" +
+                premiumLookup.getRequestCount() + " §7requests");
+        }
+        if (!databaseManager.isFileBased()) {
+            sender.sendMessage("§7Main-thread DB Queries: §e" + databaseManager.getPrimaryThreadConnections());
+            TinyLfuCache<UUID, AccountSnapshot> accounts = cacheManager.getAccountCache();
+            sender.sendMessage("§7Account Cache: §a" + accounts.getHits() + " §7hits, §c" + accounts.getMisses() +
+                " §7misses (§e" + String.format("%.1f", accounts.getHitRate() * 100) + "%§7), §e" +
+                accounts.size() + "§7/" + accounts.getMaximumSize() + " cached");
+            AccountMembership membership = databaseManager.getAccountMembership();
+            if (membership != null && membership.isReady()) {
+                sender.sendMessage("§7Account Filter: §e" + membership.getApproximateCount() + " §7accounts, §e" +
+                    membership.getMemoryBytes() / 1024 + " KiB§7, false positives §e" +
+                    String.format("%.2f", membership.getFalsePositiveRate() * 100) + "% §7(target " +
+                    String.format("%.2f", membership.getConfiguredFalsePositiveRate() * 100) + "%), §a" +
+                    membership.getSkippedLookups() + " §7lookups skipped");
+            } else if (membership != null) {
+                sender.sendMessage("§7Account Filter: §eBuilding...");
+            }
+            if (databaseManager.isWriteBehindEnabled()) {
+                sender.sendMessage("§7Queued Writes: §e" + databaseManager.getPendingWrites());
+            }
+        }
+        return true;
+    }
+
+    private boolean handleHashes(CommandSender sender) {
+        sender.sendMessage("§7Counting stored password hashes...");
+        String current = passwordManager.getCurrentScheme();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            Map<String, Long> counts = databaseManager.countPasswordHashes(passwordManager::describeHash);
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (counts == null) {
+                    sender.sendMessage("§cFailed to read password hashes! Check the console for details.");
+                    return;
+                }
+                long outdated = 0;
+                sender.sendMessage("§6=== Password Hashes ===");
+                for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                    boolean isCurrent = entry.getKey().equals(current);
+                    if (!isCurrent) {
+                        outdated += entry.getValue();
+                    }
+                    sender.sendMessage((isCurrent ? "§a" : "§e") + entry.getKey() + "§7: §f" + entry.getValue() +
+                        (isCurrent ? " §7(current)" : ""));
+                }
+                sender.sendMessage("§7Awaiting upgrade at next login: §e" + outdated + " §7| Upgraded since startup: §a" +
+                    passwordManager.getRehashedCount());
+            });
+        });
+        return true;
+    }
+
+    private boolean handleCalibrate(CommandSender sender) {
+        if (!config.isHashCalibrationEnabled()) {
+            sender.sendMessage("§cHash calibration is disabled! Set security.calibration.enabled to true.");
+            return true;
+        }
+        sender.sendMessage("§7Calibrating password hashing, this takes a few seconds...");
+        passwordManager.calibrate().whenComplete((scheme, error) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            if (error != null) {
+                sender.sendMessage("§cCalibration failed! Check the console for details.");
+            } else if (scheme == null) {
+                sender.sendMessage("§cA calibration is already running!");
+            } else {
+                sender.sendMessage("§aPassword hashing now uses §e" + scheme + "§a; existing hashes are upgraded at login.");
+            }
+        }));
         return true;
     }
 
     private boolean handleMigrate(CommandSender sender, String[] args) {
         if (args.length < 3) {
-            sender.sendMessage("§cUsage: /auth migrate <from> <to>");
+            sender.sendMessage("§cUsage: /auth migrate <from> <to> [restart]");
             sender.sendMessage("§7Example: /auth migrate file sqlite");
             sender.sendMessage("§7Or: /auth migrate sqlite mysql");
+            sender.sendMessage("§7An interrupted migration resumes where it stopped unless §erestart §7is given");
             return true;
         }
 
         String from = args[1].toLowerCase();
         String to = args[2].toLowerCase();
+        boolean restart = args.length > 3 && args[3].equalsIgnoreCase("restart");
 
-        if (from.equals("file") && (to.equals("sqlite") || to.equals("mysql"))) {
-            return migrationTool.migrateFromFileToDatabase(to, sender);
-        } else if ((from.equals("sqlite") || from.equals("mysql")) && 
-                   (to.equals("sqlite") || to.equals("mysql"))) {
-            return migrationTool.migrateBetweenDatabases(from, to, sender);
+        if ((from.equals("file") || from.equals("sqlite") || from.equals("mysql")) &&
+                (to.equals("sqlite") || to.equals("mysql")) && !from.equals(to)) {
+            migrationTool.migrate(from, to, restart, sender);
+            return true;
         } else {
             sender.sendMessage("§cInvalid migration path! Supported: file->sqlite, file->mysql, sqlite<->mysql");
             return true;
         }
     }
 
+    private boolean handleBackup(CommandSender sender, String[] args) {
+        String mode = args.length > 1 ? args[1].toLowerCase() : null;
+        if (mode != null && !mode.equals("full") && !mode.equals("incremental")) {
+            sender.sendMessage("§cUsage: /auth backup [full|incremental]");
+            return true;
+        }
+        if ("incremental".equals(mode) && !config.isIncrementalBackupEnabled()) {
+            sender.sendMessage("§cIncremental backups are disabled! Set database.backup.incremental to true.");
+            return true;
+        }
+        migrationTool.backupData(sender, mode);
+        return true;
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (!sender.hasPermission("secureauth.admin")) {
@@ -349,12 +623,14 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
         }
 
         if (args.length == 1) {
-            return Arrays.asList("list", "info", "unlock", "delete", "ipwhitelist", "ipblacklist", "2fa", "recovery", "stats", "migrate");
+            return Arrays.asList("list", "info", "unlock", "delete", "ipwhitelist", "ipblacklist", "2fa", "recovery", "stats", "hashes", "calibrate", "migrate", "backup", "restore");
         }
 
         if (args.length == 2) {
             String subCommand = args[0].toLowerCase();
             switch (subCommand) {
+                case "list":
+                    return Arrays.asList("next", "since:", "2fa", "inactive:");
                 case "ipwhitelist":
                 case "ipblacklist":
                     return Arrays.asList("add", "remove", "list");
@@ -364,9 +640,23 @@ public class AdminCommandHandler implements CommandExecutor, TabCompleter {
                     return Arrays.asList("setup", "info");
                 case "migrate":
                     return Arrays.asList("file", "sqlite", "mysql");
+                case "backup":
+                    return Arrays.asList("full", "incremental");
+                case "restore":
+                    String[] backups = new File(plugin.getDataFolder(), "backups")
+                        .list((dir, name) -> name.startsWith("secureauth-") && name.endsWith(".gz"));
+                    return backups == null ? Collections.emptyList() : Arrays.asList(backups);
             }
         }
 
+        if (args.length == 3 && args[0].equalsIgnoreCase("migrate")) {
+            return Arrays.asList("sqlite", "mysql");
+        }
+
+        if (args.length == 4 && args[0].equalsIgnoreCase("migrate")) {
+            return Collections.singletonList("restart");
+        }
+
         return Collections.emptyList();
     }
 }
@@ -65,7 +65,9 @@ public class AuthCommandHandler implements CommandExecutor {
             player.sendMessage("§ePassword Strength: §7" + strengthFeedback);
         }
 
-        return authManager.register(player, pass1, pass2);
+        // Completes asynchronously; AuthManager messages the player when done
+        authManager.register(player, pass1, pass2);
+        return true;
     }
 
     private boolean handleLogin(Player player, String[] args) {
@@ -75,7 +77,8 @@ public class AuthCommandHandler implements CommandExecutor {
         }
 
         String password = args[0];
-        return authManager.login(player, password);
+        authManager.login(player, password);
+        return true;
     }
 
     private boolean handleChangePass(Player player, String[] args) {
@@ -88,7 +91,8 @@ public class AuthCommandHandler implements CommandExecutor {
         String newPass1 = args[1];
         String newPass2 = args[2];
 
-        return authManager.changePassword(player, oldPass, newPass1, newPass2);
+        authManager.changePassword(player, oldPass, newPass1, newPass2);
+        return true;
     }
 
     private boolean handleSetPass(CommandSender sender, String[] args) {
@@ -118,10 +122,15 @@ public class AuthCommandHandler implements CommandExecutor {
             return true;
         }
 
-        authManager.setPasswordAdmin(targetPlayer, newPass);
-        sender.sendMessage(config.getMessage("setpass-success",
-            "&aPassword set for {player} successfully!")
-            .replace("{player}", targetPlayer.getName()));
+        authManager.setPasswordAdmin(targetPlayer, newPass).thenAccept(success -> {
+            if (success) {
+                sender.sendMessage(config.getMessage("setpass-success",
+                    "&aPassword set for {player} successfully!")
+                    .replace("{player}", targetPlayer.getName()));
+            } else {
+                sender.sendMessage("§cFailed to set password for " + targetPlayer.getName() + ", see console.");
+            }
+        });
         return true;
     }
 }
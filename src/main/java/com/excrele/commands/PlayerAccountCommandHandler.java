@@ -4,28 +4,44 @@ import com.excrele.auth.AuthManager;
 import com.excrele.auth.SessionManager;
 import com.excrele.auth.TwoFactorAuthManager;
 import com.excrele.config.ConfigManager;
+import com.excrele.database.AccountDao;
+import com.excrele.database.AccountSnapshot;
+import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 public class PlayerAccountCommandHandler implements CommandExecutor {
     private final AuthManager authManager;
+    private final AccountDao accountDao;
     private final SessionManager sessionManager;
     private final TwoFactorAuthManager twoFactorAuthManager;
     private final ConfigManager config;
     private final JavaPlugin plugin;
+    private final Executor mainThread;
 
-    public PlayerAccountCommandHandler(AuthManager authManager, SessionManager sessionManager,
+    /**
+     * Outcome of a 2FA command's storage work
+     */
+    private enum TwoFactorResult {
+        NOT_ENABLED, ALREADY_ENABLED, DONE, FAILED
+    }
+
+    public PlayerAccountCommandHandler(AuthManager authManager, AccountDao accountDao, SessionManager sessionManager,
                                       TwoFactorAuthManager twoFactorAuthManager,
                                       ConfigManager config, JavaPlugin plugin) {
         this.authManager = authManager;
+        this.accountDao = accountDao;
         this.sessionManager = sessionManager;
         this.twoFactorAuthManager = twoFactorAuthManager;
         this.config = config;
         this.plugin = plugin;
+        this.mainThread = task -> Bukkit.getScheduler().runTask(plugin, task);
     }
 
     @Override
@@ -57,16 +73,26 @@ public class PlayerAccountCommandHandler implements CommandExecutor {
 
     private boolean handleAuthInfo(Player player) {
         UUID playerId = player.getUniqueId();
-        boolean hasPassword = authManager.hasPassword(playerId);
+        accountDao.getAccount(playerId).handleAsync((account, error) -> sendAuthInfo(player, account, error), mainThread);
+        return true;
+    }
+
+    private boolean sendAuthInfo(Player player, AccountSnapshot account, Throwable error) {
+        if (error != null) {
+            return authManager.handleStorageError(player, "load account info", error);
+        }
+        if (!player.isOnline()) {
+            return false;
+        }
+        UUID playerId = player.getUniqueId();
         boolean isLoggedIn = sessionManager.isLoggedIn(playerId);
-        boolean has2FA = twoFactorAuthManager.isEnabled() && twoFactorAuthManager.has2FAEnabled(playerId);
+        boolean has2FA = twoFactorAuthManager.isEnabled() && account.has2FA();
 
         player.sendMessage("§6=== Your Account Information ===");
-        player.sendMessage("§7Registered: " + (hasPassword ? "§aYes" : "§cNo"));
+        player.sendMessage("§7Registered: " + (account.isRegistered() ? "§aYes" : "§cNo"));
         player.sendMessage("§7Logged In: " + (isLoggedIn ? "§aYes" : "§cNo"));
         player.sendMessage("§72FA Enabled: " + (has2FA ? "§aYes" : "§cNo"));
         player.sendMessage("§7UUID: " + playerId.toString());
-
         return true;
     }
 
@@ -112,45 +138,60 @@ public class PlayerAccountCommandHandler implements CommandExecutor {
 
         switch (action) {
             case "setup":
-                if (twoFactorAuthManager.has2FAEnabled(playerId)) {
-                    player.sendMessage("§c2FA is already enabled for your account!");
-                    return true;
-                }
-
-                if (twoFactorAuthManager.setup2FA(player)) {
-                    String qrUrl = twoFactorAuthManager.generateQRCodeURL(playerId, player.getName(),
-                        twoFactorAuthManager.getPendingSecret(playerId));
-                    player.sendMessage("§a2FA setup initiated!");
-                    player.sendMessage("§7Scan this QR code with your authenticator app:");
-                    player.sendMessage("§e" + qrUrl);
-                    player.sendMessage("§7Or enter this secret manually: §e" + twoFactorAuthManager.getPendingSecret(playerId));
+                accountDao.supply(() -> {
+                    if (twoFactorAuthManager.has2FAEnabled(playerId)) {
+                        return TwoFactorResult.ALREADY_ENABLED;
+                    }
+                    return twoFactorAuthManager.setup2FA(player) ? TwoFactorResult.DONE : TwoFactorResult.FAILED;
+                }).handleAsync((result, error) -> {
+                    if (error != null) {
+                        return authManager.handleStorageError(player, "set up 2FA", error);
+                    }
+                    if (!player.isOnline()) {
+                        return false;
+                    }
                     
-                    // Show backup codes
-                    java.util.List<String> backupCodes = twoFactorAuthManager.getBackupCodesForPlayer(playerId);
-                    if (backupCodes != null && !backupCodes.isEmpty()) {
-                        player.sendMessage("§6Backup Codes (save these!):");
-                        for (String code : backupCodes) {
-                            player.sendMessage("§7- " + code);
-                        }
+                    switch (result) {
+                        case ALREADY_ENABLED:
+                            player.sendMessage("§c2FA is already enabled for your account!");
+                            return false;
+                        case FAILED:
+                            player.sendMessage("§cFailed to setup 2FA!");
+                            return false;
+                        default:
+                            sendSetupDetails(player);
+                            return true;
                     }
-                } else {
-                    player.sendMessage("§cFailed to setup 2FA!");
-                }
+                }, mainThread);
                 break;
 
             case "disable":
-                if (!twoFactorAuthManager.has2FAEnabled(playerId)) {
-                    player.sendMessage("§c2FA is not enabled for your account!");
-                    return true;
-                }
-
                 if (!sessionManager.isLoggedIn(playerId)) {
                     player.sendMessage("§cYou must be logged in to disable 2FA!");
                     return true;
                 }
 
-                twoFactorAuthManager.disable2FA(playerId);
-                player.sendMessage("§a2FA has been disabled for your account!");
+                accountDao.supply(() -> {
+                    if (!twoFactorAuthManager.has2FAEnabled(playerId)) {
+                        return TwoFactorResult.NOT_ENABLED;
+                    }
+                    twoFactorAuthManager.disable2FA(playerId);
+                    return TwoFactorResult.DONE;
+                }).handleAsync((result, error) -> {
+                    if (error != null) {
+                        return authManager.handleStorageError(player, "disable 2FA", error);
+                    }
+                    if (!player.isOnline()) {
+                        return false;
+                    }
+                    
+                    if (result == TwoFactorResult.NOT_ENABLED) {
+                        player.sendMessage("§c2FA is not enabled for your account!");
+                        return false;
+                    }
+                    player.sendMessage("§a2FA has been disabled for your account!");
+                    return true;
+                }, mainThread);
                 break;
 
             default:
@@ -161,6 +202,25 @@ public class PlayerAccountCommandHandler implements CommandExecutor {
         return true;
     }
 
+    private void sendSetupDetails(Player player) {
+        UUID playerId = player.getUniqueId();
+        String secret = twoFactorAuthManager.getPendingSecret(playerId);
+        String qrUrl = twoFactorAuthManager.generateQRCodeURL(playerId, player.getName(), secret);
+        player.sendMessage("§a2FA setup initiated!");
+        player.sendMessage("§7Scan this QR code with your authenticator app:");
+        player.sendMessage("§e" + qrUrl);
+        player.sendMessage("§7Or enter this secret manually: §e" + secret);
+        
+        // Show backup codes
+        List<String> backupCodes = twoFactorAuthManager.getPendingBackupCodes(playerId);
+        if (backupCodes != null && !backupCodes.isEmpty()) {
+            player.sendMessage("§6Backup Codes (save these!):");
+            for (String code : backupCodes) {
+                player.sendMessage("§7- " + code);
+            }
+        }
+    }
+
     private boolean handle2FAVerify(Player player, String[] args) {
         if (!twoFactorAuthManager.isEnabled()) {
             player.sendMessage("§c2FA is not enabled on this server!");
@@ -175,20 +235,34 @@ public class PlayerAccountCommandHandler implements CommandExecutor {
         String code = args[0];
         UUID playerId = player.getUniqueId();
 
-        if (!twoFactorAuthManager.has2FAEnabled(playerId)) {
-            player.sendMessage("§c2FA is not enabled for your account!");
-            return true;
-        }
-
-        if (twoFactorAuthManager.verifyTOTP(playerId, code)) {
-            // Complete login
-            sessionManager.setLoggedIn(playerId, true);
-            player.sendMessage("§a2FA verified! You are now logged in.");
-            return true;
-        } else {
-            player.sendMessage("§cInvalid 2FA code! Please try again.");
-            return true;
-        }
+        // The secret is read, and a used backup code written back, on the database pool
+        accountDao.supply(() -> {
+            if (!twoFactorAuthManager.has2FAEnabled(playerId)) {
+                return TwoFactorResult.NOT_ENABLED;
+            }
+            return twoFactorAuthManager.verifyTOTP(playerId, code) ? TwoFactorResult.DONE : TwoFactorResult.FAILED;
+        }).handleAsync((result, error) -> {
+            if (error != null) {
+                return authManager.handleStorageError(player, "verify 2FA", error);
+            }
+            if (!player.isOnline()) {
+                return false;
+            }
+            
+            switch (result) {
+                case NOT_ENABLED:
+                    player.sendMessage("§c2FA is not enabled for your account!");
+                    return false;
+                case DONE:
+                    // Complete login
+                    sessionManager.setLoggedIn(playerId, true);
+                    player.sendMessage("§a2FA verified! You are now logged in.");
+                    return true;
+                default:
+                    player.sendMessage("§cInvalid 2FA code! Please try again.");
+                    return false;
+            }
+        }, mainThread);
+        return true;
     }
 }
-
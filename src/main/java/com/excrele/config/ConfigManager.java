@@ -7,6 +7,8 @@ import org.bukkit.plugin.java.JavaPlugin;
 import java.io.File;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 
 public class ConfigManager {
@@ -53,6 +55,106 @@ public class ConfigManager {
         return config.getString("database.sqlite.filename", "secureauth.db");
     }
 
+    public boolean isSqliteWalEnabled() {
+        return config.getBoolean("database.sqlite.wal", true);
+    }
+
+    public int getSqliteReadPoolSize() {
+        return config.getInt("database.sqlite.read-pool-size", 4);
+    }
+
+    public String getSqliteSynchronous() {
+        return config.getString("database.sqlite.pragmas.synchronous", "NORMAL");
+    }
+
+    public int getSqliteCacheSize() {
+        return config.getInt("database.sqlite.pragmas.cache-size", -8000);
+    }
+
+    public long getSqliteMmapSize() {
+        return config.getLong("database.sqlite.pragmas.mmap-size", 268435456L);
+    }
+
+    public int getSqliteBusyTimeout() {
+        return config.getInt("database.sqlite.pragmas.busy-timeout", 5000);
+    }
+
+    public boolean isWriteBehindEnabled() {
+        return config.getBoolean("database.write-behind.enabled", false);
+    }
+
+    public long getWriteBehindFlushIntervalMs() {
+        return config.getLong("database.write-behind.flush-interval-ms", 50);
+    }
+
+    public int getWriteBehindBatchSize() {
+        return config.getInt("database.write-behind.batch-size", 500);
+    }
+
+    public int getMigrationBatchSize() {
+        return config.getInt("database.migration.batch-size", 1000);
+    }
+
+    public int getMigrationParallelism() {
+        return config.getInt("database.migration.parallelism", 4);
+    }
+
+    public int getMigrationMaxRowsPerSecond() {
+        return config.getInt("database.migration.max-rows-per-second", 0);
+    }
+
+    public int getBackupRetention() {
+        return config.getInt("database.backup.keep", 10);
+    }
+
+    public boolean isIncrementalBackupEnabled() {
+        return config.getBoolean("database.backup.incremental", false);
+    }
+
+    public int getBackupFullEvery() {
+        return config.getInt("database.backup.full-every", 24);
+    }
+
+    public int getBackupIntervalMinutes() {
+        return config.getInt("database.backup.interval-minutes", 0);
+    }
+
+    public int getAccountCacheMaximumSize() {
+        return config.getInt("database.cache.maximum-size", 10000);
+    }
+
+    public long getAccountCacheExpireSeconds() {
+        return config.getLong("database.cache.expire-after-write-seconds", 600);
+    }
+
+    public long getAccountCacheRefreshSeconds() {
+        return config.getLong("database.cache.refresh-after-write-seconds", 300);
+    }
+
+    public boolean isAccountPreloadEnabled() {
+        return config.getBoolean("database.cache.preload.enabled", false);
+    }
+
+    public int getAccountPreloadCount() {
+        return config.getInt("database.cache.preload.accounts", 2000);
+    }
+
+    public int getAccountPreloadRate() {
+        return config.getInt("database.cache.preload.rate-per-second", 500);
+    }
+
+    public boolean isAccountFilterEnabled() {
+        return config.getBoolean("database.account-filter.enabled", true);
+    }
+
+    public double getAccountFilterFalsePositiveRate() {
+        return config.getDouble("database.account-filter.false-positive-rate", 0.01);
+    }
+
+    public int getAccountFilterMaxMemoryKb() {
+        return config.getInt("database.account-filter.max-memory-kb", 16384);
+    }
+
     public String getMysqlHost() {
         return config.getString("database.mysql.host", "localhost");
     }
@@ -81,11 +183,63 @@ public class ConfigManager {
         return config.getLong("database.mysql.max-lifetime", 1800000);
     }
 
+    public int getDatabaseThreads() {
+        return config.getInt("database.async.threads", 4);
+    }
+
+    public int getDatabaseQueueSize() {
+        return config.getInt("database.async.queue-size", 1000);
+    }
+
+    public long getDatabaseTimeoutMs() {
+        return config.getLong("database.async.timeout-ms", 5000);
+    }
+
+    public String getFileIndexType() {
+        return config.getString("database.file.index", "memory");
+    }
+
+    public double getFileCompactionRatio() {
+        return config.getDouble("database.file.compaction-ratio", 1.0);
+    }
+
     // Security settings
     public String getHashAlgorithm() {
         return config.getString("security.hash-algorithm", "bcrypt");
     }
 
+    public int getHashingThreads() {
+        return config.getInt("security.hashing.threads", 0);
+    }
+
+    public int getHashingQueueSize() {
+        return config.getInt("security.hashing.queue-size", 200);
+    }
+
+    public boolean isHashCalibrationEnabled() {
+        return config.getBoolean("security.calibration.enabled", false);
+    }
+
+    public long getHashCalibrationTargetMs() {
+        return config.getLong("security.calibration.target-ms", 100);
+    }
+
+    public int getHashCalibrationMinHashesPerSecond() {
+        return config.getInt("security.calibration.min-hashes-per-second", 20);
+    }
+
+    public int getHashCalibrationMinBcryptCost() {
+        return config.getInt("security.calibration.min-bcrypt-cost", 10);
+    }
+
+    public int getHashCalibrationMinArgon2Iterations() {
+        return config.getInt("security.calibration.min-argon2-iterations", 2);
+    }
+
+    public int getHashCalibrationMinArgon2Memory() {
+        return config.getInt("security.calibration.min-argon2-memory", 19456);
+    }
+
     public int getBcryptCostFactor() {
         return config.getInt("security.bcrypt.cost-factor", 10);
     }
@@ -102,6 +256,18 @@ public class ConfigManager {
         return config.getInt("security.argon2.parallelism", 4);
     }
 
+    public String getArgon2Backend() {
+        return config.getString("security.argon2.backend", "native");
+    }
+
+    public int getArgon2MemoryBudget() {
+        return config.getInt("security.argon2.memory-budget", 262144);
+    }
+
+    public long getArgon2MemoryWaitMs() {
+        return config.getLong("security.argon2.memory-wait-ms", 2000);
+    }
+
     public int getMinPasswordLength() {
         return config.getInt("security.min-password-length", 4);
     }
@@ -169,6 +335,51 @@ public class ConfigManager {
         return config.getBoolean("premium.fail-safe-cracked", true);
     }
 
+    public List<String> getPremiumResolutionOrder() {
+        List<String> order = config.getStringList("premium.resolution-order");
+        return order.isEmpty() ? Arrays.asList("uuid", "profile", "cache", "api") : order;
+    }
+
+    public boolean isPremiumProxyAuthenticated() {
+        return config.getBoolean("premium.proxy-authenticated", false);
+    }
+
+    public String getPremiumApiUrl() {
+        return config.getString("premium.api-url", "https://api.mojang.com/users/profiles/minecraft/");
+    }
+
+    public int getPremiumMaxConcurrentRequests() {
+        return config.getInt("premium.max-concurrent-requests", 4);
+    }
+
+    public boolean isPremiumBatchingEnabled() {
+        return config.getBoolean("premium.batch.enabled", true);
+    }
+
+    public String getPremiumBulkApiUrl() {
+        return config.getString("premium.batch.api-url", "https://api.mojang.com/profiles/minecraft");
+    }
+
+    public int getPremiumBatchSize() {
+        return config.getInt("premium.batch.size", 10);
+    }
+
+    public long getPremiumBatchWindowMs() {
+        return config.getLong("premium.batch.window-ms", 25);
+    }
+
+    public boolean isPremiumCachePersistent() {
+        return config.getBoolean("premium.cache.persistent", true);
+    }
+
+    public int getPremiumCacheTtlDays() {
+        return config.getInt("premium.cache.premium-ttl-days", 30);
+    }
+
+    public int getCrackedCacheTtlHours() {
+        return config.getInt("premium.cache.cracked-ttl-hours", 24);
+    }
+
     // Restrictions
     public boolean isBlockChat() {
         return config.getBoolean("restrictions.block-chat", true);
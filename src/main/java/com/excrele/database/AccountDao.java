@@ -0,0 +1,177 @@
+package com.excrele.database;
+
+import com.excrele.config.ConfigManager;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Asynchronous account storage access.
+ *
+ * Every call runs on a small bounded pool so JDBC and file I/O never block the server
+ * thread, and every returned future fails with a TimeoutException after the configured
+ * timeout. A full queue fails the future with RejectedExecutionException immediately.
+ */
+public class AccountDao {
+    private final DatabaseManager databaseManager;
+    private final JavaPlugin plugin;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    public AccountDao(ConfigManager config, DatabaseManager databaseManager, JavaPlugin plugin) {
+        this.databaseManager = databaseManager;
+        this.plugin = plugin;
+        this.timeoutMs = config.getDatabaseTimeoutMs();
+
+        int threads = Math.max(1, config.getDatabaseThreads());
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "SecureAuth-DB-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, config.getDatabaseQueueSize())), threadFactory,
+            new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run arbitrary storage work on the database pool with the standard timeout
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor).orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> hasPassword(UUID playerId) {
+        return supply(() -> {
+            if (databaseManager.isFileBased()) {
+                FileAccountStore store = databaseManager.getFileStore();
+                return store != null && store.contains(playerId);
+            }
+            return databaseManager.hasPassword(playerId);
+        });
+    }
+
+    /**
+     * The stored account; with file storage only the password hash is known
+     */
+    public CompletableFuture<AccountSnapshot> getAccount(UUID playerId) {
+        return supply(() -> {
+            if (databaseManager.isFileBased()) {
+                FileAccountStore store = databaseManager.getFileStore();
+                try {
+                    String hash = store == null ? null : store.get(playerId);
+                    return new AccountSnapshot(playerId, hash, 0, 0, null, null, 0, null, null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            AccountSnapshot account = databaseManager.getAccountSnapshot(playerId);
+            if (account == null) {
+                throw new IllegalStateException("Failed to load account " + playerId);
+            }
+            return account;
+        });
+    }
+
+    public CompletableFuture<String> getPasswordHash(UUID playerId) {
+        return supply(() -> {
+            if (databaseManager.isFileBased()) {
+                FileAccountStore store = databaseManager.getFileStore();
+                try {
+                    return store == null ? null : store.get(playerId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return databaseManager.getPasswordHash(playerId);
+        });
+    }
+
+    public CompletableFuture<Void> setPassword(UUID playerId, String passwordHash) {
+        return supply(() -> {
+            if (databaseManager.isFileBased()) {
+                FileAccountStore store = databaseManager.getFileStore();
+                if (store == null) {
+                    throw new UncheckedIOException(new IOException("File storage is not available"));
+                }
+                try {
+                    store.put(playerId, passwordHash);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                databaseManager.setPassword(playerId, passwordHash);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Replace the password hash only if it is still the expected one
+     *
+     * @return whether the hash was replaced
+     */
+    public CompletableFuture<Boolean> replacePasswordHash(UUID playerId, String expectedHash, String passwordHash) {
+        return supply(() -> {
+            if (databaseManager.isFileBased()) {
+                FileAccountStore store = databaseManager.getFileStore();
+                if (store == null) {
+                    throw new UncheckedIOException(new IOException("File storage is not available"));
+                }
+                try {
+                    return store.replace(playerId, expectedHash, passwordHash);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return databaseManager.replacePasswordHash(playerId, expectedHash, passwordHash);
+        });
+    }
+
+    public CompletableFuture<String> get2FASecret(UUID playerId) {
+        return supply(() -> databaseManager.isFileBased() ? null : databaseManager.get2FASecret(playerId));
+    }
+
+    /**
+     * One page of registered accounts; the cursor is the last uuid of the previous page
+     */
+    public CompletableFuture<AccountPage> listAccounts(AccountFilter filter, UUID after, int limit) {
+        return supply(() -> databaseManager.listAccounts(filter, after, limit));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for " + executor.getActiveCount() +
+                    " database tasks to finish");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            plugin.getLogger().log(Level.WARNING, "Interrupted while stopping database workers", e);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.excrele.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conditions for listing registered accounts. Times are epoch milliseconds; 0 means
+ * the condition is not applied.
+ */
+public final class AccountFilter {
+    public static final AccountFilter ALL = new AccountFilter(0, false, 0);
+
+    private final long registeredSince;
+    private final boolean twoFactorOnly;
+    private final long unchangedSince;
+
+    /**
+     * @param registeredSince only accounts created at or after this time
+     * @param twoFactorOnly only accounts with 2FA enabled
+     * @param unchangedSince only accounts whose password was last changed before this time
+     */
+    public AccountFilter(long registeredSince, boolean twoFactorOnly, long unchangedSince) {
+        this.registeredSince = registeredSince;
+        this.twoFactorOnly = twoFactorOnly;
+        this.unchangedSince = unchangedSince;
+    }
+
+    public long getRegisteredSince() {
+        return registeredSince;
+    }
+
+    public boolean isTwoFactorOnly() {
+        return twoFactorOnly;
+    }
+
+    public long getUnchangedSince() {
+        return unchangedSince;
+    }
+
+    /**
+     * SQL conditions on the passwords (p) and 2FA (f) aliases, parameters in order
+     */
+    String whereClause(List<Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        if (registeredSince > 0) {
+            conditions.add("p.created_at >= ?");
+            parameters.add(registeredSince);
+        }
+        if (twoFactorOnly) {
+            conditions.add("f.uuid IS NOT NULL");
+        }
+        if (unchangedSince > 0) {
+            conditions.add("p.last_changed < ?");
+            parameters.add(unchangedSince);
+        }
+        return conditions.isEmpty() ? "" : " AND " + String.join(" AND ", conditions);
+    }
+}
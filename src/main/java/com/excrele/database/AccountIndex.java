@@ -0,0 +1,41 @@
+package com.excrele.database;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * UUID -> log location index used by FileAccountStore.
+ *
+ * Locations are packed as (offset << 16 | length) and are never 0, so 0 means "absent".
+ * Callers provide their own locking.
+ */
+interface AccountIndex {
+    long get(UUID playerId);
+
+    long put(UUID playerId, long location) throws IOException;
+
+    long remove(UUID playerId);
+
+    int size();
+
+    void clear();
+
+    /**
+     * Whether the persisted index still matches a log of the given length
+     */
+    boolean isCurrent(long logLength);
+
+    long getStaleRecords();
+
+    /**
+     * Create an empty index of the same kind for compaction to fill
+     */
+    AccountIndex newCompactionTarget() throws IOException;
+
+    /**
+     * Adopt a filled compaction target, returning the index to use from now on
+     */
+    AccountIndex replaceWith(AccountIndex compacted) throws IOException;
+
+    void close(long logLength, long staleRecords) throws IOException;
+}
@@ -0,0 +1,184 @@
+package com.excrele.database;
+
+import com.excrele.cache.BloomFilter;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Bloom filter of every uuid with a row in any account table, so lookups of players
+ * who have never registered (most joins during a bot flood) are answered without a
+ * query.
+ *
+ * The filter is built in the background by streaming the keys, and uuids are added
+ * once their writes commit. A write that commits while a build runs is added to the
+ * new filter too, so it never misses a stored account. Until the first build finishes
+ * every uuid is "maybe". When more accounts are added than the filter was sized for,
+ * it is rebuilt twice as large.
+ */
+public class AccountMembership {
+    private static final long MIN_CAPACITY = 10000;
+
+    private final DatabaseManager databaseManager;
+    private final JavaPlugin plugin;
+    private final boolean mysql;
+    private final double falsePositiveRate;
+    private final long maxBytes;
+    private volatile BloomFilter filter; // Null until the first build finishes
+    private List<UUID> addedDuringBuild; // Non-null while a build runs; guarded by this
+    private final LongAdder skippedLookups = new LongAdder();
+
+    AccountMembership(DatabaseManager databaseManager, String type, double falsePositiveRate, long maxBytes,
+                      JavaPlugin plugin) {
+        this.databaseManager = databaseManager;
+        this.plugin = plugin;
+        this.mysql = "mysql".equals(type);
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * False only if the uuid certainly has no stored data
+     */
+    boolean mightExist(UUID playerId) {
+        BloomFilter current = filter;
+        if (current == null || current.mightContain(playerId)) {
+            return true;
+        }
+        skippedLookups.increment();
+        return false;
+    }
+
+    /**
+     * Record a uuid whose write has committed
+     */
+    void add(UUID playerId) {
+        BloomFilter current;
+        // Under the lock that guards the swap in build, so the uuid lands in whichever filter survives
+        synchronized (this) {
+            if (addedDuringBuild != null) {
+                addedDuringBuild.add(playerId);
+            }
+            current = filter;
+            if (current != null) {
+                current.put(playerId);
+            }
+        }
+        if (current != null && current.getApproximateCount() > current.getExpectedInsertions()) {
+            rebuild(current.getExpectedInsertions() * 2);
+        }
+    }
+
+    /**
+     * Forget every answer and rebuild in the background, sized for the accounts stored
+     * now (at startup, or after a restore replaced the data)
+     */
+    void reset() {
+        synchronized (this) {
+            filter = null;
+        }
+        rebuild(0);
+    }
+
+    private void rebuild(long minimumCapacity) {
+        synchronized (this) {
+            if (addedDuringBuild != null) {
+                return; // One build at a time
+            }
+            // Started before the keys are read, so a write committing meanwhile is in one or the other
+            addedDuringBuild = new ArrayList<>();
+        }
+        try {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> build(minimumCapacity));
+        } catch (RuntimeException e) {
+            // Plugin disabling
+            synchronized (this) {
+                addedDuringBuild = null;
+            }
+        }
+    }
+
+    private void build(long minimumCapacity) {
+        long started = System.currentTimeMillis();
+        try (Connection conn = databaseManager.getConnection()) {
+            long count = 0;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM secureauth_passwords");
+                 ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    count = rs.getLong(1);
+                }
+            }
+
+            // Room to double before the next rebuild
+            BloomFilter next = BloomFilter.create(Math.max(MIN_CAPACITY, Math.max(minimumCapacity, count * 2)),
+                falsePositiveRate, maxBytes);
+
+            // Uuids are inserted, never read back, so duplicates across tables are harmless
+            String sql = "SELECT uuid FROM secureauth_passwords UNION ALL SELECT uuid FROM secureauth_2fa " +
+                "UNION ALL SELECT uuid FROM secureauth_recovery";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setFetchSize(mysql ? Integer.MIN_VALUE : 10000); // Connector/J streams rows instead of buffering them
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        next.put(Uuids.fromBytes(rs.getBytes(1)));
+                    }
+                }
+            }
+
+            synchronized (this) {
+                addedDuringBuild.forEach(next::put);
+                filter = next;
+                addedDuringBuild = null;
+            }
+            plugin.getLogger().info("Account filter built: " + next.getApproximateCount() + " accounts, " +
+                next.getMemoryBytes() / 1024 + " KiB, " + (System.currentTimeMillis() - started) + "ms");
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                filter = null; // Every lookup goes to the database until a build succeeds
+                addedDuringBuild = null;
+            }
+            plugin.getLogger().log(Level.WARNING, "Failed to build the account filter; lookups will query the database", e);
+        }
+    }
+
+    public boolean isReady() {
+        return filter != null;
+    }
+
+    /**
+     * Lookups answered "not registered" without a query
+     */
+    public long getSkippedLookups() {
+        return skippedLookups.sum();
+    }
+
+    public long getApproximateCount() {
+        BloomFilter current = filter;
+        return current == null ? 0 : current.getApproximateCount();
+    }
+
+    public long getMemoryBytes() {
+        BloomFilter current = filter;
+        return current == null ? 0 : current.getMemoryBytes();
+    }
+
+    public double getConfiguredFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * False-positive rate at the filter's current fill
+     */
+    public double getFalsePositiveRate() {
+        BloomFilter current = filter;
+        return current == null ? 1 : current.getFalsePositiveRate();
+    }
+}
@@ -0,0 +1,164 @@
+package com.excrele.database;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One change to an account's rows. Mutations set final values rather than adjusting
+ * existing ones, so applying the same mutation twice gives the same result.
+ */
+final class AccountMutation {
+    /**
+     * Declaration order is flush order: a delete always runs before the writes to the
+     * same table that were queued after it.
+     */
+    enum Kind {
+        DELETE_PASSWORD("secureauth_passwords", "password deletion"),
+        PASSWORD("secureauth_passwords", "password"),
+        DELETE_2FA("secureauth_2fa", "2FA deletion"),
+        TWO_FACTOR_SECRET("secureauth_2fa", "2FA secret"),
+        BACKUP_CODES("secureauth_2fa", "2FA backup codes"),
+        SECURITY_QUESTION("secureauth_recovery", "security question");
+
+        private final String table;
+        private final String description;
+
+        Kind(String table, String description) {
+            this.table = table;
+            this.description = description;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        String getDescription() {
+            return description;
+        }
+
+        boolean isDelete() {
+            return this == DELETE_PASSWORD || this == DELETE_2FA;
+        }
+    }
+
+    private final Kind kind;
+    private final UUID playerId;
+    private final String value;
+    private final String extra;
+    private final long time;
+
+    private AccountMutation(Kind kind, UUID playerId, String value, String extra) {
+        this(kind, playerId, value, extra, System.currentTimeMillis());
+    }
+
+    private AccountMutation(Kind kind, UUID playerId, String value, String extra, long time) {
+        this.kind = kind;
+        this.playerId = playerId;
+        this.value = value;
+        this.extra = extra;
+        this.time = time;
+    }
+
+    /**
+     * Recreate a recorded mutation (change log replay)
+     */
+    static AccountMutation of(Kind kind, UUID playerId, String value, String extra, long time) {
+        return new AccountMutation(kind, playerId, value, extra, time);
+    }
+
+    static AccountMutation setPassword(UUID playerId, String passwordHash) {
+        return new AccountMutation(Kind.PASSWORD, playerId, passwordHash, null);
+    }
+
+    static AccountMutation deletePassword(UUID playerId) {
+        return new AccountMutation(Kind.DELETE_PASSWORD, playerId, null, null);
+    }
+
+    static AccountMutation set2FASecret(UUID playerId, String secret) {
+        return new AccountMutation(Kind.TWO_FACTOR_SECRET, playerId, secret, null);
+    }
+
+    static AccountMutation setBackupCodes(UUID playerId, List<String> codes) {
+        return new AccountMutation(Kind.BACKUP_CODES, playerId, String.join(",", codes), null);
+    }
+
+    static AccountMutation delete2FA(UUID playerId) {
+        return new AccountMutation(Kind.DELETE_2FA, playerId, null, null);
+    }
+
+    static AccountMutation setSecurityQuestion(UUID playerId, String question, String answer) {
+        return new AccountMutation(Kind.SECURITY_QUESTION, playerId, question, answer.toLowerCase().trim());
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Password hash, 2FA secret, joined backup codes or security question
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * Normalized security answer
+     */
+    String getExtra() {
+        return extra;
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    /**
+     * Whether this mutation makes an earlier queued one for the same account redundant
+     */
+    boolean supersedes(AccountMutation earlier) {
+        return kind == earlier.kind || (kind.isDelete() && kind.getTable().equals(earlier.kind.getTable()));
+    }
+
+    /**
+     * The snapshot as it will look once this mutation is stored
+     */
+    AccountSnapshot applyTo(AccountSnapshot base) {
+        String secret = base.getTwoFactorSecret();
+        switch (kind) {
+            case PASSWORD:
+                return new AccountSnapshot(playerId, value,
+                    base.isRegistered() ? base.getCreatedAt() : time, time,
+                    secret, base.getBackupCodes(), base.getTwoFactorEnabledAt(),
+                    base.getSecurityQuestion(), base.getSecurityAnswer());
+            case DELETE_PASSWORD:
+                return new AccountSnapshot(playerId, null, 0, 0,
+                    secret, base.getBackupCodes(), base.getTwoFactorEnabledAt(),
+                    base.getSecurityQuestion(), base.getSecurityAnswer());
+            case TWO_FACTOR_SECRET:
+                return new AccountSnapshot(playerId, base.getPasswordHash(), base.getCreatedAt(), base.getLastChanged(),
+                    value, base.getBackupCodes(), secret != null ? base.getTwoFactorEnabledAt() : time,
+                    base.getSecurityQuestion(), base.getSecurityAnswer());
+            case BACKUP_CODES:
+                List<String> codes = value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(","));
+                return new AccountSnapshot(playerId, base.getPasswordHash(), base.getCreatedAt(), base.getLastChanged(),
+                    secret != null ? secret : "", codes, secret != null ? base.getTwoFactorEnabledAt() : time,
+                    base.getSecurityQuestion(), base.getSecurityAnswer());
+            case DELETE_2FA:
+                return new AccountSnapshot(playerId, base.getPasswordHash(), base.getCreatedAt(), base.getLastChanged(),
+                    null, null, 0,
+                    base.getSecurityQuestion(), base.getSecurityAnswer());
+            case SECURITY_QUESTION:
+                return new AccountSnapshot(playerId, base.getPasswordHash(), base.getCreatedAt(), base.getLastChanged(),
+                    secret, base.getBackupCodes(), base.getTwoFactorEnabledAt(),
+                    value, extra);
+            default:
+                throw new IllegalStateException("Unknown mutation " + kind);
+        }
+    }
+}
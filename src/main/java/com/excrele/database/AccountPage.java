@@ -0,0 +1,66 @@
+package com.excrele.database;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One keyset page of registered accounts in uuid order. The next page starts after
+ * {@link #getLastKey()}.
+ */
+public final class AccountPage {
+    /**
+     * Listing columns of one account
+     */
+    public static final class Entry {
+        private final UUID playerId;
+        private final long createdAt;
+        private final long lastChanged;
+        private final long twoFactorEnabledAt;
+
+        Entry(UUID playerId, long createdAt, long lastChanged, long twoFactorEnabledAt) {
+            this.playerId = playerId;
+            this.createdAt = createdAt;
+            this.lastChanged = lastChanged;
+            this.twoFactorEnabledAt = twoFactorEnabledAt;
+        }
+
+        public UUID getPlayerId() {
+            return playerId;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getLastChanged() {
+            return lastChanged;
+        }
+
+        public boolean hasTwoFactor() {
+            return twoFactorEnabledAt != 0;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final boolean more;
+
+    AccountPage(List<Entry> entries, boolean more) {
+        this.entries = List.copyOf(entries);
+        this.more = more;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public boolean hasMore() {
+        return more;
+    }
+
+    /**
+     * Cursor for the next page, or null if this page is empty
+     */
+    public UUID getLastKey() {
+        return entries.isEmpty() ? null : entries.get(entries.size() - 1).getPlayerId();
+    }
+}
@@ -0,0 +1,109 @@
+package com.excrele.database;
+
+import com.excrele.cache.CacheManager;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Warms the account cache after a restart with the most recently changed accounts, so
+ * the first players to rejoin do not all miss at once.
+ *
+ * Accounts are read newest first in keyset pages over the last_changed index, at a
+ * bounded rate so the load on the database stays small. Preloading stops as soon as
+ * the first player joins; from then on the cache fills from real lookups. An account
+ * that changes while a page is being read is not cached from that page.
+ */
+class AccountPreloader implements Runnable {
+    private static final int PAGE_SIZE = 100;
+
+    private final DatabaseManager databaseManager;
+    private final CacheManager cacheManager;
+    private final JavaPlugin plugin;
+    private final int limit;
+    private final int ratePerSecond;
+    private volatile boolean stopped;
+
+    AccountPreloader(DatabaseManager databaseManager, CacheManager cacheManager, int limit, int ratePerSecond,
+                     JavaPlugin plugin) {
+        this.databaseManager = databaseManager;
+        this.cacheManager = cacheManager;
+        this.plugin = plugin;
+        this.limit = limit;
+        this.ratePerSecond = Math.max(1, ratePerSecond);
+    }
+
+    /**
+     * Stop after the current page (a player joined, or the plugin is disabling)
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public void run() {
+        long started = System.currentTimeMillis();
+        int loaded = 0;
+        long lastChanged = Long.MAX_VALUE;
+        byte[] lastKey = null;
+        try {
+            while (!stopped && loaded < limit) {
+                long pageStarted = System.nanoTime();
+                long version = cacheManager.getAccountCache().getInvalidationCount();
+                int rows = 0;
+                try (Connection conn = databaseManager.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(pageSql(lastKey != null))) {
+                    int index = 1;
+                    if (lastKey != null) {
+                        stmt.setLong(index++, lastChanged);
+                        stmt.setLong(index++, lastChanged);
+                        stmt.setBytes(index++, lastKey);
+                    }
+                    stmt.setInt(index, Math.min(PAGE_SIZE, limit - loaded));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            rows++;
+                            lastKey = rs.getBytes("uuid");
+                            lastChanged = rs.getLong("last_changed");
+                            UUID playerId = Uuids.fromBytes(lastKey);
+                            cacheManager.preloadAccount(DatabaseManager.readSnapshot(playerId, rs), version);
+                        }
+                    }
+                }
+                loaded += rows;
+                if (rows < PAGE_SIZE) {
+                    break; // Every account is loaded
+                }
+
+                // Spread pages out to stay under the configured rate
+                long pageNanos = TimeUnit.SECONDS.toNanos(rows) / ratePerSecond;
+                long remaining = pageNanos - (System.nanoTime() - pageStarted);
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+            }
+            plugin.getLogger().info("Preloaded " + loaded + " accounts into the cache in " +
+                (System.currentTimeMillis() - started) + "ms" + (stopped ? " (stopped when a player joined)" : ""));
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to preload accounts after " + loaded + " rows", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String pageSql(boolean after) {
+        return "SELECT p.uuid, p.password_hash, p.created_at, p.last_changed, " +
+            "f.secret_key, f.backup_codes, f.enabled_at, r.security_question, r.security_answer " +
+            "FROM secureauth_passwords p " +
+            "LEFT JOIN secureauth_2fa f ON f.uuid = p.uuid " +
+            "LEFT JOIN secureauth_recovery r ON r.uuid = p.uuid " +
+            (after ? "WHERE p.last_changed < ? OR (p.last_changed = ? AND p.uuid < ?) " : "") +
+            "ORDER BY p.last_changed DESC, p.uuid DESC LIMIT ?";
+    }
+}
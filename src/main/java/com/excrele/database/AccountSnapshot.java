@@ -0,0 +1,93 @@
+package com.excrele.database;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable view of everything stored for one account, loaded with a single query
+ * across the passwords, 2FA and recovery tables.
+ */
+public final class AccountSnapshot {
+    private final UUID playerId;
+    private final String passwordHash;
+    private final long createdAt;
+    private final long lastChanged;
+    private final String twoFactorSecret;
+    private final List<String> backupCodes;
+    private final long twoFactorEnabledAt;
+    private final String securityQuestion;
+    private final String securityAnswer;
+
+    public AccountSnapshot(UUID playerId, String passwordHash, long createdAt, long lastChanged,
+                           String twoFactorSecret, List<String> backupCodes, long twoFactorEnabledAt,
+                           String securityQuestion, String securityAnswer) {
+        this.playerId = playerId;
+        this.passwordHash = passwordHash;
+        this.createdAt = createdAt;
+        this.lastChanged = lastChanged;
+        this.twoFactorSecret = twoFactorSecret;
+        this.backupCodes = backupCodes == null ? Collections.emptyList() : List.copyOf(backupCodes);
+        this.twoFactorEnabledAt = twoFactorEnabledAt;
+        this.securityQuestion = securityQuestion;
+        this.securityAnswer = securityAnswer;
+    }
+
+    /**
+     * An account with nothing stored
+     */
+    static AccountSnapshot empty(UUID playerId) {
+        return new AccountSnapshot(playerId, null, 0, 0, null, null, 0, null, null);
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public boolean isRegistered() {
+        return passwordHash != null;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastChanged() {
+        return lastChanged;
+    }
+
+    /**
+     * Raw 2FA secret column; null without a 2FA row, empty when only backup codes exist
+     */
+    public String getTwoFactorSecret() {
+        return twoFactorSecret;
+    }
+
+    public boolean has2FA() {
+        return twoFactorSecret != null && !twoFactorSecret.isEmpty();
+    }
+
+    public List<String> getBackupCodes() {
+        return backupCodes;
+    }
+
+    public long getTwoFactorEnabledAt() {
+        return twoFactorEnabledAt;
+    }
+
+    public boolean hasSecurityQuestion() {
+        return securityQuestion != null;
+    }
+
+    public String getSecurityQuestion() {
+        return securityQuestion;
+    }
+
+    public String getSecurityAnswer() {
+        return securityAnswer;
+    }
+}
@@ -0,0 +1,350 @@
+package com.excrele.database;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Online backup of the active storage into a gzip file in backups/.
+ *
+ * File storage copies the append-only log up to its current length. SQLite uses
+ * VACUUM INTO, which reads one consistent snapshot and, in WAL mode, never blocks
+ * writers. MySQL streams all three tables inside one consistent-snapshot read-only
+ * transaction, so InnoDB serves logins from the same data without locking. Each backup
+ * is written to a temporary file and renamed into place when complete.
+ *
+ * With incremental backups, a full backup is the base of a chain and later backups
+ * only save the change log entries since the previous one, as
+ * "&lt;base&gt;.inc0001.gz", "&lt;base&gt;.inc0002.gz" and so on.
+ */
+class BackupJob {
+    static final String PREFIX = "secureauth-";
+    static final String EXPORT_HEADER = "# SecureAuth export v1";
+    static final String CHANGES_HEADER = "# SecureAuth changes v1";
+    static final String INCREMENT_MARKER = ".inc";
+    static final String STATE_FILE = "backup-state.properties";
+
+    private final String type;
+    private final FileAccountStore fileStore;
+    private final DataSource dataSource;
+    private final File backupDir;
+
+    /**
+     * @param fileStore the store to copy for file storage, otherwise null
+     * @param dataSource a dedicated connection source for SQLite or MySQL, otherwise null
+     */
+    BackupJob(String type, FileAccountStore fileStore, DataSource dataSource, File backupDir) {
+        this.type = type;
+        this.fileStore = fileStore;
+        this.dataSource = dataSource;
+        this.backupDir = backupDir;
+    }
+
+    /**
+     * Write the backup and return the finished file
+     */
+    File run() throws IOException, SQLException {
+        if (!backupDir.exists() && !backupDir.mkdirs()) {
+            throw new IOException("Could not create " + backupDir);
+        }
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        String extension = fileStore != null ? ".txt" : "sqlite".equals(type) ? ".db" : ".tsv";
+        File backup = new File(backupDir, PREFIX + type + "-" + timestamp + extension + ".gz");
+        // Two backups in the same millisecond (or after the clock was set back) get a suffix
+        for (int suffix = 1; backup.exists(); suffix++) {
+            backup = new File(backupDir, PREFIX + type + "-" + timestamp + "-" + suffix + extension + ".gz");
+        }
+        File temp = new File(backupDir, "." + backup.getName() + ".tmp");
+
+        try {
+            if (fileStore != null) {
+                try (OutputStream out = compressed(temp)) {
+                    fileStore.copyTo(out);
+                }
+            } else if ("sqlite".equals(type)) {
+                backupSQLite(temp);
+            } else {
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(compressed(temp), StandardCharsets.UTF_8))) {
+                    exportMySQL(out);
+                }
+            }
+            publish(temp, backup);
+            return backup;
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Save the change log entries after from as the next increment of a base
+     *
+     * @return the last sequence number saved, or from if nothing changed (no file is written)
+     */
+    long runIncremental(File base, int number, ChangeLog changeLog, long from) throws IOException {
+        File increment = incrementFile(base, number);
+        File temp = new File(backupDir, "." + increment.getName() + ".tmp");
+        try {
+            long through;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(compressed(temp), StandardCharsets.UTF_8))) {
+                out.write(CHANGES_HEADER + "\n");
+                through = changeLog.copySince(from, out);
+            }
+            if (through > from) {
+                publish(temp, increment);
+            }
+            return through;
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Rename a finished temp file into place. An atomic rename replaces the target, so
+     * fail instead if a backup of that name already exists.
+     */
+    private static void publish(File temp, File target) throws IOException {
+        if (target.exists()) {
+            throw new FileAlreadyExistsException(target.getPath(), null, "Refusing to overwrite an existing backup");
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    File incrementFile(File base, int number) {
+        return new File(backupDir, stem(base) + INCREMENT_MARKER + String.format("%04d", number) + ".gz");
+    }
+
+    /**
+     * Base name shared by a full backup and its increments
+     */
+    static String stem(File base) {
+        String name = base.getName();
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    static boolean isBase(String name) {
+        return name.startsWith(PREFIX) && name.endsWith(".gz") && !name.contains(INCREMENT_MARKER);
+    }
+
+    /**
+     * Storage type a backup was taken from, from its name
+     */
+    static String typeOf(File backup) {
+        String name = backup.getName();
+        int end = name.indexOf('-', PREFIX.length());
+        return end < 0 ? "" : name.substring(PREFIX.length(), end);
+    }
+
+    /**
+     * Full backups, newest first
+     */
+    File[] listBases() {
+        File[] bases = backupDir.listFiles((dir, name) -> isBase(name));
+        if (bases == null) {
+            return new File[0];
+        }
+        Arrays.sort(bases, Comparator.comparingLong(File::lastModified).reversed());
+        return bases;
+    }
+
+    /**
+     * Increments of a base in the order they were taken
+     */
+    File[] listIncrements(File base) {
+        String prefix = stem(base) + INCREMENT_MARKER;
+        File[] increments = backupDir.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".gz"));
+        if (increments == null) {
+            return new File[0];
+        }
+        Arrays.sort(increments, Comparator.comparing(File::getName));
+        return increments;
+    }
+
+    /**
+     * Chain position after the last backup: "base", "sequence" and "increments"
+     */
+    Properties loadState() {
+        Properties state = new Properties();
+        File file = new File(backupDir, STATE_FILE);
+        if (file.exists()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                state.load(in);
+            } catch (IOException ignored) {
+                // Unreadable state only means the next backup is a full one
+                state.clear();
+            }
+        }
+        return state;
+    }
+
+    void saveState(Properties state) throws IOException {
+        File file = new File(backupDir, STATE_FILE);
+        File temp = new File(backupDir, STATE_FILE + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            state.store(out, "SecureAuth backup chain");
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static OutputStream compressed(File file) throws IOException {
+        return new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), 1 << 16);
+    }
+
+    private void backupSQLite(File output) throws IOException, SQLException {
+        File snapshot = new File(backupDir, "." + output.getName() + ".db");
+        Files.deleteIfExists(snapshot.toPath());
+        try {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement("VACUUM INTO ?")) {
+                stmt.setString(1, snapshot.getAbsolutePath());
+                stmt.execute();
+            }
+            try (OutputStream out = compressed(output)) {
+                Files.copy(snapshot.toPath(), out);
+            }
+        } finally {
+            Files.deleteIfExists(snapshot.toPath());
+        }
+    }
+
+    /**
+     * Export every table as tab-separated rows, one "# table" line before each table
+     */
+    private void exportMySQL(Writer out) throws IOException, SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            try (Statement begin = conn.createStatement()) {
+                begin.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+            }
+
+            out.write(EXPORT_HEADER + "\n");
+            for (MigrationJob.Table table : MigrationJob.Table.values()) {
+                String[] columns = table.getColumns();
+                out.write("# table " + table.getTableName() + " " + String.join(" ", columns) + "\n");
+                try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    stmt.setFetchSize(Integer.MIN_VALUE); // Connector/J streams rows instead of buffering them
+                    try (ResultSet rs = stmt.executeQuery("SELECT " + String.join(", ", columns) +
+                            " FROM " + table.getTableName())) {
+                        while (rs.next()) {
+                            // Keys are exported as uuid strings, independent of the schema version
+                            out.write(Uuids.fromBytes(rs.getBytes(1)).toString());
+                            for (int i = 1; i < columns.length; i++) {
+                                out.write('\t');
+                                out.write(escape(rs.getObject(i + 1)));
+                            }
+                            out.write('\n');
+                        }
+                    }
+                }
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Escape a value for the export format; null is written as \N
+     */
+    static String escape(Object value) {
+        if (value == null) {
+            return "\\N";
+        }
+        String text = value instanceof Number ? String.valueOf(((Number) value).longValue()) : value.toString();
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Reverse {@link #escape}; \N becomes null
+     */
+    static String unescape(String text) {
+        if ("\\N".equals(text)) {
+            return null;
+        }
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * Delete all but the newest keep full backups, together with their increments
+     *
+     * @return number of files deleted
+     */
+    int rotate(int keep) {
+        File[] bases = listBases();
+        Set<String> kept = new HashSet<>();
+        for (int i = 0; i < Math.min(Math.max(0, keep), bases.length); i++) {
+            kept.add(stem(bases[i]));
+        }
+        File[] backups = backupDir.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(".gz"));
+        if (backups == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File backup : backups) {
+            String name = backup.getName();
+            int marker = name.indexOf(INCREMENT_MARKER);
+            String chain = marker < 0 ? stem(backup) : name.substring(0, marker);
+            if (!kept.contains(chain) && backup.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
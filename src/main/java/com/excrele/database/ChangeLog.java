@@ -0,0 +1,286 @@
+package com.excrele.database;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Sequenced record of every account mutation, the source of incremental backups.
+ *
+ * Each line is "seq kind uuid value extra time", tab-separated with the export
+ * escaping. Entries are appended only after the change is stored, so everything up to
+ * a sequence number is already in storage when that number is read. The log only
+ * holds changes since the last backup; each backup discards what it has saved and
+ * leaves a "# after seq" line so numbering continues across restarts.
+ */
+class ChangeLog {
+    private static final String SEQUENCE_HEADER = "# after ";
+
+    private final File file;
+    private final JavaPlugin plugin;
+    private Writer writer;
+    private long sequence;
+    private long length;
+    private boolean incomplete; // A change was stored but not logged; the next backup must be full
+
+    ChangeLog(File file, JavaPlugin plugin) {
+        this.file = file;
+        this.plugin = plugin;
+    }
+
+    synchronized void open() throws IOException {
+        file.getParentFile().mkdirs();
+        if (!file.exists()) {
+            // Changes before now were never logged, so no increment can follow an older backup
+            incomplete = true;
+        } else {
+            truncateTornEntry();
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (line.startsWith(SEQUENCE_HEADER)) {
+                        sequence = Math.max(sequence, Long.parseLong(line.substring(SEQUENCE_HEADER.length()).trim()));
+                    } else if (tab > 0) {
+                        sequence = Math.max(sequence, Long.parseLong(line.substring(0, tab)));
+                    }
+                }
+            }
+        }
+        openWriter();
+    }
+
+    /**
+     * Cut a partly written last entry left by a crash; the next full backup covers it
+     */
+    private void truncateTornEntry() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < raf.length()) {
+                raf.setLength(end);
+                incomplete = true;
+            }
+        }
+    }
+
+    private void openWriter() throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        length = file.length();
+    }
+
+    synchronized void append(AccountMutation mutation) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writeEntry(mutation);
+            writer.flush();
+        } catch (IOException e) {
+            markIncomplete(e);
+        }
+    }
+
+    synchronized void append(List<AccountMutation> mutations) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            for (AccountMutation mutation : mutations) {
+                writeEntry(mutation);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            markIncomplete(e);
+        }
+    }
+
+    private void writeEntry(AccountMutation mutation) throws IOException {
+        String line = ++sequence + "\t" + mutation.getKind().name() + "\t" + mutation.getPlayerId() + "\t" +
+            BackupJob.escape(mutation.getValue()) + "\t" + BackupJob.escape(mutation.getExtra()) + "\t" +
+            mutation.getTime() + "\n";
+        writer.write(line);
+        length += line.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void markIncomplete(IOException e) {
+        if (!incomplete) {
+            plugin.getLogger().log(Level.WARNING, "Failed to record account change; the next backup will be a full one", e);
+        }
+        incomplete = true;
+    }
+
+    synchronized long getSequence() {
+        return sequence;
+    }
+
+    synchronized boolean isIncomplete() {
+        return incomplete;
+    }
+
+    /**
+     * Called when a full backup starts; it covers anything that failed to be logged
+     *
+     * @return the sequence number the backup starts from
+     */
+    synchronized long beginFullBackup() {
+        incomplete = false;
+        return sequence;
+    }
+
+    /**
+     * Force the next backup to be a full one (after a restore, or when committed
+     * changes could not be logged)
+     */
+    synchronized void invalidate() {
+        incomplete = true;
+    }
+
+    /**
+     * Copy the raw entries after a sequence number, up to the entries present now
+     *
+     * @return the last sequence number copied, or from if there were none
+     */
+    long copySince(long from, Writer out) throws IOException {
+        long end;
+        long last;
+        synchronized (this) {
+            if (writer == null) {
+                return from;
+            }
+            end = length;
+            last = sequence;
+        }
+
+        // Entries below end are complete; later appends are left for the next backup
+        try (InputStream in = Files.newInputStream(file.toPath());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(
+                 new BoundedInputStream(in, end), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0 && Long.parseLong(line.substring(0, tab)) > from) {
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Drop entries that a backup has saved, keeping anything appended since
+     */
+    synchronized void discardThrough(long saved) throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.close();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            out.write(SEQUENCE_HEADER + saved + "\n");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0 && Long.parseLong(line.substring(0, tab)) > saved) {
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+        } finally {
+            if (temp.exists()) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            openWriter();
+        }
+    }
+
+    /**
+     * Parse entries written by {@link #copySince}
+     */
+    static void read(BufferedReader reader, Consumer<AccountMutation> consumer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) {
+                throw new IOException("Malformed change log entry: " + line);
+            }
+            consumer.accept(AccountMutation.of(AccountMutation.Kind.valueOf(fields[1]), UUID.fromString(fields[2]),
+                BackupJob.unescape(fields[3]), BackupJob.unescape(fields[4]), Long.parseLong(fields[5])));
+        }
+    }
+
+    synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close " + file.getName(), e);
+        }
+        writer = null;
+    }
+
+    /**
+     * Stops reading at a fixed length so appends during a copy are left out
+     */
+    private static final class BoundedInputStream extends java.io.FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(count, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
@@ -1,33 +1,66 @@
 package com.excrele.database;
 
+import com.excrele.cache.CacheManager;
 import com.excrele.config.ConfigManager;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 public class DatabaseManager {
+    private static final int COMMIT_LOCK_STRIPES = 64;
+
     private final ConfigManager config;
+    private final CacheManager cacheManager;
     private final JavaPlugin plugin;
     private HikariDataSource dataSource;
+    private HikariDataSource writeDataSource; // SQLite WAL only; null means writes share dataSource
+    private ExecutorService writer;
+    private volatile Thread writerThread;
+    private WriteBehindQueue writeBehind; // Null when writes are committed immediately
+    private FileAccountStore fileStore;
+    private ChangeLog changeLog; // Null unless incremental backups are enabled
+    private AccountMembership membership; // Null for file storage or when disabled
+    private AccountPreloader preloader; // Null unless preloading at startup
     private String databaseType;
+    private final AtomicLong primaryThreadConnections = new AtomicLong(); // Should stay 0 for login paths
+    private final ReentrantLock[] commitLocks = new ReentrantLock[COMMIT_LOCK_STRIPES]; // By account, for the change log
 
-    public DatabaseManager(ConfigManager config, JavaPlugin plugin) {
+    public DatabaseManager(ConfigManager config, CacheManager cacheManager, JavaPlugin plugin) {
         this.config = config;
+        this.cacheManager = cacheManager;
         this.plugin = plugin;
         this.databaseType = config.getDatabaseType().toLowerCase();
+        for (int i = 0; i < commitLocks.length; i++) {
+            commitLocks[i] = new ReentrantLock();
+        }
         initializeDatabase();
     }
 
     private void initializeDatabase() {
         try {
+            if (config.isIncrementalBackupEnabled()) {
+                changeLog = new ChangeLog(new File(plugin.getDataFolder(), "changes.log"), plugin);
+                changeLog.open();
+            }
             switch (databaseType) {
                 case "sqlite":
                     setupSQLite();
@@ -36,6 +69,7 @@ public class DatabaseManager {
                     setupMySQL();
                     break;
                 case "file":
+                    setupFileStore();
                     plugin.getLogger().info("Using file-based storage (default, no database required)");
                     return;
                 default:
@@ -44,26 +78,95 @@ public class DatabaseManager {
             }
             
             createTables();
+            if (config.isAccountFilterEnabled()) {
+                membership = new AccountMembership(this, databaseType, config.getAccountFilterFalsePositiveRate(),
+                                                   config.getAccountFilterMaxMemoryKb() * 1024L, plugin);
+                membership.reset();
+            }
+            if (config.isAccountPreloadEnabled()) {
+                preloader = new AccountPreloader(this, cacheManager,
+                    Math.min(config.getAccountPreloadCount(), config.getAccountCacheMaximumSize()),
+                    config.getAccountPreloadRate(), plugin);
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, preloader);
+            }
+            if (config.isWriteBehindEnabled()) {
+                writeBehind = new WriteBehindQueue(this, plugin, config.getWriteBehindFlushIntervalMs(),
+                                                   config.getWriteBehindBatchSize());
+            }
             plugin.getLogger().info("Database initialized successfully (" + databaseType + ")");
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Failed to initialize database", e);
         }
     }
 
+    private void setupFileStore() throws IOException {
+        fileStore = new FileAccountStore(new File(plugin.getDataFolder(), "passwords.txt"),
+                                         "mapped".equalsIgnoreCase(config.getFileIndexType()),
+                                         config.getFileCompactionRatio(), plugin);
+        fileStore.open();
+        fileStore.setChangeLog(changeLog);
+    }
+
     private void setupSQLite() {
-        HikariConfig hikariConfig = new HikariConfig();
         File dbFile = new File(plugin.getDataFolder(), config.getSqliteFilename());
-        hikariConfig.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        String jdbcUrl = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+        
+        if (!config.isSqliteWalEnabled()) {
+            HikariConfig hikariConfig = new HikariConfig();
+            hikariConfig.setJdbcUrl(jdbcUrl);
+            hikariConfig.setDriverClassName("org.sqlite.JDBC");
+            hikariConfig.setMaximumPoolSize(1); // Rollback journal allows only one connection at a time
+            hikariConfig.setConnectionTimeout(30000);
+            hikariConfig.setIdleTimeout(600000);
+            hikariConfig.setMaxLifetime(1800000);
+            
+            dataSource = new HikariDataSource(hikariConfig);
+            return;
+        }
+        
+        // WAL: one writer connection fed by the writer thread, readers never block on it
+        HikariConfig writerConfig = sqliteConfig(jdbcUrl, "SecureAuth-SQLite-Writer", 1);
+        writerConfig.addDataSourceProperty("journal_mode", "WAL");
+        writeDataSource = new HikariDataSource(writerConfig);
+        
+        HikariConfig readerConfig = sqliteConfig(jdbcUrl, "SecureAuth-SQLite-Reader",
+                                                 Math.max(1, config.getSqliteReadPoolSize()));
+        readerConfig.setConnectionInitSql("PRAGMA query_only = true");
+        dataSource = new HikariDataSource(readerConfig);
+        
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SecureAuth-DB-Writer");
+            thread.setDaemon(true);
+            writerThread = thread;
+            return thread;
+        });
+    }
+
+    private HikariConfig sqliteConfig(String jdbcUrl, String poolName, int poolSize) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(jdbcUrl);
         hikariConfig.setDriverClassName("org.sqlite.JDBC");
-        hikariConfig.setMaximumPoolSize(1); // SQLite doesn't need multiple connections
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setMaximumPoolSize(poolSize);
         hikariConfig.setConnectionTimeout(30000);
         hikariConfig.setIdleTimeout(600000);
         hikariConfig.setMaxLifetime(1800000);
+        // Applied by the driver as PRAGMAs on every new connection
+        hikariConfig.addDataSourceProperty("synchronous", config.getSqliteSynchronous());
+        hikariConfig.addDataSourceProperty("cache_size", String.valueOf(config.getSqliteCacheSize()));
+        hikariConfig.addDataSourceProperty("mmap_size", String.valueOf(config.getSqliteMmapSize()));
+        hikariConfig.addDataSourceProperty("busy_timeout", String.valueOf(config.getSqliteBusyTimeout()));
+        return hikariConfig;
+    }
+
+    private void setupMySQL() {
+        HikariConfig hikariConfig = mysqlConfig();
+        hikariConfig.setMaximumPoolSize(config.getMysqlPoolSize());
         
         dataSource = new HikariDataSource(hikariConfig);
     }
 
-    private void setupMySQL() {
+    private HikariConfig mysqlConfig() {
         HikariConfig hikariConfig = new HikariConfig();
         hikariConfig.setJdbcUrl(
             "jdbc:mysql://" + config.getMysqlHost() + ":" + config.getMysqlPort() + "/" + config.getMysqlDatabase()
@@ -71,93 +174,322 @@ public class DatabaseManager {
         hikariConfig.setUsername(config.getMysqlUsername());
         hikariConfig.setPassword(config.getMysqlPassword());
         hikariConfig.setDriverClassName("com.mysql.cj.jdbc.Driver");
-        hikariConfig.setMaximumPoolSize(config.getMysqlPoolSize());
         hikariConfig.setConnectionTimeout(30000);
         hikariConfig.setIdleTimeout(600000);
         hikariConfig.setMaxLifetime(config.getMysqlMaxLifetime());
         hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
         hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
         hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        
-        dataSource = new HikariDataSource(hikariConfig);
+        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true"); // One round-trip per write batch
+        return hikariConfig;
     }
 
-    private void createTables() throws SQLException {
-        String createTableSQL;
-        String create2FATableSQL;
-        
-        if ("sqlite".equals(databaseType)) {
-            createTableSQL = "CREATE TABLE IF NOT EXISTS secureauth_passwords (" +
-                "uuid VARCHAR(36) PRIMARY KEY, " +
-                "password_hash TEXT NOT NULL, " +
-                "created_at BIGINT NOT NULL, " +
-                "last_changed BIGINT NOT NULL" +
-                ")";
-            create2FATableSQL = "CREATE TABLE IF NOT EXISTS secureauth_2fa (" +
-                "uuid VARCHAR(36) PRIMARY KEY, " +
-                "secret_key TEXT NOT NULL, " +
-                "backup_codes TEXT, " +
-                "enabled_at BIGINT NOT NULL" +
-                ")";
+    /**
+     * Open a separate small pool for a configured database that may not be the active
+     * one (migration and backup tools). The caller closes it.
+     */
+    HikariDataSource openDataSource(String type, String poolName, int poolSize) {
+        HikariConfig hikariConfig;
+        if ("sqlite".equals(type)) {
+            File dbFile = new File(plugin.getDataFolder(), config.getSqliteFilename());
+            hikariConfig = sqliteConfig("jdbc:sqlite:" + dbFile.getAbsolutePath(), poolName, poolSize);
+        } else if ("mysql".equals(type)) {
+            hikariConfig = mysqlConfig();
+            hikariConfig.setPoolName(poolName);
+            hikariConfig.setMaximumPoolSize(poolSize);
         } else {
-            createTableSQL = "CREATE TABLE IF NOT EXISTS secureauth_passwords (" +
-                "uuid VARCHAR(36) PRIMARY KEY, " +
-                "password_hash TEXT NOT NULL, " +
-                "created_at BIGINT NOT NULL, " +
-                "last_changed BIGINT NOT NULL" +
-                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-            create2FATableSQL = "CREATE TABLE IF NOT EXISTS secureauth_2fa (" +
-                "uuid VARCHAR(36) PRIMARY KEY, " +
-                "secret_key TEXT NOT NULL, " +
-                "backup_codes TEXT, " +
-                "enabled_at BIGINT NOT NULL" +
-                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+            throw new IllegalArgumentException("Not a database type: " + type);
         }
-        
-        try (Connection conn = getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(createTableSQL)) {
-                stmt.execute();
+        return new HikariDataSource(hikariConfig);
+    }
+
+    /**
+     * Open a SQLite database file other than the configured one (restoring a backup)
+     */
+    HikariDataSource openSQLiteFile(File dbFile, String poolName) {
+        return new HikariDataSource(sqliteConfig("jdbc:sqlite:" + dbFile.getAbsolutePath(), poolName, 1));
+    }
+
+    private void createTables() throws SQLException {
+        try (Connection conn = getWriteConnection()) {
+            for (String migration : createTables(conn, databaseType)) {
+                plugin.getLogger().info("Applied database schema migration " + migration);
             }
-            try (PreparedStatement stmt = conn.prepareStatement(create2FATableSQL)) {
-                stmt.execute();
+        }
+    }
+
+    /**
+     * Create the account tables or upgrade them to the current schema version
+     *
+     * @return descriptions of the schema migrations applied
+     */
+    static List<String> createTables(Connection conn, String type) throws SQLException {
+        return SchemaMigrator.migrate(conn, type);
+    }
+
+    /**
+     * Work run against a single connection, used for writes
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Run a write. With SQLite WAL the work is queued to the single writer thread and
+     * its connection, and the caller waits for the result; otherwise it runs inline on
+     * a pooled connection.
+     */
+    public <T> T executeWrite(SqlWork<T> work) throws SQLException {
+        if (writer == null || Thread.currentThread() == writerThread) {
+            try (Connection conn = getWriteConnection()) {
+                return work.run(conn);
             }
-            if ("sqlite".equals(databaseType)) {
-                String createRecoveryTableSQL = "CREATE TABLE IF NOT EXISTS secureauth_recovery (" +
-                    "uuid VARCHAR(36) PRIMARY KEY, " +
-                    "security_question TEXT, " +
-                    "security_answer TEXT" +
-                    ")";
-                try (PreparedStatement stmt = conn.prepareStatement(createRecoveryTableSQL)) {
-                    stmt.execute();
-                }
-            } else {
-                String createRecoveryTableSQL = "CREATE TABLE IF NOT EXISTS secureauth_recovery (" +
-                    "uuid VARCHAR(36) PRIMARY KEY, " +
-                    "security_question TEXT, " +
-                    "security_answer TEXT" +
-                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-                try (PreparedStatement stmt = conn.prepareStatement(createRecoveryTableSQL)) {
-                    stmt.execute();
-                }
+        }
+        
+        if (Bukkit.isPrimaryThread()) {
+            primaryThreadConnections.incrementAndGet();
+        }
+        Future<T> result;
+        try {
+            result = writer.submit(() -> executeWrite(work));
+        } catch (RejectedExecutionException e) {
+            throw new SQLException("Database writer is shut down", e);
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
             }
+            throw new SQLException("Database write failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database write", e);
         }
     }
 
+    private Connection getWriteConnection() throws SQLException {
+        return writeDataSource != null ? writeDataSource.getConnection() : getConnection();
+    }
+
     public Connection getConnection() throws SQLException {
         if (dataSource == null) {
             throw new SQLException("Database not initialized");
         }
+        if (Bukkit.isPrimaryThread()) {
+            primaryThreadConnections.incrementAndGet();
+        }
         return dataSource.getConnection();
     }
 
+    /**
+     * End startup preloading; called when a player joins, after which the cache fills
+     * from real lookups
+     */
+    public void stopPreload() {
+        if (preloader != null) {
+            preloader.stop();
+            preloader = null;
+        }
+    }
+
+    /**
+     * Get the account snapshot from the account cache, loading it with one query on a
+     * miss. Accounts the membership filter has never seen are answered without either.
+     * Writes still waiting in the write-behind queue are included.
+     */
+    public AccountSnapshot getAccountSnapshot(UUID playerId) {
+        if ("file".equals(databaseType)) {
+            return null;
+        }
+        
+        if (writeBehind == null) {
+            return getStoredSnapshot(playerId);
+        }
+        while (true) {
+            long removals = writeBehind.getRemovalCount();
+            AccountSnapshot snapshot = writeBehind.overlay(playerId, getStoredSnapshot(playerId));
+            if (writeBehind.getRemovalCount() == removals) {
+                return snapshot;
+            }
+            // A flush finished in between; the stored snapshot may predate what it removed
+        }
+    }
+
+    /**
+     * The account snapshot if it can be answered from memory (the account cache or the
+     * membership filter), otherwise null. Never queries, so it is safe on the main thread.
+     */
+    public AccountSnapshot getCachedAccountSnapshot(UUID playerId) {
+        if ("file".equals(databaseType)) {
+            return null;
+        }
+        
+        if (writeBehind == null) {
+            return getCachedStoredSnapshot(playerId);
+        }
+        while (true) {
+            long removals = writeBehind.getRemovalCount();
+            AccountSnapshot stored = getCachedStoredSnapshot(playerId);
+            AccountSnapshot snapshot = stored == null ? null : writeBehind.overlay(playerId, stored);
+            if (writeBehind.getRemovalCount() == removals) {
+                return snapshot;
+            }
+        }
+    }
+
+    private AccountSnapshot getStoredSnapshot(UUID playerId) {
+        return membership != null && !membership.mightExist(playerId)
+            ? AccountSnapshot.empty(playerId)
+            : cacheManager.getAccount(playerId, this::loadAccountSnapshot);
+    }
+
+    private AccountSnapshot getCachedStoredSnapshot(UUID playerId) {
+        return membership != null && !membership.mightExist(playerId)
+            ? AccountSnapshot.empty(playerId)
+            : cacheManager.getCachedAccount(playerId);
+    }
+
+    private AccountSnapshot loadAccountSnapshot(UUID playerId) {
+        String sql = "SELECT p.password_hash, p.created_at, p.last_changed, " +
+            "f.secret_key, f.backup_codes, f.enabled_at, r.security_question, r.security_answer " +
+            "FROM (SELECT ? AS uuid) k " +
+            "LEFT JOIN secureauth_passwords p ON p.uuid = k.uuid " +
+            "LEFT JOIN secureauth_2fa f ON f.uuid = k.uuid " +
+            "LEFT JOIN secureauth_recovery r ON r.uuid = k.uuid";
+        
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setBytes(1, Uuids.toBytes(playerId));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? readSnapshot(playerId, rs) : null;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to load account for " + playerId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Build a snapshot from a row with the columns selected by {@link #loadAccountSnapshot}
+     */
+    static AccountSnapshot readSnapshot(UUID playerId, ResultSet rs) throws SQLException {
+        String codes = rs.getString("backup_codes");
+        List<String> backupCodes = codes != null && !codes.isEmpty()
+            ? Arrays.asList(codes.split(",")) : Collections.emptyList();
+        return new AccountSnapshot(playerId,
+            rs.getString("password_hash"),
+            rs.getLong("created_at"),
+            rs.getLong("last_changed"),
+            rs.getString("secret_key"),
+            backupCodes,
+            rs.getLong("enabled_at"),
+            rs.getString("security_question"),
+            rs.getString("security_answer"));
+    }
+
+    /**
+     * One page of registered accounts after a uuid, in uuid order. Keyset pagination
+     * keeps every page an index range scan on the primary key however deep the listing
+     * goes, and only limit + 1 rows are ever fetched.
+     *
+     * @param after cursor from the previous page, or null for the first page
+     * @return the page, or null if the query failed
+     */
+    public AccountPage listAccounts(AccountFilter filter, UUID after, int limit) {
+        List<Object> parameters = new ArrayList<>();
+        String where = after == null ? " WHERE 1 = 1" : " WHERE p.uuid > ?";
+        if (after != null) {
+            parameters.add(Uuids.toBytes(after));
+        }
+        String sql = "SELECT p.uuid, p.created_at, p.last_changed, f.enabled_at " +
+            "FROM secureauth_passwords p LEFT JOIN secureauth_2fa f ON f.uuid = p.uuid" +
+            where + filter.whereClause(parameters) + " ORDER BY p.uuid LIMIT " + (limit + 1);
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(limit + 1);
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+            List<AccountPage.Entry> entries = new ArrayList<>(limit);
+            boolean more = false;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (entries.size() == limit) {
+                        more = true; // The extra row only says another page exists
+                        break;
+                    }
+                    entries.add(new AccountPage.Entry(Uuids.fromBytes(rs.getBytes(1)), rs.getLong(2),
+                        rs.getLong(3), rs.getLong(4)));
+                }
+            }
+            return new AccountPage(entries, more);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to list accounts", e);
+            return null;
+        }
+    }
+
+    /**
+     * Count stored password hashes by the label the classifier gives each one, reading
+     * them as a stream (changes still in the write-behind queue are not seen)
+     *
+     * @return label to count, or null if the hashes could not be read
+     */
+    public Map<String, Long> countPasswordHashes(Function<String, String> classifier) {
+        Map<String, Long> counts = new TreeMap<>();
+        if (isFileBased()) {
+            FileAccountStore store = getFileStore();
+            if (store == null) {
+                return null;
+            }
+            try {
+                store.forEach((playerId, hash) -> counts.merge(classifier.apply(hash), 1L, Long::sum));
+                return counts;
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to read password hashes", e);
+                return null;
+            }
+        }
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT password_hash FROM secureauth_passwords")) {
+            stmt.setFetchSize("mysql".equals(databaseType) ? Integer.MIN_VALUE : 10000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.merge(classifier.apply(rs.getString(1)), 1L, Long::sum);
+                }
+            }
+            return counts;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to read password hashes", e);
+            return null;
+        }
+    }
+
+    /**
+     * Called after every write so cached snapshots never outlive the data they describe
+     */
+    void invalidateSnapshot(UUID playerId) {
+        cacheManager.invalidateAccount(playerId);
+    }
+
     public boolean hasPassword(UUID playerId) {
         if ("file".equals(databaseType)) {
             return false; // File-based handled separately
         }
         
+        AccountSnapshot snapshot = getAccountSnapshot(playerId);
+        if (snapshot != null) {
+            return snapshot.isRegistered();
+        }
+        
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT uuid FROM secureauth_passwords WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
+            stmt.setBytes(1, Uuids.toBytes(playerId));
             try (ResultSet rs = stmt.executeQuery()) {
                 return rs.next();
             }
@@ -172,9 +504,14 @@ public class DatabaseManager {
             return null; // File-based handled separately
         }
         
+        AccountSnapshot snapshot = getAccountSnapshot(playerId);
+        if (snapshot != null) {
+            return snapshot.getPasswordHash();
+        }
+        
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT password_hash FROM secureauth_passwords WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
+            stmt.setBytes(1, Uuids.toBytes(playerId));
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getString("password_hash");
@@ -191,34 +528,44 @@ public class DatabaseManager {
             return; // File-based handled separately
         }
         
-        long now = System.currentTimeMillis();
+        write(AccountMutation.setPassword(playerId, passwordHash));
+    }
+
+    /**
+     * Replace the password hash only if it is still the expected one. The check and the
+     * write are one statement, so a password change in between is never overwritten. It
+     * bypasses the write-behind queue: a change still queued there is newer and is
+     * flushed over this one.
+     *
+     * @return whether the hash was replaced
+     */
+    public boolean replacePasswordHash(UUID playerId, String expectedHash, String passwordHash) {
+        if ("file".equals(databaseType)) {
+            return false; // File-based handled separately
+        }
         
-        try (Connection conn = getConnection()) {
-            // Check if exists
-            boolean exists = hasPassword(playerId);
-            
-            if (exists) {
-                // Update
+        AccountMutation mutation = AccountMutation.setPassword(playerId, passwordHash);
+        List<AccountMutation> mutations = Collections.singletonList(mutation);
+        try {
+            return executeLoggedWrite(mutations, conn -> {
                 try (PreparedStatement stmt = conn.prepareStatement(
-                    "UPDATE secureauth_passwords SET password_hash = ?, last_changed = ? WHERE uuid = ?")) {
+                    "UPDATE secureauth_passwords SET password_hash = ?, last_changed = ? WHERE uuid = ? AND password_hash = ?")) {
                     stmt.setString(1, passwordHash);
-                    stmt.setLong(2, now);
-                    stmt.setString(3, playerId.toString());
-                    stmt.executeUpdate();
-                }
-            } else {
-                // Insert
-                try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO secureauth_passwords (uuid, password_hash, created_at, last_changed) VALUES (?, ?, ?, ?)")) {
-                    stmt.setString(1, playerId.toString());
-                    stmt.setString(2, passwordHash);
-                    stmt.setLong(3, now);
-                    stmt.setLong(4, now);
-                    stmt.executeUpdate();
+                    stmt.setLong(2, mutation.getTime());
+                    stmt.setBytes(3, Uuids.toBytes(playerId));
+                    stmt.setString(4, expectedHash);
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
                 }
-            }
+                logChanges(mutations);
+                return true;
+            });
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to set password for " + playerId, e);
+            plugin.getLogger().log(Level.SEVERE, "Failed to replace password hash for " + playerId, e);
+            return false;
+        } finally {
+            invalidateSnapshot(playerId);
         }
     }
 
@@ -227,13 +574,7 @@ public class DatabaseManager {
             return; // File-based handled separately
         }
         
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement("DELETE FROM secureauth_passwords WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.WARNING, "Failed to delete password for " + playerId, e);
-        }
+        write(AccountMutation.deletePassword(playerId));
     }
 
     // 2FA methods
@@ -242,9 +583,14 @@ public class DatabaseManager {
             return null;
         }
         
+        AccountSnapshot snapshot = getAccountSnapshot(playerId);
+        if (snapshot != null) {
+            return snapshot.getTwoFactorSecret();
+        }
+        
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT secret_key FROM secureauth_2fa WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
+            stmt.setBytes(1, Uuids.toBytes(playerId));
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getString("secret_key");
@@ -261,30 +607,7 @@ public class DatabaseManager {
             return;
         }
         
-        long now = System.currentTimeMillis();
-        
-        try (Connection conn = getConnection()) {
-            boolean exists = get2FASecret(playerId) != null;
-            
-            if (exists) {
-                try (PreparedStatement stmt = conn.prepareStatement(
-                    "UPDATE secureauth_2fa SET secret_key = ? WHERE uuid = ?")) {
-                    stmt.setString(1, secret);
-                    stmt.setString(2, playerId.toString());
-                    stmt.executeUpdate();
-                }
-            } else {
-                try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO secureauth_2fa (uuid, secret_key, enabled_at) VALUES (?, ?, ?)")) {
-                    stmt.setString(1, playerId.toString());
-                    stmt.setString(2, secret);
-                    stmt.setLong(3, now);
-                    stmt.executeUpdate();
-                }
-            }
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to set 2FA secret for " + playerId, e);
-        }
+        write(AccountMutation.set2FASecret(playerId, secret));
     }
 
     public void delete2FASecret(UUID playerId) {
@@ -292,13 +615,7 @@ public class DatabaseManager {
             return;
         }
         
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement("DELETE FROM secureauth_2fa WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.WARNING, "Failed to delete 2FA secret for " + playerId, e);
-        }
+        write(AccountMutation.delete2FA(playerId));
     }
 
     public List<String> get2FABackupCodes(UUID playerId) {
@@ -306,9 +623,14 @@ public class DatabaseManager {
             return null;
         }
         
+        AccountSnapshot snapshot = getAccountSnapshot(playerId);
+        if (snapshot != null) {
+            return new ArrayList<>(snapshot.getBackupCodes());
+        }
+        
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT backup_codes FROM secureauth_2fa WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
+            stmt.setBytes(1, Uuids.toBytes(playerId));
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     String codes = rs.getString("backup_codes");
@@ -328,32 +650,7 @@ public class DatabaseManager {
             return;
         }
         
-        String codesStr = String.join(",", codes);
-        
-        try (Connection conn = getConnection()) {
-            boolean exists = get2FASecret(playerId) != null;
-            
-            if (exists) {
-                try (PreparedStatement stmt = conn.prepareStatement(
-                    "UPDATE secureauth_2fa SET backup_codes = ? WHERE uuid = ?")) {
-                    stmt.setString(1, codesStr);
-                    stmt.setString(2, playerId.toString());
-                    stmt.executeUpdate();
-                }
-            } else {
-                // If no 2FA exists, create entry with just backup codes
-                try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO secureauth_2fa (uuid, secret_key, backup_codes, enabled_at) VALUES (?, ?, ?, ?)")) {
-                    stmt.setString(1, playerId.toString());
-                    stmt.setString(2, ""); // Empty secret
-                    stmt.setString(3, codesStr);
-                    stmt.setLong(4, System.currentTimeMillis());
-                    stmt.executeUpdate();
-                }
-            }
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to set 2FA backup codes for " + playerId, e);
-        }
+        write(AccountMutation.setBackupCodes(playerId, codes));
     }
 
     // Security question methods
@@ -362,9 +659,14 @@ public class DatabaseManager {
             return false;
         }
         
+        AccountSnapshot snapshot = getAccountSnapshot(playerId);
+        if (snapshot != null) {
+            return snapshot.hasSecurityQuestion();
+        }
+        
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT uuid FROM secureauth_recovery WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
+            stmt.setBytes(1, Uuids.toBytes(playerId));
             try (ResultSet rs = stmt.executeQuery()) {
                 return rs.next();
             }
@@ -379,9 +681,14 @@ public class DatabaseManager {
             return null;
         }
         
+        AccountSnapshot snapshot = getAccountSnapshot(playerId);
+        if (snapshot != null) {
+            return snapshot.getSecurityQuestion();
+        }
+        
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT security_question FROM secureauth_recovery WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
+            stmt.setBytes(1, Uuids.toBytes(playerId));
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getString("security_question");
@@ -398,9 +705,14 @@ public class DatabaseManager {
             return null;
         }
         
+        AccountSnapshot snapshot = getAccountSnapshot(playerId);
+        if (snapshot != null) {
+            return snapshot.getSecurityAnswer();
+        }
+        
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT security_answer FROM secureauth_recovery WHERE uuid = ?")) {
-            stmt.setString(1, playerId.toString());
+            stmt.setBytes(1, Uuids.toBytes(playerId));
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return rs.getString("security_answer");
@@ -417,39 +729,266 @@ public class DatabaseManager {
             return;
         }
         
-        try (Connection conn = getConnection()) {
-            boolean exists = hasSecurityQuestion(playerId);
-            
-            if (exists) {
-                try (PreparedStatement stmt = conn.prepareStatement(
-                    "UPDATE secureauth_recovery SET security_question = ?, security_answer = ? WHERE uuid = ?")) {
-                    stmt.setString(1, question);
-                    stmt.setString(2, answer.toLowerCase().trim());
-                    stmt.setString(3, playerId.toString());
-                    stmt.executeUpdate();
+        write(AccountMutation.setSecurityQuestion(playerId, question, answer));
+    }
+
+    /**
+     * Store a mutation, through the write-behind queue when it is enabled
+     */
+    private void write(AccountMutation mutation) {
+        if (writeBehind != null && writeBehind.submit(mutation)) {
+            return;
+        }
+        try {
+            List<AccountMutation> mutations = Collections.singletonList(mutation);
+            executeLoggedWrite(mutations, conn -> {
+                applyMutations(conn, mutations);
+                logChanges(mutations);
+                return null;
+            });
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to store " + mutation.getKind().getDescription() +
+                " for " + mutation.getPlayerId(), e);
+        } finally {
+            invalidateSnapshot(mutation.getPlayerId());
+        }
+    }
+
+    /**
+     * Run a write that ends by logging its mutations. The change log has to list each
+     * account's commits in commit order; the single writer thread already guarantees
+     * that, but inline writes on pooled connections can commit concurrently, so their
+     * accounts' commit locks are held from before the write until it has been logged.
+     */
+    <T> T executeLoggedWrite(List<AccountMutation> mutations, SqlWork<T> work) throws SQLException {
+        if (writer != null || changeLog == null) {
+            return executeWrite(work);
+        }
+        // Lock the stripes in ascending order so overlapping batches cannot deadlock
+        int[] stripes = mutations.stream()
+            .mapToInt(mutation -> Math.floorMod(mutation.getPlayerId().hashCode(), COMMIT_LOCK_STRIPES))
+            .distinct()
+            .sorted()
+            .toArray();
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                commitLocks[stripe].lock();
+                locked++;
+            }
+            return executeWrite(work);
+        } finally {
+            while (locked > 0) {
+                commitLocks[stripes[--locked]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Execute mutations as one JDBC batch per kind, in {@link AccountMutation.Kind} order.
+     * The caller owns the transaction.
+     */
+    void applyMutations(Connection conn, List<AccountMutation> mutations) throws SQLException {
+        Map<AccountMutation.Kind, List<AccountMutation>> byKind = new EnumMap<>(AccountMutation.Kind.class);
+        for (AccountMutation mutation : mutations) {
+            byKind.computeIfAbsent(mutation.getKind(), kind -> new ArrayList<>()).add(mutation);
+        }
+        
+        for (Map.Entry<AccountMutation.Kind, List<AccountMutation>> entry : byKind.entrySet()) {
+            try (PreparedStatement stmt = conn.prepareStatement(mutationSql(entry.getKey()))) {
+                for (AccountMutation mutation : entry.getValue()) {
+                    bindMutation(stmt, mutation);
+                    stmt.addBatch();
                 }
-            } else {
-                try (PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO secureauth_recovery (uuid, security_question, security_answer) VALUES (?, ?, ?)")) {
-                    stmt.setString(1, playerId.toString());
-                    stmt.setString(2, question);
-                    stmt.setString(3, answer.toLowerCase().trim());
-                    stmt.executeUpdate();
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Record committed mutations for the next incremental backup and the membership filter.
+     * Never throws: the data is already committed, so a failure to log it only forces the
+     * next backup to be a full one.
+     */
+    void logChanges(List<AccountMutation> mutations) {
+        if (membership != null) {
+            for (AccountMutation mutation : mutations) {
+                if (!mutation.getKind().isDelete()) {
+                    membership.add(mutation.getPlayerId());
                 }
             }
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to set security question for " + playerId, e);
+        }
+        if (changeLog != null) {
+            try {
+                changeLog.append(mutations);
+            } catch (RuntimeException e) {
+                changeLog.invalidate();
+                plugin.getLogger().log(Level.WARNING, "Failed to record " + mutations.size() +
+                    " account changes; the next backup will be a full one", e);
+            }
+        }
+    }
+
+    ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Commit every queued write now (before a restore replaces the data)
+     */
+    void drainWrites() {
+        if (writeBehind != null) {
+            writeBehind.drain();
+        }
+    }
+
+    /**
+     * Drop every cached snapshot after the data was replaced wholesale
+     */
+    void invalidateAllSnapshots() {
+        cacheManager.invalidateAllAccounts();
+        if (membership != null) {
+            membership.reset();
+        }
+    }
+
+    private String mutationSql(AccountMutation.Kind kind) {
+        switch (kind) {
+            case PASSWORD:
+                return upsertSql("secureauth_passwords",
+                    new String[]{"uuid", "password_hash", "created_at", "last_changed"},
+                    "password_hash", "last_changed");
+            case TWO_FACTOR_SECRET:
+                // enabled_at is only written for new rows; backup codes are left untouched
+                return upsertSql("secureauth_2fa",
+                    new String[]{"uuid", "secret_key", "enabled_at"},
+                    "secret_key");
+            case BACKUP_CODES:
+                // If no 2FA exists, the row is created with an empty secret and just the backup codes
+                return upsertSql("secureauth_2fa",
+                    new String[]{"uuid", "secret_key", "backup_codes", "enabled_at"},
+                    "backup_codes");
+            case SECURITY_QUESTION:
+                return upsertSql("secureauth_recovery",
+                    new String[]{"uuid", "security_question", "security_answer"},
+                    "security_question", "security_answer");
+            default:
+                return "DELETE FROM " + kind.getTable() + " WHERE uuid = ?";
+        }
+    }
+
+    private void bindMutation(PreparedStatement stmt, AccountMutation mutation) throws SQLException {
+        stmt.setBytes(1, Uuids.toBytes(mutation.getPlayerId()));
+        switch (mutation.getKind()) {
+            case PASSWORD:
+                stmt.setString(2, mutation.getValue());
+                stmt.setLong(3, mutation.getTime());
+                stmt.setLong(4, mutation.getTime());
+                break;
+            case TWO_FACTOR_SECRET:
+                stmt.setString(2, mutation.getValue());
+                stmt.setLong(3, mutation.getTime());
+                break;
+            case BACKUP_CODES:
+                stmt.setString(2, "");
+                stmt.setString(3, mutation.getValue());
+                stmt.setLong(4, mutation.getTime());
+                break;
+            case SECURITY_QUESTION:
+                stmt.setString(2, mutation.getValue());
+                stmt.setString(3, mutation.getExtra());
+                break;
+            default:
+                break;
         }
     }
 
+    /**
+     * Build a single-statement insert-or-update keyed on the uuid primary key.
+     * Columns not listed in updateColumns keep their stored value when the row exists.
+     */
+    private String upsertSql(String table, String[] columns, String... updateColumns) {
+        return upsertSql(databaseType, table, columns, updateColumns);
+    }
+
+    static String upsertSql(String type, String table, String[] columns, String... updateColumns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+            .append(" (").append(String.join(", ", columns)).append(") VALUES (")
+            .append(String.join(", ", Collections.nCopies(columns.length, "?"))).append(")");
+        if ("sqlite".equals(type)) {
+            sql.append(" ON CONFLICT(uuid) DO UPDATE SET ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(updateColumns[i]).append(" = excluded.").append(updateColumns[i]);
+            }
+        } else {
+            sql.append(" ON DUPLICATE KEY UPDATE ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(updateColumns[i]).append(" = VALUES(").append(updateColumns[i]).append(")");
+            }
+        }
+        return sql.toString();
+    }
+
     public void close() {
+        stopPreload();
+        if (fileStore != null) {
+            fileStore.close();
+        }
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                    plugin.getLogger().warning("Timed out waiting for queued database writes");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writeDataSource != null && !writeDataSource.isClosed()) {
+            writeDataSource.close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
         }
+        if (changeLog != null) {
+            changeLog.close();
+        }
     }
 
     public boolean isFileBased() {
         return "file".equals(databaseType);
     }
+
+    /**
+     * Number of connections checked out on the server thread since startup
+     */
+    public long getPrimaryThreadConnections() {
+        return primaryThreadConnections.get();
+    }
+
+    /**
+     * The membership filter, or null when it is disabled or storage is file-based
+     */
+    public AccountMembership getAccountMembership() {
+        return membership;
+    }
+
+    public boolean isWriteBehindEnabled() {
+        return writeBehind != null;
+    }
+
+    /**
+     * Account mutations queued but not yet committed
+     */
+    public int getPendingWrites() {
+        return writeBehind == null ? 0 : writeBehind.size();
+    }
+
+    public FileAccountStore getFileStore() {
+        return fileStore;
+    }
 }
 
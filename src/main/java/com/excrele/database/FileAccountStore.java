@@ -0,0 +1,530 @@
+package com.excrele.database;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+/**
+ * Append-only storage for passwords.txt.
+ *
+ * Every write appends a "uuid:hash" line and deletions append a "uuid:" tombstone, so the
+ * file stays readable by the legacy format. An index maps each UUID to the offset and
+ * length of its latest record, and dead records are dropped by compaction.
+ */
+public class FileAccountStore {
+    private static final int UUID_LENGTH = 36;
+    private static final int MAX_RECORD_LENGTH = 0xFFFF;
+    private static final int MIN_DEAD_RECORDS_FOR_COMPACTION = 1000;
+
+    private final JavaPlugin plugin;
+    private final File file;
+    private final File compactFile;
+    private final File indexFile;
+    private final boolean mappedIndex;
+    private final double compactionRatio;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock maintenanceLock = new ReentrantLock(); // Compaction vs. full scans
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private AccountIndex index;
+    private FileChannel channel;
+    private long deadRecords;
+    private ChangeLog changeLog; // Null unless incremental backups are enabled
+
+    public FileAccountStore(File file, boolean mappedIndex, double compactionRatio, JavaPlugin plugin) {
+        this.plugin = plugin;
+        this.file = file;
+        this.compactFile = new File(file.getParentFile(), file.getName() + ".compact");
+        this.indexFile = new File(file.getParentFile(), file.getName() + ".idx");
+        this.mappedIndex = mappedIndex;
+        this.compactionRatio = compactionRatio;
+    }
+
+    /**
+     * Open the log, rebuilding the index and discarding any torn record left by a crash.
+     * A memory-mapped index that was closed cleanly against the same log is reused as is.
+     */
+    public void open() throws IOException {
+        file.getParentFile().mkdirs();
+        if (compactFile.exists()) {
+            // A compaction never finished; the original log is still authoritative
+            Files.delete(compactFile.toPath());
+        }
+
+        lock.writeLock().lock();
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long logLength = channel.size();
+
+            if (mappedIndex) {
+                // Rough sizing: a bcrypt record is about 100 bytes
+                index = MappedAccountIndex.open(indexFile, (int) Math.min(Integer.MAX_VALUE, logLength / 100));
+            } else {
+                index = new HeapAccountIndex();
+                Files.deleteIfExists(indexFile.toPath());
+            }
+
+            if (index.isCurrent(logLength)) {
+                deadRecords = index.getStaleRecords();
+                plugin.getLogger().info("Reusing account index for " + file.getName());
+            } else {
+                index.clear();
+                deadRecords = 0;
+                long validLength = scan(file, 0, index);
+                if (validLength < logLength) {
+                    plugin.getLogger().warning("Truncating " + (logLength - validLength) +
+                        " bytes of incomplete data from " + file.getName());
+                    channel.truncate(validLength);
+                    channel.force(true);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        plugin.getLogger().info("Loaded " + index.size() + " accounts from " + file.getName() +
+            " (" + deadRecords + " stale records)");
+    }
+
+    /**
+     * Scan complete lines from the given offset into the index and return the end of the
+     * last complete line
+     */
+    private long scan(File source, long start, AccountIndex target) throws IOException {
+        return readRecords(source, start, Long.MAX_VALUE, (playerId, line, length, location) -> {
+            if (playerId == null) {
+                deadRecords++;
+                return;
+            }
+
+            long previous;
+            if (isTombstone(length)) {
+                previous = target.remove(playerId);
+                deadRecords++; // the tombstone itself
+            } else {
+                previous = target.put(playerId, location);
+            }
+            if (previous != 0) {
+                deadRecords++;
+            }
+        });
+    }
+
+    private interface RecordVisitor {
+        /**
+         * @param playerId the record's UUID, or null for a malformed line
+         */
+        void visit(UUID playerId, byte[] line, int length, long location) throws IOException;
+    }
+
+    /**
+     * Walk complete records sequentially between two offsets and return the end of the
+     * last complete line
+     */
+    private long readRecords(File source, long start, long end, RecordVisitor visitor) throws IOException {
+        long offset = start;
+        long lineStart = start;
+        byte[] line = new byte[256];
+        int length = 0;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source.toPath()), 65536)) {
+            in.skipNBytes(start);
+            int b;
+            while (offset < end && (b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    if (length == line.length) {
+                        byte[] grown = new byte[line.length * 2];
+                        System.arraycopy(line, 0, grown, 0, length);
+                        line = grown;
+                    }
+                    line[length++] = (byte) b;
+                    continue;
+                }
+
+                long recordLength = offset - lineStart;
+                while (length > 0 && (line[length - 1] == '\r' || line[length - 1] == ' ')) {
+                    length--;
+                }
+                if (length > 0) {
+                    UUID playerId = recordLength <= MAX_RECORD_LENGTH ? parseUuid(line, length) : null;
+                    visitor.visit(playerId, line, length, (lineStart << 16) | recordLength);
+                }
+                lineStart = offset;
+                length = 0;
+            }
+        }
+        return lineStart;
+    }
+
+    private static UUID parseUuid(byte[] line, int length) {
+        if (length <= UUID_LENGTH || line[UUID_LENGTH] != ':') {
+            return null;
+        }
+        try {
+            return UUID.fromString(new String(line, 0, UUID_LENGTH, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isTombstone(int trimmedLength) {
+        return trimmedLength == UUID_LENGTH + 1;
+    }
+
+    public boolean contains(UUID playerId) {
+        lock.readLock().lock();
+        try {
+            return index.get(playerId) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String get(UUID playerId) throws IOException {
+        lock.readLock().lock();
+        try {
+            long location = index.get(playerId);
+            if (location == 0) {
+                return null;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) (location & 0xFFFF));
+            long position = location >>> 16;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+            }
+            String record = new String(buffer.array(), StandardCharsets.US_ASCII).trim();
+            return record.substring(UUID_LENGTH + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visit every live account in log order without loading the whole file
+     */
+    public void forEach(BiConsumer<UUID, String> consumer) throws IOException {
+        maintenanceLock.lock();
+        try {
+            long end;
+            lock.readLock().lock();
+            try {
+                end = channel.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            readRecords(file, 0, end, (playerId, line, length, location) -> {
+                if (playerId != null && !isTombstone(length) && isLive(playerId, location)) {
+                    consumer.accept(playerId, new String(line, UUID_LENGTH + 1, length - UUID_LENGTH - 1,
+                        StandardCharsets.US_ASCII));
+                }
+            });
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Copy a point-in-time image of the log. Records are only ever appended, so the bytes
+     * up to the current length are consistent; compaction is held off so the file can't
+     * be swapped out mid-copy.
+     */
+    public void copyTo(OutputStream out) throws IOException {
+        maintenanceLock.lock();
+        try {
+            long end;
+            lock.readLock().lock();
+            try {
+                end = channel.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private boolean isLive(UUID playerId, long location) {
+        lock.readLock().lock();
+        try {
+            return index.get(playerId) == location;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(UUID playerId, String hash) throws IOException {
+        if (hash.isEmpty() || hash.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Invalid password hash for " + playerId);
+        }
+        append(playerId, playerId.toString() + ":" + hash + "\n", AccountMutation.setPassword(playerId, hash));
+    }
+
+    /**
+     * Store a new hash only if the current one is still the expected hash, checked under
+     * the write lock so a change in between is never overwritten
+     *
+     * @return whether the hash was replaced
+     */
+    public boolean replace(UUID playerId, String expectedHash, String hash) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!expectedHash.equals(get(playerId))) {
+                return false;
+            }
+            put(playerId, hash);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(UUID playerId) throws IOException {
+        if (!contains(playerId)) {
+            return;
+        }
+        append(playerId, playerId.toString() + ":\n", AccountMutation.deletePassword(playerId));
+    }
+
+    void setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    private void append(UUID playerId, String record, AccountMutation mutation) throws IOException {
+        boolean tombstone = mutation.getKind().isDelete();
+        byte[] bytes = record.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Record too large for " + playerId);
+        }
+
+        lock.writeLock().lock();
+        try {
+            long offset = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            channel.force(false);
+
+            long previous = tombstone ? index.remove(playerId) : index.put(playerId, (offset << 16) | bytes.length);
+            if (previous != 0) {
+                deadRecords++;
+            }
+            if (tombstone) {
+                deadRecords++;
+            }
+            if (changeLog != null) {
+                // Under the write lock so the change log orders writes like the store does
+                changeLog.append(mutation);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        scheduleCompactionIfNeeded();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (!needsCompaction() || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to compact " + file.getName(), e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Scheduler unavailable (e.g. plugin disabling); retry on a later write
+            compacting.set(false);
+        }
+    }
+
+    private boolean needsCompaction() {
+        lock.readLock().lock();
+        try {
+            return deadRecords >= MIN_DEAD_RECORDS_FOR_COMPACTION &&
+                deadRecords > index.size() * compactionRatio;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the log with only live records. Writes keep flowing while the live records
+     * are copied; anything appended meanwhile is carried over before the atomic swap.
+     */
+    public void compact() throws IOException {
+        maintenanceLock.lock();
+        try {
+            compactLog();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private void compactLog() throws IOException {
+        long snapshotEnd;
+        AccountIndex compactedIndex;
+        lock.readLock().lock();
+        try {
+            snapshotEnd = channel.size();
+            compactedIndex = index.newCompactionTarget();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        long previousDeadRecords = deadRecords;
+        boolean swapped = false;
+        try (FileChannel out = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer newline = ByteBuffer.allocate(1);
+            readRecords(file, 0, snapshotEnd, (playerId, line, length, location) -> {
+                if (playerId == null || isTombstone(length) || !isLive(playerId, location)) {
+                    return;
+                }
+                long newOffset = out.position();
+                ByteBuffer record = ByteBuffer.wrap(line, 0, length);
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+                newline.clear().put((byte) '\n').flip();
+                out.write(newline);
+                compactedIndex.put(playerId, (newOffset << 16) | (length + 1));
+            });
+
+            lock.writeLock().lock();
+            try {
+                long tailStart = out.position();
+                long tailLength = channel.size() - snapshotEnd;
+                long copied = 0;
+                while (copied < tailLength) {
+                    copied += channel.transferTo(snapshotEnd + copied, tailLength - copied, out);
+                }
+                out.force(true);
+
+                int liveBefore = compactedIndex.size();
+                deadRecords = 0;
+                scan(compactFile, tailStart, compactedIndex);
+                int liveAfter = compactedIndex.size();
+
+                channel.close();
+                Files.move(compactFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                swapped = true;
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                index = index.replaceWith(compactedIndex);
+
+                plugin.getLogger().info("Compacted " + file.getName() + ": " + liveAfter + " accounts (" +
+                    (liveAfter - liveBefore) + " written during compaction)");
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(compactFile.toPath());
+            lock.writeLock().lock();
+            try {
+                if (!channel.isOpen()) {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                if (swapped) {
+                    // The log was replaced but the index wasn't; rebuild it from the new log
+                    index.clear();
+                    deadRecords = 0;
+                    scan(file, 0, index);
+                } else {
+                    deadRecords = previousDeadRecords;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replace the whole log with another one (restore) and rebuild the index from it
+     */
+    void replaceLog(File replacement) throws IOException {
+        maintenanceLock.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                channel.force(true);
+                // A length that never matches, so the index is rebuilt from the new log
+                index.close(-1, 0);
+                channel.close();
+                Files.move(replacement.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                open();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.force(true);
+                index.close(channel.size(), deadRecords);
+                channel.close();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close " + file.getName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.excrele.database;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Default on-heap index; rebuilt from the log on every start.
+ */
+class HeapAccountIndex implements AccountIndex {
+    private final Map<UUID, Long> locations = new HashMap<>();
+
+    @Override
+    public long get(UUID playerId) {
+        Long location = locations.get(playerId);
+        return location == null ? 0 : location;
+    }
+
+    @Override
+    public long put(UUID playerId, long location) {
+        Long previous = locations.put(playerId, location);
+        return previous == null ? 0 : previous;
+    }
+
+    @Override
+    public long remove(UUID playerId) {
+        Long previous = locations.remove(playerId);
+        return previous == null ? 0 : previous;
+    }
+
+    @Override
+    public int size() {
+        return locations.size();
+    }
+
+    @Override
+    public void clear() {
+        locations.clear();
+    }
+
+    @Override
+    public boolean isCurrent(long logLength) {
+        return false;
+    }
+
+    @Override
+    public long getStaleRecords() {
+        return 0;
+    }
+
+    @Override
+    public AccountIndex newCompactionTarget() {
+        return new HeapAccountIndex();
+    }
+
+    @Override
+    public AccountIndex replaceWith(AccountIndex compacted) {
+        return compacted;
+    }
+
+    @Override
+    public void close(long logLength, long staleRecords) {
+        locations.clear();
+    }
+}
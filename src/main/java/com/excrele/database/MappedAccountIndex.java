@@ -0,0 +1,320 @@
+package com.excrele.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Off-heap open-addressing index stored in a memory-mapped file.
+ *
+ * Slots hold the two longs of the UUID plus the packed log location, use linear probing
+ * and backward-shift deletion, and are paged in by the OS on demand. A clean shutdown
+ * records the log length in the header so the next start can skip rebuilding.
+ */
+class MappedAccountIndex implements AccountIndex {
+    private static final int MAGIC = 0x53414958; // "SAIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+    private static final int MIN_CAPACITY = 1 << 12;
+    private static final int MAX_CAPACITY = 1 << 26; // Keeps the mapping under 2 GB
+    private static final double MAX_LOAD = 0.7;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int LOG_LENGTH_OFFSET = 24;
+    private static final int STALE_OFFSET = 32;
+    private static final int CLEAN_OFFSET = 40;
+
+    private final File file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int mask;
+    private int size;
+    private boolean current;
+    private long persistedLogLength;
+    private long staleRecords;
+
+    private MappedAccountIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open an existing index file or create a new one. The index is marked dirty until
+     * {@link #close} so a crash forces a rebuild on the next start.
+     */
+    static MappedAccountIndex open(File file, int expectedEntries) throws IOException {
+        MappedAccountIndex index = new MappedAccountIndex(file);
+        index.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int storedCapacity = index.channel.size() >= HEADER_SIZE ? index.readCapacity() : -1;
+        if (storedCapacity > 0) {
+            index.map(storedCapacity);
+            if (index.buffer.getInt(MAGIC_OFFSET) == MAGIC &&
+                    index.buffer.getInt(VERSION_OFFSET) == VERSION) {
+                index.size = (int) index.buffer.getLong(SIZE_OFFSET);
+                index.persistedLogLength = index.buffer.getLong(LOG_LENGTH_OFFSET);
+                index.staleRecords = index.buffer.getLong(STALE_OFFSET);
+                index.current = index.buffer.getInt(CLEAN_OFFSET) == 1;
+            } else {
+                index.buffer = null;
+            }
+        }
+        if (index.buffer == null) {
+            index.map(capacityFor(expectedEntries));
+            index.clear();
+        }
+
+        index.buffer.putInt(CLEAN_OFFSET, 0);
+        index.buffer.force();
+        return index;
+    }
+
+    private int readCapacity() throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        long stored = header.getLong(CAPACITY_OFFSET);
+        if (stored < MIN_CAPACITY || stored > MAX_CAPACITY || Long.bitCount(stored) != 1 ||
+                channel.size() < HEADER_SIZE + stored * SLOT_SIZE) {
+            return -1;
+        }
+        return (int) stored;
+    }
+
+    private static int capacityFor(int expectedEntries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * MAX_LOAD < expectedEntries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void map(int newCapacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+    }
+
+    private static int slotFor(long msb, long lsb, int mask) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int position(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int find(long msb, long lsb) {
+        int slot = slotFor(msb, lsb, mask);
+        while (true) {
+            int pos = position(slot);
+            if (buffer.getLong(pos + 16) == 0) {
+                return -1 - slot; // Empty slot where the key would go
+            }
+            if (buffer.getLong(pos) == msb && buffer.getLong(pos + 8) == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public long get(UUID playerId) {
+        int slot = find(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+        return slot < 0 ? 0 : buffer.getLong(position(slot) + 16);
+    }
+
+    @Override
+    public long put(UUID playerId, long location) throws IOException {
+        long msb = playerId.getMostSignificantBits();
+        long lsb = playerId.getLeastSignificantBits();
+        int slot = find(msb, lsb);
+        if (slot >= 0) {
+            int pos = position(slot);
+            long previous = buffer.getLong(pos + 16);
+            buffer.putLong(pos + 16, location);
+            return previous;
+        }
+
+        if (size + 1 > capacity * MAX_LOAD) {
+            resize(capacity << 1);
+            slot = find(msb, lsb);
+        }
+        int pos = position(-1 - slot);
+        buffer.putLong(pos, msb);
+        buffer.putLong(pos + 8, lsb);
+        buffer.putLong(pos + 16, location);
+        size++;
+        buffer.putLong(SIZE_OFFSET, size);
+        return 0;
+    }
+
+    @Override
+    public long remove(UUID playerId) {
+        int slot = find(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+        if (slot < 0) {
+            return 0;
+        }
+        long previous = buffer.getLong(position(slot) + 16);
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (buffer.getLong(position(next) + 16) != 0) {
+            int pos = position(next);
+            int home = slotFor(buffer.getLong(pos), buffer.getLong(pos + 8), mask);
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                int holePos = position(hole);
+                buffer.putLong(holePos, buffer.getLong(pos));
+                buffer.putLong(holePos + 8, buffer.getLong(pos + 8));
+                buffer.putLong(holePos + 16, buffer.getLong(pos + 16));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        int holePos = position(hole);
+        buffer.putLong(holePos, 0);
+        buffer.putLong(holePos + 8, 0);
+        buffer.putLong(holePos + 16, 0);
+        size--;
+        buffer.putLong(SIZE_OFFSET, size);
+        return previous;
+    }
+
+    private void resize(int newCapacity) throws IOException {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IOException("Account index is full (" + size + " entries)");
+        }
+
+        File resizeFile = new File(file.getParentFile(), file.getName() + ".resize");
+        MappedAccountIndex resized = create(resizeFile, newCapacity);
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                int pos = position(slot);
+                long location = buffer.getLong(pos + 16);
+                if (location != 0) {
+                    resized.insertNew(buffer.getLong(pos), buffer.getLong(pos + 8), location);
+                }
+            }
+            copyFrom(resized);
+        } finally {
+            resized.delete();
+        }
+    }
+
+    private void insertNew(long msb, long lsb, long location) {
+        int slot = -1 - find(msb, lsb);
+        int pos = position(slot);
+        buffer.putLong(pos, msb);
+        buffer.putLong(pos + 8, lsb);
+        buffer.putLong(pos + 16, location);
+        size++;
+    }
+
+    private static MappedAccountIndex create(File file, int capacity) throws IOException {
+        Files.deleteIfExists(file.toPath());
+        MappedAccountIndex index = new MappedAccountIndex(file);
+        index.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.map(capacity);
+        index.clear();
+        return index;
+    }
+
+    /**
+     * Replace this index's slots with a copy of another index's slots, growing if needed
+     */
+    private void copyFrom(MappedAccountIndex source) throws IOException {
+        if (source.capacity != capacity) {
+            map(source.capacity);
+        }
+        int length = capacity * SLOT_SIZE;
+        buffer.put(HEADER_SIZE, source.buffer, HEADER_SIZE, length);
+        size = source.size;
+        writeHeader();
+    }
+
+    private void delete() throws IOException {
+        channel.close();
+        buffer = null;
+        // The mapping is released on GC; on platforms that lock mapped files the
+        // leftover is removed the next time the index is created
+        file.delete();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        int end = position(capacity);
+        for (int pos = HEADER_SIZE; pos < end; pos += 8) {
+            buffer.putLong(pos, 0);
+        }
+        size = 0;
+        staleRecords = 0;
+        current = false;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(SIZE_OFFSET, size);
+    }
+
+    @Override
+    public boolean isCurrent(long logLength) {
+        return current && persistedLogLength == logLength;
+    }
+
+    @Override
+    public long getStaleRecords() {
+        return staleRecords;
+    }
+
+    @Override
+    public AccountIndex newCompactionTarget() throws IOException {
+        return create(new File(file.getParentFile(), file.getName() + ".compact"), capacity);
+    }
+
+    @Override
+    public AccountIndex replaceWith(AccountIndex compacted) throws IOException {
+        MappedAccountIndex source = (MappedAccountIndex) compacted;
+        try {
+            copyFrom(source);
+        } finally {
+            source.delete();
+        }
+        return this;
+    }
+
+    @Override
+    public void close(long logLength, long staleRecords) throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        writeHeader();
+        buffer.putLong(LOG_LENGTH_OFFSET, logLength);
+        buffer.putLong(STALE_OFFSET, staleRecords);
+        buffer.force();
+        buffer.putInt(CLEAN_OFFSET, 1);
+        buffer.force();
+        channel.close();
+        buffer = null;
+    }
+}
@@ -0,0 +1,628 @@
+package com.excrele.database;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming copy of every account table from one storage type to another.
+ *
+ * Database sources are split into uuid ranges copied in parallel, each worker with its
+ * own connections, paging through its range in uuid order. File storage is read in log
+ * order by one reader thread feeding a small bounded queue. Every chunk is written as
+ * one JDBC batch in its own transaction and then checkpointed, so memory use is
+ * constant and an interrupted run resumes after the last committed chunk. Writes are
+ * upserts, so replaying a chunk is harmless. Row counts and checksums are compared at
+ * the end.
+ */
+class MigrationJob {
+    private static final int BUFFERED_CHUNKS = 4;
+    private static final int MAX_PARTITIONS = 256; // One per leading uuid byte
+    private static final String KEY_FORMAT = "hex"; // Range keys are hex-encoded binary uuids
+    private static final HexFormat HEX = HexFormat.of();
+
+    enum Table {
+        PASSWORDS("secureauth_passwords", "uuid", "password_hash", "created_at", "last_changed"),
+        TWO_FACTOR("secureauth_2fa", "uuid", "secret_key", "backup_codes", "enabled_at"),
+        RECOVERY("secureauth_recovery", "uuid", "security_question", "security_answer");
+
+        private final String tableName;
+        private final String[] columns;
+
+        Table(String tableName, String... columns) {
+            this.tableName = tableName;
+            this.columns = columns;
+        }
+
+        String getTableName() {
+            return tableName;
+        }
+
+        String[] getColumns() {
+            return columns;
+        }
+    }
+
+    interface ProgressListener {
+        void onProgress(Table table, long copied, long total);
+    }
+
+    /**
+     * Counts and checksums of one table on both sides
+     */
+    static final class Verification {
+        private final Table table;
+        private final long sourceRows;
+        private final long targetRows;
+        private final long sourceChecksum;
+        private final long targetChecksum;
+
+        Verification(Table table, long sourceRows, long targetRows, long sourceChecksum, long targetChecksum) {
+            this.table = table;
+            this.sourceRows = sourceRows;
+            this.targetRows = targetRows;
+            this.sourceChecksum = sourceChecksum;
+            this.targetChecksum = targetChecksum;
+        }
+
+        Table getTable() {
+            return table;
+        }
+
+        long getSourceRows() {
+            return sourceRows;
+        }
+
+        long getTargetRows() {
+            return targetRows;
+        }
+
+        boolean matches() {
+            return sourceRows == targetRows && sourceChecksum == targetChecksum;
+        }
+    }
+
+    private static final class Chunk {
+        static final Chunk END = new Chunk(null, 0);
+
+        final List<Object[]> rows;
+        final long position;
+
+        Chunk(List<Object[]> rows, long position) {
+            this.rows = rows;
+            this.position = position;
+        }
+    }
+
+    private final String sourceType;
+    private final String targetType;
+    private final FileAccountStore sourceStore; // Set when copying from file storage
+    private final DataSource source;
+    private final DataSource target;
+    private final File checkpointFile;
+    private final int chunkSize;
+    private final int parallelism;
+    private final long nanosPerRow; // 0 when unthrottled
+    private final AtomicLong nextWriteSlot = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+    private volatile Throwable readerFailure;
+
+    /**
+     * @param parallelism number of uuid ranges copied at once (database to MySQL only)
+     * @param maxRowsPerSecond write rate limit across all workers, 0 for none
+     */
+    MigrationJob(String sourceType, FileAccountStore sourceStore, DataSource source,
+                 String targetType, DataSource target, File checkpointFile, int chunkSize,
+                 int parallelism, int maxRowsPerSecond) {
+        this.sourceType = sourceType;
+        this.sourceStore = sourceStore;
+        this.source = source;
+        this.targetType = targetType;
+        this.target = target;
+        this.checkpointFile = checkpointFile;
+        this.chunkSize = Math.max(1, chunkSize);
+        // The file log is read sequentially, and SQLite allows only one writer at a time
+        boolean sequential = sourceStore != null || "sqlite".equals(targetType);
+        this.parallelism = sequential ? 1 : Math.max(1, Math.min(MAX_PARTITIONS, parallelism));
+        this.nanosPerRow = maxRowsPerSecond > 0 ? 1_000_000_000L / maxRowsPerSecond : 0;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    private boolean isFileSource() {
+        return sourceStore != null;
+    }
+
+    /**
+     * Tables that exist in the source; file storage only has passwords
+     */
+    List<Table> getTables() {
+        return isFileSource() ? List.of(Table.PASSWORDS) : Arrays.asList(Table.values());
+    }
+
+    /**
+     * Identifies the source contents a file checkpoint was taken against
+     */
+    private String sourceFingerprint() {
+        return isFileSource() ? String.valueOf(sourceStore.getFile().length()) : "";
+    }
+
+    /**
+     * The checkpoint to resume from, or null to start over
+     */
+    Properties loadCheckpoint() throws IOException {
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = new FileInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        }
+        if (!sourceType.equals(checkpoint.getProperty("source")) ||
+                !targetType.equals(checkpoint.getProperty("target"))) {
+            return null;
+        }
+        // Log order shifts when the file changes, so a file checkpoint is only valid for the same file
+        if (isFileSource() && !sourceFingerprint().equals(checkpoint.getProperty("fingerprint"))) {
+            return null;
+        }
+        // Range boundaries depend on the partition count
+        if (!String.valueOf(parallelism).equals(checkpoint.getProperty("partitions"))) {
+            return null;
+        }
+        // Keys from before binary uuids were uuid strings
+        if (!KEY_FORMAT.equals(checkpoint.getProperty("keys"))) {
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @param rangeKeys last committed key of each range, in hex (database sources)
+     * @param position live records committed so far (file sources)
+     */
+    private synchronized void saveCheckpoint(Table table, String[] rangeKeys, long position, long copied)
+            throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("source", sourceType);
+        checkpoint.setProperty("target", targetType);
+        checkpoint.setProperty("fingerprint", sourceFingerprint());
+        checkpoint.setProperty("partitions", String.valueOf(parallelism));
+        checkpoint.setProperty("keys", KEY_FORMAT);
+        checkpoint.setProperty("table", table.name());
+        for (int i = 0; i < rangeKeys.length; i++) {
+            checkpoint.setProperty("key." + i, rangeKeys[i]);
+        }
+        checkpoint.setProperty("position", String.valueOf(position));
+        checkpoint.setProperty("copied", String.valueOf(copied));
+
+        File temp = new File(checkpointFile.getParentFile(), checkpointFile.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            checkpoint.store(out, "SecureAuth migration progress");
+        }
+        Files.move(temp.toPath(), checkpointFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void deleteCheckpoint() {
+        checkpointFile.delete();
+    }
+
+    /**
+     * Copy every table, resuming from the checkpoint if one is given
+     *
+     * @return rows copied, including those copied by earlier runs
+     */
+    long copy(Properties checkpoint, ProgressListener listener) throws Exception {
+        try (Connection conn = target.getConnection()) {
+            DatabaseManager.createTables(conn, targetType);
+        }
+        if (!isFileSource()) {
+            // A database from an older version is upgraded first, so both sides use binary keys
+            try (Connection conn = source.getConnection()) {
+                DatabaseManager.createTables(conn, sourceType);
+            }
+        }
+
+        Table resumeTable = checkpoint == null ? null : Table.valueOf(checkpoint.getProperty("table"));
+        AtomicLong copied = new AtomicLong(checkpoint == null ? 0 : Long.parseLong(checkpoint.getProperty("copied", "0")));
+        for (Table table : getTables()) {
+            Properties resume = null;
+            if (resumeTable != null) {
+                if (table.ordinal() < resumeTable.ordinal()) {
+                    continue;
+                }
+                if (table == resumeTable) {
+                    resume = checkpoint;
+                }
+            }
+            if (isFileSource()) {
+                long startPosition = resume == null ? 0 : Long.parseLong(resume.getProperty("position", "0"));
+                streamFile(table, startPosition, copied, listener);
+            } else {
+                copyRanges(table, resume, copied, listener);
+            }
+        }
+        return copied.get();
+    }
+
+    /**
+     * Lower bounds of the uuid ranges in hex: "" then evenly spaced one-byte prefixes
+     */
+    private String[] rangeStarts() {
+        String[] starts = new String[parallelism];
+        starts[0] = "";
+        for (int i = 1; i < parallelism; i++) {
+            starts[i] = String.format("%02x", i * MAX_PARTITIONS / parallelism);
+        }
+        return starts;
+    }
+
+    private void copyRanges(Table table, Properties resume, AtomicLong copied, ProgressListener listener)
+            throws Exception {
+        String[] starts = rangeStarts();
+        String[] rangeKeys = starts.clone();
+        if (resume != null) {
+            for (int i = 0; i < rangeKeys.length; i++) {
+                rangeKeys[i] = resume.getProperty("key." + i, starts[i]);
+            }
+        }
+
+        long total = count(source, table, "");
+        AtomicLong tableCopied = new AtomicLong();
+        for (int i = 0; i < rangeKeys.length; i++) {
+            tableCopied.addAndGet(countTarget(table, starts[i], rangeKeys[i]));
+        }
+        reportProgress(listener, table, tableCopied.get(), total);
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger threadId = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SecureAuth-Migration-" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Void>> ranges = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                int range = i;
+                String end = i + 1 < parallelism ? starts[i + 1] : null;
+                ranges.add(workers.submit(() -> {
+                    copyRange(table, range, end, rangeKeys, copied, tableCopied, total, listener);
+                    return null;
+                }));
+            }
+            for (Future<Void> range : ranges) {
+                try {
+                    range.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Copy one uuid range on its own source and target connections
+     *
+     * @param end exclusive upper bound, or null for the last range
+     */
+    private void copyRange(Table table, int range, String end, String[] rangeKeys, AtomicLong copied,
+                           AtomicLong tableCopied, long total, ProgressListener listener) throws Exception {
+        String[] columns = table.getColumns();
+        String sql = DatabaseManager.upsertSql(targetType, table.getTableName(), columns,
+            Arrays.copyOfRange(columns, 1, columns.length));
+        String lastKey;
+        synchronized (this) {
+            lastKey = rangeKeys[range];
+        }
+
+        try (Connection sourceConn = source.getConnection();
+             Connection targetConn = target.getConnection();
+             PreparedStatement stmt = targetConn.prepareStatement(sql)) {
+            targetConn.setAutoCommit(false);
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Object[]> rows = readPage(sourceConn, table, lastKey, end);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                throttle(rows.size());
+                writeBatch(targetConn, stmt, rows);
+                lastKey = HEX.formatHex((byte[]) rows.get(rows.size() - 1)[0]);
+
+                long copiedNow = copied.addAndGet(rows.size());
+                synchronized (this) {
+                    rangeKeys[range] = lastKey;
+                    saveCheckpoint(table, rangeKeys, 0, copiedNow);
+                }
+                reportProgress(listener, table, tableCopied.addAndGet(rows.size()), total);
+            }
+            targetConn.setAutoCommit(true);
+        }
+    }
+
+    private static void writeBatch(Connection conn, PreparedStatement stmt, List<Object[]> rows) throws SQLException {
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                stmt.setObject(i + 1, row[i]);
+            }
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+        conn.commit();
+    }
+
+    /**
+     * Spread writes out to stay under the configured rows per second across all workers
+     */
+    private void throttle(int rows) throws InterruptedException {
+        if (nanosPerRow == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long slot = nextWriteSlot.getAndAccumulate(rows * nanosPerRow, (next, cost) -> Math.max(next, now) + cost);
+        long wait = Math.max(slot, now) - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private synchronized void reportProgress(ProgressListener listener, Table table, long copied, long total) {
+        listener.onProgress(table, copied, total);
+    }
+
+    private void streamFile(Table table, long startPosition, AtomicLong copied,
+                            ProgressListener listener) throws Exception {
+        long total = sourceStore.size();
+        long tableCopied = startPosition;
+        reportProgress(listener, table, tableCopied, total);
+
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(BUFFERED_CHUNKS);
+        readerFailure = null;
+        Thread reader = new Thread(() -> {
+            try {
+                readFile(startPosition, queue);
+            } catch (InterruptedException e) {
+                return; // Writer failed and stopped us
+            } catch (Throwable t) {
+                readerFailure = t;
+            }
+            try {
+                queue.put(Chunk.END);
+            } catch (InterruptedException ignored) {
+                // Writer is gone
+            }
+        }, "SecureAuth-Migration-Reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        String[] columns = table.getColumns();
+        String sql = DatabaseManager.upsertSql(targetType, table.getTableName(), columns,
+            Arrays.copyOfRange(columns, 1, columns.length));
+        try (Connection conn = target.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk == Chunk.END) {
+                    break;
+                }
+                throttle(chunk.rows.size());
+                writeBatch(conn, stmt, chunk.rows);
+
+                tableCopied += chunk.rows.size();
+                saveCheckpoint(table, new String[0], chunk.position, copied.addAndGet(chunk.rows.size()));
+                reportProgress(listener, table, tableCopied, total);
+            }
+            conn.setAutoCommit(true);
+        } finally {
+            reader.interrupt();
+            reader.join();
+        }
+
+        if (readerFailure instanceof Exception) {
+            throw (Exception) readerFailure;
+        } else if (readerFailure != null) {
+            throw new IllegalStateException("Migration reader failed", readerFailure);
+        }
+    }
+
+    /**
+     * One keyset page: the next chunk of rows after lastKey in uuid order
+     *
+     * @param end exclusive upper bound, or null for none
+     */
+    private List<Object[]> readPage(Connection conn, Table table, String lastKey, String end) throws SQLException {
+        String[] columns = table.getColumns();
+        String sql = "SELECT " + String.join(", ", columns) + " FROM " + table.getTableName() +
+            " WHERE uuid > ?" + (end != null ? " AND uuid < ?" : "") + " ORDER BY uuid LIMIT " + chunkSize;
+        List<Object[]> rows = new ArrayList<>(chunkSize);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setBytes(1, HEX.parseHex(lastKey));
+            if (end != null) {
+                stmt.setBytes(2, HEX.parseHex(end));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Object[] row = new Object[columns.length];
+                    row[0] = rs.getBytes(1);
+                    for (int i = 1; i < columns.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private void readFile(long startPosition, BlockingQueue<Chunk> queue) throws IOException, InterruptedException {
+        long[] position = {0};
+        List<List<Object[]>> pending = new ArrayList<>(1);
+        pending.add(new ArrayList<>(chunkSize));
+        try {
+            sourceStore.forEach((playerId, passwordHash) -> {
+                if (position[0]++ < startPosition) {
+                    return;
+                }
+                // The file has no timestamps, so migrated accounts start from the migration time
+                pending.get(0).add(new Object[]{Uuids.toBytes(playerId), passwordHash, startedAt, startedAt});
+                if (pending.get(0).size() >= chunkSize) {
+                    try {
+                        queue.put(new Chunk(pending.get(0), position[0]));
+                    } catch (InterruptedException e) {
+                        throw new ReaderInterruptedException();
+                    }
+                    pending.set(0, new ArrayList<>(chunkSize));
+                }
+            });
+        } catch (ReaderInterruptedException e) {
+            throw new InterruptedException();
+        }
+        if (!pending.get(0).isEmpty()) {
+            queue.put(new Chunk(pending.get(0), position[0]));
+        }
+    }
+
+    private static final class ReaderInterruptedException extends RuntimeException {
+        ReaderInterruptedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Target rows already in a range up to its checkpoint, for resumed progress
+     */
+    private long countTarget(Table table, String start, String upToKey) throws SQLException {
+        if (upToKey.equals(start)) {
+            return 0;
+        }
+        try (Connection conn = target.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT COUNT(*) FROM " + table.getTableName() + " WHERE uuid > ? AND uuid <= ?")) {
+            stmt.setBytes(1, HEX.parseHex(start));
+            stmt.setBytes(2, HEX.parseHex(upToKey));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static long count(DataSource dataSource, Table table, String where) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM " + table.getTableName() + where);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Rows already in the target before a fresh run; verification compares whole tables
+     */
+    long countExistingTargetRows() throws SQLException {
+        long rows = 0;
+        try (Connection conn = target.getConnection()) {
+            DatabaseManager.createTables(conn, targetType);
+        }
+        for (Table table : getTables()) {
+            rows += count(target, table, "");
+        }
+        return rows;
+    }
+
+    /**
+     * Compare row counts and order-independent checksums of every copied table
+     */
+    List<Verification> verify() throws IOException, SQLException {
+        List<Verification> results = new ArrayList<>();
+        for (Table table : getTables()) {
+            // Timestamps for file-sourced accounts are generated, so only uuid and hash are compared
+            int columns = isFileSource() ? 2 : table.getColumns().length;
+            long[] sourceSum = {0, 0};
+            if (isFileSource()) {
+                sourceStore.forEach((playerId, passwordHash) -> {
+                    sourceSum[0]++;
+                    sourceSum[1] += rowHash(new Object[]{Uuids.toBytes(playerId), passwordHash}, columns);
+                });
+            } else {
+                checksum(source, table, columns, sourceSum);
+            }
+            long[] targetSum = {0, 0};
+            checksum(target, table, columns, targetSum);
+            results.add(new Verification(table, sourceSum[0], targetSum[0], sourceSum[1], targetSum[1]));
+        }
+        return results;
+    }
+
+    private void checksum(DataSource dataSource, Table table, int columns, long[] sum) throws SQLException {
+        String lastKey = "";
+        try (Connection conn = dataSource.getConnection()) {
+            while (true) {
+                List<Object[]> rows = readPage(conn, table, lastKey, null);
+                if (rows.isEmpty()) {
+                    return;
+                }
+                for (Object[] row : rows) {
+                    sum[0]++;
+                    sum[1] += rowHash(row, columns);
+                }
+                lastKey = HEX.formatHex((byte[]) rows.get(rows.size() - 1)[0]);
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the row's values; rows are summed so the order they are read in
+     * doesn't matter
+     */
+    private static long rowHash(Object[] row, int columns) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < columns; i++) {
+            Object value = row[i];
+            // SQLite returns small integers as Integer, MySQL as Long
+            byte[] bytes = value instanceof byte[] ? (byte[]) value : (value == null ? "\u0000" : value instanceof Number
+                ? String.valueOf(((Number) value).longValue()) : value.toString()).getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= 0x1f;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
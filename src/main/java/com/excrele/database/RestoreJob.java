@@ -0,0 +1,354 @@
+package com.excrele.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Restores the active storage from a full backup followed by its increments.
+ *
+ * Databases are cleared and reloaded in one transaction, so a failed restore leaves
+ * the old data in place. File storage gets a new log built next to the current one
+ * and swapped in. A base of another storage type can be restored too; file storage
+ * only keeps the passwords from it.
+ */
+class RestoreJob {
+    private static final int BATCH_SIZE = 1000;
+
+    private final DatabaseManager databaseManager;
+    private final String type;
+    private long replayed;
+    private long skipped;
+
+    RestoreJob(DatabaseManager databaseManager, String type) {
+        this.databaseManager = databaseManager;
+        this.type = type;
+    }
+
+    /**
+     * Receives the contents of a backup in order
+     */
+    private interface Sink {
+        void row(MigrationJob.Table table, Object[] values) throws IOException, SQLException;
+
+        void mutation(AccountMutation mutation) throws IOException, SQLException;
+
+        void flush() throws IOException, SQLException;
+    }
+
+    /**
+     * Restore the base and its increments
+     *
+     * @return number of changes replayed from the increments
+     */
+    long run(File base, File[] increments) throws IOException, SQLException {
+        FileAccountStore store = databaseManager.getFileStore();
+        if (store != null) {
+            restoreFile(store, base, increments);
+        } else {
+            restoreDatabase(base, increments);
+        }
+        return replayed;
+    }
+
+    /**
+     * Rows or changes that the active storage cannot hold (2FA and recovery data for
+     * file storage)
+     */
+    long getSkipped() {
+        return skipped;
+    }
+
+    private void restoreFile(FileAccountStore store, File base, File[] increments) throws IOException, SQLException {
+        File target = store.getFile();
+        File temp = new File(target.getParentFile(), "." + target.getName() + ".restore");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)) {
+            Sink sink = new Sink() {
+                @Override
+                public void row(MigrationJob.Table table, Object[] values) throws IOException {
+                    if (table == MigrationJob.Table.PASSWORDS && values[1] != null) {
+                        write(Uuids.fromBytes((byte[]) values[0]) + ":" + values[1]);
+                    } else {
+                        skipped++;
+                    }
+                }
+
+                @Override
+                public void mutation(AccountMutation mutation) throws IOException {
+                    if (mutation.getKind() == AccountMutation.Kind.PASSWORD) {
+                        write(mutation.getPlayerId() + ":" + mutation.getValue());
+                    } else if (mutation.getKind() == AccountMutation.Kind.DELETE_PASSWORD) {
+                        write(mutation.getPlayerId() + ":");
+                    } else {
+                        skipped++;
+                    }
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                private void write(String record) throws IOException {
+                    out.write((record + "\n").getBytes(StandardCharsets.US_ASCII));
+                }
+            };
+            read(base, increments, sink);
+        }
+        try {
+            store.replaceLog(temp);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private void restoreDatabase(File base, File[] increments) throws IOException, SQLException {
+        IOException[] failure = new IOException[1];
+        databaseManager.executeWrite(conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    for (MigrationJob.Table table : MigrationJob.Table.values()) {
+                        stmt.executeUpdate("DELETE FROM " + table.getTableName());
+                    }
+                }
+                read(base, increments, new DatabaseSink(conn));
+                conn.commit();
+            } catch (IOException e) {
+                conn.rollback();
+                failure[0] = e;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Batches base rows per table and coalesces changes per account like the
+     * write-behind queue, so each batch can run in {@link AccountMutation.Kind} order
+     */
+    private final class DatabaseSink implements Sink {
+        private final Connection conn;
+        private final Map<MigrationJob.Table, List<Object[]>> rows = new LinkedHashMap<>();
+        private final Map<UUID, List<AccountMutation>> mutations = new LinkedHashMap<>();
+
+        DatabaseSink(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void row(MigrationJob.Table table, Object[] values) throws SQLException {
+            List<Object[]> batch = rows.computeIfAbsent(table, t -> new ArrayList<>());
+            batch.add(values);
+            if (batch.size() >= BATCH_SIZE) {
+                flushRows(table, batch);
+            }
+        }
+
+        @Override
+        public void mutation(AccountMutation mutation) throws SQLException {
+            List<AccountMutation> queued = mutations.computeIfAbsent(mutation.getPlayerId(), id -> new ArrayList<>());
+            queued.removeIf(mutation::supersedes);
+            queued.add(mutation);
+            if (mutations.size() >= BATCH_SIZE) {
+                flushMutations();
+            }
+        }
+
+        @Override
+        public void flush() throws SQLException {
+            for (Map.Entry<MigrationJob.Table, List<Object[]>> entry : rows.entrySet()) {
+                flushRows(entry.getKey(), entry.getValue());
+            }
+            flushMutations();
+        }
+
+        private void flushRows(MigrationJob.Table table, List<Object[]> batch) throws SQLException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            String[] columns = table.getColumns();
+            String sql = DatabaseManager.upsertSql(type, table.getTableName(), columns,
+                Arrays.copyOfRange(columns, 1, columns.length));
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (Object[] row : batch) {
+                    for (int i = 0; i < row.length; i++) {
+                        stmt.setObject(i + 1, row[i]);
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            batch.clear();
+        }
+
+        private void flushMutations() throws SQLException {
+            if (mutations.isEmpty()) {
+                return;
+            }
+            List<AccountMutation> batch = new ArrayList<>();
+            mutations.values().forEach(batch::addAll);
+            databaseManager.applyMutations(conn, batch);
+            mutations.clear();
+        }
+    }
+
+    private void read(File base, File[] increments, Sink sink) throws IOException, SQLException {
+        String name = base.getName();
+        if (name.endsWith(".db.gz")) {
+            readSQLite(base, sink);
+        } else {
+            try (BufferedReader reader = open(base)) {
+                if (name.endsWith(".tsv.gz")) {
+                    readExport(reader, sink);
+                } else {
+                    readFileLog(reader, sink);
+                }
+            }
+        }
+        sink.flush();
+
+        for (File increment : increments) {
+            try (BufferedReader reader = open(increment)) {
+                String header = reader.readLine();
+                if (!BackupJob.CHANGES_HEADER.equals(header)) {
+                    throw new IOException(increment.getName() + " is not a change log backup");
+                }
+                List<AccountMutation> changes = new ArrayList<>();
+                ChangeLog.read(reader, changes::add);
+                for (AccountMutation mutation : changes) {
+                    sink.mutation(mutation);
+                }
+                replayed += changes.size();
+            }
+            sink.flush(); // Each increment is stored before the next one
+        }
+    }
+
+    private static BufferedReader open(File file) throws IOException {
+        InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()), 1 << 16);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Lines of the file storage log: "uuid:hash", or "uuid:" for a deleted account
+     */
+    private static void readFileLog(BufferedReader reader, Sink sink) throws IOException, SQLException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            int colon = line.indexOf(':');
+            if (colon != 36) {
+                continue; // Torn or foreign line; the store skips these too
+            }
+            UUID playerId;
+            try {
+                playerId = UUID.fromString(line.substring(0, colon));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            String hash = line.substring(colon + 1);
+            sink.mutation(hash.isEmpty() ? AccountMutation.deletePassword(playerId)
+                                         : AccountMutation.setPassword(playerId, hash));
+        }
+    }
+
+    private static void readExport(BufferedReader reader, Sink sink) throws IOException, SQLException {
+        if (!BackupJob.EXPORT_HEADER.equals(reader.readLine())) {
+            throw new IOException("Not a SecureAuth export");
+        }
+        MigrationJob.Table table = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("# table ")) {
+                table = tableNamed(line.substring(8).split(" ")[0]);
+                continue;
+            }
+            if (line.isEmpty() || table == null) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            String[] columns = table.getColumns();
+            if (fields.length != columns.length) {
+                throw new IOException("Malformed row in " + table.getTableName() + ": " + line);
+            }
+            Object[] values = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                String value = BackupJob.unescape(fields[i]);
+                values[i] = value != null && isTimestamp(columns[i]) ? (Object) Long.valueOf(value) : value;
+            }
+            values[0] = Uuids.toKey(values[0]);
+            sink.row(table, values);
+        }
+    }
+
+    private void readSQLite(File base, Sink sink) throws IOException, SQLException {
+        File temp = new File(base.getParentFile(), "." + base.getName() + ".restore.db");
+        try {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(base.toPath()), 1 << 16)) {
+                Files.copy(in, temp.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (HikariDataSource source = databaseManager.openSQLiteFile(temp, "SecureAuth-Restore");
+                 Connection conn = source.getConnection()) {
+                for (MigrationJob.Table table : MigrationJob.Table.values()) {
+                    String[] columns = table.getColumns();
+                    try (Statement stmt = conn.createStatement();
+                         ResultSet rs = stmt.executeQuery("SELECT " + String.join(", ", columns) +
+                             " FROM " + table.getTableName())) {
+                        while (rs.next()) {
+                            Object[] values = new Object[columns.length];
+                            for (int i = 0; i < columns.length; i++) {
+                                values[i] = rs.getObject(i + 1);
+                            }
+                            values[0] = Uuids.toKey(values[0]); // Bases from before binary keys hold strings
+                            sink.row(table, values);
+                        }
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static MigrationJob.Table tableNamed(String name) throws IOException {
+        for (MigrationJob.Table table : MigrationJob.Table.values()) {
+            if (table.getTableName().equals(name)) {
+                return table;
+            }
+        }
+        throw new IOException("Unknown table in export: " + name);
+    }
+
+    private static boolean isTimestamp(String column) {
+        return column.endsWith("_at") || "last_changed".equals(column);
+    }
+}
@@ -0,0 +1,221 @@
+package com.excrele.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Versioned schema changes for the account tables, applied in order at startup.
+ *
+ * Applied versions are recorded in secureauth_schema_version, so each migration runs
+ * once per database. Every step can be re-run after a crash part way through. On MySQL
+ * a named lock keeps servers sharing the database from upgrading it at the same time.
+ */
+class SchemaMigrator {
+    static final String VERSION_TABLE = "secureauth_schema_version";
+
+    private interface Step {
+        void apply(Connection conn, String type) throws SQLException;
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "Create account tables", SchemaMigrator::createTables),
+        new Migration(2, "Store uuids as 16-byte binary keys", SchemaMigrator::binaryKeys),
+        new Migration(3, "Index last_changed and enabled_at", SchemaMigrator::timestampIndexes)
+    );
+
+    static final int CURRENT_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+
+    /**
+     * Columns after the uuid key, per table, as created by the current schema
+     */
+    private static String columnDefinitions(MigrationJob.Table table) {
+        switch (table) {
+            case PASSWORDS:
+                return "password_hash TEXT NOT NULL, created_at BIGINT NOT NULL, last_changed BIGINT NOT NULL";
+            case TWO_FACTOR:
+                return "secret_key TEXT NOT NULL, backup_codes TEXT, enabled_at BIGINT NOT NULL";
+            default:
+                return "security_question TEXT, security_answer TEXT";
+        }
+    }
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Bring the database up to {@link #CURRENT_VERSION}
+     *
+     * @return descriptions of the migrations applied, empty if it was already current
+     */
+    static List<String> migrate(Connection conn, String type) throws SQLException {
+        boolean mysql = !"sqlite".equals(type);
+        if (mysql) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK('secureauth_schema', 60)");
+                 ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another server to upgrade the schema");
+                }
+            }
+        }
+        try {
+            execute(conn, "CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " (" +
+                "version INT PRIMARY KEY, " +
+                "description VARCHAR(255) NOT NULL, " +
+                "applied_at BIGINT NOT NULL" +
+                ")" + (mysql ? " ENGINE=InnoDB DEFAULT CHARSET=utf8mb4" : ""));
+
+            int current = currentVersion(conn);
+            if (current > CURRENT_VERSION) {
+                throw new SQLException("Database schema version " + current +
+                    " is newer than this plugin supports (" + CURRENT_VERSION + ")");
+            }
+
+            List<String> applied = new ArrayList<>();
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                boolean autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false); // SQLite DDL is transactional; MySQL commits each DDL itself
+                try {
+                    migration.step.apply(conn, type);
+                    try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + VERSION_TABLE +
+                            " (version, description, applied_at) VALUES (?, ?, ?)")) {
+                        stmt.setInt(1, migration.version);
+                        stmt.setString(2, migration.description);
+                        stmt.setLong(3, System.currentTimeMillis());
+                        stmt.executeUpdate();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Schema migration " + migration.version + " (" +
+                        migration.description + ") failed: " + e.getMessage(), e);
+                } finally {
+                    conn.setAutoCommit(autoCommit);
+                }
+                applied.add(migration.version + ": " + migration.description);
+            }
+            return applied;
+        } finally {
+            if (mysql) {
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK('secureauth_schema')")) {
+                    stmt.execute();
+                }
+            }
+        }
+    }
+
+    static int currentVersion(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MAX(version) FROM " + VERSION_TABLE);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Version 1: the original tables with uuid strings as keys
+     */
+    private static void createTables(Connection conn, String type) throws SQLException {
+        String options = "sqlite".equals(type) ? "" : " ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+        for (MigrationJob.Table table : MigrationJob.Table.values()) {
+            execute(conn, "CREATE TABLE IF NOT EXISTS " + table.getTableName() + " (" +
+                "uuid VARCHAR(36) PRIMARY KEY, " + columnDefinitions(table) + ")" + options);
+        }
+    }
+
+    /**
+     * Version 2: rebuild each table with a BINARY(16) key (a WITHOUT ROWID table with a
+     * BLOB key on SQLite, so the primary key is the only b-tree), converting uuids in SQL
+     */
+    private static void binaryKeys(Connection conn, String type) throws SQLException {
+        boolean sqlite = "sqlite".equals(type);
+        for (MigrationJob.Table table : MigrationJob.Table.values()) {
+            String name = table.getTableName();
+            String keyType = columnType(conn, name, "uuid");
+            execute(conn, "DROP TABLE IF EXISTS " + name + "_v2");
+            if (keyType != null && !keyType.toUpperCase().contains("CHAR")) {
+                execute(conn, "DROP TABLE IF EXISTS " + name + "_old"); // Converted before a crash
+                continue;
+            }
+
+            execute(conn, "CREATE TABLE " + name + "_v2 (" +
+                (sqlite ? "uuid BLOB PRIMARY KEY, " : "uuid BINARY(16) PRIMARY KEY, ") +
+                columnDefinitions(table) + ")" +
+                (sqlite ? " WITHOUT ROWID" : " ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"));
+            if (keyType == null) {
+                execute(conn, "ALTER TABLE " + name + "_v2 RENAME TO " + name);
+                continue;
+            }
+
+            String[] columns = table.getColumns();
+            String rest = String.join(", ", Arrays.copyOfRange(columns, 1, columns.length));
+            // UNHEX is in MySQL and SQLite 3.41+; malformed keys could never be looked up and are dropped
+            execute(conn, "INSERT INTO " + name + "_v2 (" + String.join(", ", columns) + ") " +
+                "SELECT UNHEX(REPLACE(uuid, '-', '')), " + rest + " FROM " + name + " WHERE LENGTH(uuid) = 36");
+            if (sqlite) {
+                execute(conn, "ALTER TABLE " + name + " RENAME TO " + name + "_old");
+                execute(conn, "ALTER TABLE " + name + "_v2 RENAME TO " + name);
+            } else {
+                // One atomic swap, so a crash never leaves the table missing
+                execute(conn, "RENAME TABLE " + name + " TO " + name + "_old, " + name + "_v2 TO " + name);
+            }
+            execute(conn, "DROP TABLE " + name + "_old");
+        }
+    }
+
+    /**
+     * Version 3: indexes for queries by password age and 2FA enrolment time
+     */
+    private static void timestampIndexes(Connection conn, String type) throws SQLException {
+        createIndex(conn, "idx_secureauth_passwords_last_changed", "secureauth_passwords", "last_changed");
+        createIndex(conn, "idx_secureauth_2fa_enabled_at", "secureauth_2fa", "enabled_at");
+    }
+
+    private static void createIndex(Connection conn, String index, String table, String column) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        execute(conn, "CREATE INDEX " + index + " ON " + table + " (" + column + ")");
+    }
+
+    /**
+     * Declared type of a column, or null if the table does not exist
+     */
+    private static String columnType(Connection conn, String table, String column) throws SQLException {
+        // The catalog limits MySQL to the current database
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            return rs.next() ? rs.getString("TYPE_NAME") : null;
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
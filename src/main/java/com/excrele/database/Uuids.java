@@ -0,0 +1,43 @@
+package com.excrele.database;
+
+import java.util.UUID;
+
+/**
+ * Conversion between UUIDs and the 16-byte binary keys stored in the account tables.
+ * Byte order is the canonical big-endian order, so keys sort like the uuid strings.
+ */
+final class Uuids {
+    private Uuids() {
+    }
+
+    static byte[] toBytes(UUID uuid) {
+        byte[] bytes = new byte[16];
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (most >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (least >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    static UUID fromBytes(byte[] bytes) {
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("Not a binary uuid: " + bytes.length + " bytes");
+        }
+        long most = 0;
+        long least = 0;
+        for (int i = 0; i < 8; i++) {
+            most = (most << 8) | (bytes[i] & 0xff);
+            least = (least << 8) | (bytes[8 + i] & 0xff);
+        }
+        return new UUID(most, least);
+    }
+
+    /**
+     * Key from a stored or exported value: binary, or a uuid string from an older schema
+     */
+    static byte[] toKey(Object value) {
+        return value instanceof byte[] ? (byte[]) value : toBytes(UUID.fromString(value.toString()));
+    }
+}
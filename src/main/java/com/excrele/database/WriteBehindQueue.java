@@ -0,0 +1,289 @@
+package com.excrele.database;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Write-behind queue that group-commits account mutations.
+ *
+ * Mutations are coalesced per account and flushed as JDBC batches in one transaction
+ * every flush interval, or sooner once batch-size accounts are waiting. Until a
+ * mutation is committed, {@link #overlay} applies it to every snapshot read so callers
+ * always see their own writes.
+ */
+class WriteBehindQueue {
+    static final int MAX_ATTEMPTS = 5; // Failed flushes before an account's queued writes are dropped
+
+    private final DatabaseManager databaseManager;
+    private final JavaPlugin plugin;
+    private final int batchSize;
+    private final Map<UUID, List<AccountMutation>> pending = new LinkedHashMap<>(); // Guarded by this
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private long removals; // Guarded by this; bumped whenever mutations leave the queue
+    private final Map<UUID, Integer> failures = new HashMap<>(); // Failed flushes by account; flush thread only
+    private boolean closed;
+
+    WriteBehindQueue(DatabaseManager databaseManager, JavaPlugin plugin, long flushIntervalMs, int batchSize) {
+        this.databaseManager = databaseManager;
+        this.plugin = plugin;
+        this.batchSize = Math.max(1, batchSize);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SecureAuth-DB-Flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, flushIntervalMs);
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue a mutation, replacing any queued one it makes redundant
+     *
+     * @return false if the queue is closed and the caller must write directly
+     */
+    boolean submit(AccountMutation mutation) {
+        int waiting;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            List<AccountMutation> mutations = pending.computeIfAbsent(mutation.getPlayerId(), id -> new ArrayList<>());
+            mutations.removeIf(mutation::supersedes);
+            mutations.add(mutation);
+            waiting = pending.size();
+        }
+        if (waiting >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException ignored) {
+                // Shutting down; close() flushes whatever is left
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply this account's queued mutations to a snapshot of its stored state. With no
+     * stored snapshot they apply to an empty account, so a queued registration is seen
+     * before it is committed.
+     */
+    AccountSnapshot overlay(UUID playerId, AccountSnapshot stored) {
+        List<AccountMutation> mutations;
+        synchronized (this) {
+            List<AccountMutation> queued = pending.get(playerId);
+            if (queued == null) {
+                return stored;
+            }
+            mutations = new ArrayList<>(queued);
+        }
+        AccountSnapshot snapshot = stored != null ? stored : AccountSnapshot.empty(playerId);
+        for (AccountMutation mutation : mutations) {
+            snapshot = mutation.applyTo(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Counter bumped each time mutations leave the queue. A snapshot read before it
+     * changed may predate those mutations and must be read again before overlaying.
+     */
+    synchronized long getRemovalCount() {
+        return removals;
+    }
+
+    synchronized int size() {
+        int size = 0;
+        for (List<AccountMutation> mutations : pending.values()) {
+            size += mutations.size();
+        }
+        return size;
+    }
+
+    /**
+     * Commit everything queued so far. Only runs on the flush thread, or from close()
+     * once that thread has stopped.
+     *
+     * If the batch fails, each account is retried in its own transaction so one bad row
+     * cannot hold back every other account. An account that keeps failing while the
+     * database accepts other writes has its queued mutations dropped after
+     * MAX_ATTEMPTS flushes.
+     */
+    private void flush() {
+        flushRequested.set(false);
+        Map<UUID, List<AccountMutation>> accounts = new LinkedHashMap<>();
+        synchronized (this) {
+            pending.forEach((playerId, mutations) -> accounts.put(playerId, new ArrayList<>(mutations)));
+        }
+        if (accounts.isEmpty()) {
+            return;
+        }
+
+        if (accounts.size() > 1) {
+            List<AccountMutation> batch = new ArrayList<>();
+            accounts.values().forEach(batch::addAll);
+            try {
+                commit(batch);
+                removeCommitted(batch);
+                failures.keySet().removeAll(accounts.keySet());
+                return;
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to flush " + batch.size() +
+                    " account writes; retrying them account by account", e);
+            }
+        }
+
+        Map<UUID, SQLException> failed = new LinkedHashMap<>();
+        for (Map.Entry<UUID, List<AccountMutation>> account : accounts.entrySet()) {
+            try {
+                commit(account.getValue());
+                removeCommitted(account.getValue());
+                failures.remove(account.getKey());
+            } catch (SQLException e) {
+                failed.put(account.getKey(), e);
+            }
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+
+        // If nothing could be written, the database is more likely at fault than the rows
+        if (failed.size() == accounts.size() && !databaseAvailable()) {
+            // Left queued; the next flush retries them
+            plugin.getLogger().log(Level.SEVERE, "Failed to flush writes for " + failed.size() +
+                " accounts; the database is unavailable", failed.values().iterator().next());
+            return;
+        }
+        for (Map.Entry<UUID, SQLException> account : failed.entrySet()) {
+            UUID playerId = account.getKey();
+            int attempts = failures.merge(playerId, 1, Integer::sum);
+            if (attempts < MAX_ATTEMPTS) {
+                plugin.getLogger().log(Level.WARNING, "Failed to store the queued writes for " + playerId +
+                    " (attempt " + attempts + " of " + MAX_ATTEMPTS + ")", account.getValue());
+            } else {
+                failures.remove(playerId);
+                drop(playerId, accounts.get(playerId), account.getValue());
+            }
+        }
+    }
+
+    /**
+     * Write mutations and log them in one transaction
+     */
+    private void commit(List<AccountMutation> mutations) throws SQLException {
+        databaseManager.executeLoggedWrite(mutations, conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                databaseManager.applyMutations(conn, mutations);
+                conn.commit();
+                databaseManager.logChanges(mutations);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Whether the database still accepts a trivial write transaction
+     */
+    private boolean databaseAvailable() {
+        try {
+            return databaseManager.executeWrite(conn -> conn.isValid(1));
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stop retrying an account's mutations that the database keeps rejecting
+     */
+    private void drop(UUID playerId, List<AccountMutation> mutations, SQLException error) {
+        Set<String> kinds = new LinkedHashSet<>();
+        for (AccountMutation mutation : mutations) {
+            kinds.add(mutation.getKind().getDescription());
+        }
+        removeCommitted(mutations);
+        plugin.getLogger().log(Level.SEVERE, "Dropped the queued " + String.join(", ", kinds) + " for " + playerId +
+            " after " + MAX_ATTEMPTS + " failed attempts; the account keeps its previously stored data", error);
+    }
+
+    /**
+     * Stop overlaying mutations that have left the queue. Their accounts' cached
+     * snapshots are dropped in the same step, so a snapshot cached before the commit is
+     * never read without them.
+     */
+    private void removeCommitted(List<AccountMutation> mutations) {
+        synchronized (this) {
+            Set<UUID> removed = new LinkedHashSet<>();
+            for (AccountMutation mutation : mutations) {
+                List<AccountMutation> queued = pending.get(mutation.getPlayerId());
+                // Identity removal: a newer mutation that replaced this one stays queued
+                if (queued != null && queued.remove(mutation) && queued.isEmpty()) {
+                    pending.remove(mutation.getPlayerId());
+                }
+                removed.add(mutation.getPlayerId());
+            }
+            removed.forEach(databaseManager::invalidateSnapshot);
+            removals++;
+        }
+    }
+
+    /**
+     * Commit everything queued so far and wait for it
+     */
+    void drain() {
+        try {
+            flusher.submit(this::flush).get();
+        } catch (RejectedExecutionException e) {
+            // Closed; close() flushed what was queued
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to flush queued account writes", e.getCause());
+        }
+    }
+
+    /**
+     * Stop accepting mutations and commit everything still queued
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for the account write flush to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        int lost = size();
+        if (lost > 0) {
+            plugin.getLogger().severe("Could not store " + lost + " queued account writes on shutdown");
+        }
+    }
+}
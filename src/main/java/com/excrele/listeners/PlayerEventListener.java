@@ -31,22 +31,14 @@ public class PlayerEventListener implements Listener {
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        authManager.loadAccount(player.getUniqueId());
         
         // Premium check and handle
         if (config.isPremiumAutoLogin()) {
             authManager.checkPremiumAndHandle(player);
         } else {
             // Treat as cracked
-            Bukkit.getScheduler().runTask(plugin, () -> {
-                if (authManager.hasPassword(player.getUniqueId())) {
-                    player.sendMessage(config.getMessage("welcome-registered",
-                        "&ePlease login with /login <password>"));
-                } else {
-                    player.sendMessage(config.getMessage("welcome-cracked",
-                        "&eWelcome! Please register with /register <password> <repeat>"));
-                }
-                sessionManager.setLoggedIn(player.getUniqueId(), false);
-            });
+            Bukkit.getScheduler().runTask(plugin, () -> authManager.sendLoginPrompt(player));
         }
     }
 
@@ -2,7 +2,6 @@ package com.excrele.placeholders;
 
 import com.excrele.auth.AuthManager;
 import com.excrele.auth.SessionManager;
-import com.excrele.auth.TwoFactorAuthManager;
 import com.excrele.statistics.StatisticsManager;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
@@ -15,15 +14,12 @@ import java.util.UUID;
 public class SecureAuthPlaceholders extends PlaceholderExpansion {
     private final AuthManager authManager;
     private final SessionManager sessionManager;
-    private final TwoFactorAuthManager twoFactorAuthManager;
     private final StatisticsManager statisticsManager;
 
     public SecureAuthPlaceholders(AuthManager authManager, SessionManager sessionManager,
-                                 TwoFactorAuthManager twoFactorAuthManager,
                                  StatisticsManager statisticsManager) {
         this.authManager = authManager;
         this.sessionManager = sessionManager;
-        this.twoFactorAuthManager = twoFactorAuthManager;
         this.statisticsManager = statisticsManager;
     }
 
@@ -63,11 +59,19 @@ public class SecureAuthPlaceholders extends PlaceholderExpansion {
 
             case "registered":
             case "is_registered":
-                return authManager.hasPassword(playerId) ? "Yes" : "No";
+                Boolean registered = authManager.getCachedRegistration(playerId);
+                if (registered == null) {
+                    return "Loading";
+                }
+                return registered ? "Yes" : "No";
 
             case "2fa_enabled":
             case "has_2fa":
-                return (twoFactorAuthManager.isEnabled() && twoFactorAuthManager.has2FAEnabled(playerId)) ? "Yes" : "No";
+                Boolean has2FA = authManager.getCachedTwoFactor(playerId);
+                if (has2FA == null) {
+                    return "Loading";
+                }
+                return has2FA ? "Yes" : "No";
 
             case "last_login":
                 long lastLogin = statisticsManager.getLastLoginTime(playerId);
@@ -0,0 +1,437 @@
+package com.excrele.premium;
+
+import com.excrele.cache.CacheManager;
+import com.excrele.cache.PremiumStatus;
+import com.excrele.config.ConfigManager;
+import com.destroystokyo.paper.profile.ProfileProperty;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a joining player is premium, trying the steps of
+ * premium.resolution-order in turn until one gives an answer.
+ *
+ * When the login was authenticated by this server (online mode) or by a proxy that
+ * forwards player data, the uuid and profile steps answer without any I/O: a
+ * version 4 uuid or Mojang-signed textures mean premium, and the offline uuid derived
+ * from the name means cracked. Otherwise those steps are skipped. The cache step
+ * checks the in-memory and persistent tiers, and the api step asks the Mojang profile
+ * API whether the name belongs to a premium account.
+ *
+ * One HttpClient with its own small thread pool is shared by all lookups, so
+ * connections are reused and no request blocks a thread while waiting for the
+ * response. Concurrent lookups of the same name share one request, and at most
+ * max-concurrent-requests are in flight; the rest wait in order.
+ *
+ * With batching, names are collected for batch-window-ms (or until batch-size are
+ * waiting) and resolved with one POST to the bulk endpoint, which returns the profiles
+ * that exist. After a restart this turns hundreds of reconnect lookups into a few
+ * dozen requests and keeps them under Mojang's rate limit. Both endpoints come from
+ * the config so the service can be pointed at a local stub server.
+ */
+public class PremiumLookupService {
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z0-9_]{1,16}");
+    private static final Pattern PROFILE_NAME = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*)\"");
+
+    /**
+     * A name waiting for the next bulk request
+     */
+    private static final class PendingLookup {
+        private final String name;
+        private final CompletableFuture<Boolean> future;
+
+        PendingLookup(String name, CompletableFuture<Boolean> future) {
+            this.name = name;
+            this.future = future;
+        }
+    }
+
+    private final ConfigManager config;
+    private final CacheManager cacheManager;
+    private final JavaPlugin plugin;
+    private final String apiUrl;
+    private final String bulkApiUrl;
+    private final Duration timeout;
+    private final int maxConcurrent;
+    private final int batchSize; // 1 disables batching
+    private final long batchWindowMs;
+    private final ScheduledExecutorService executor;
+    private final HttpClient httpClient;
+    private final PremiumStatusStore statusStore; // Null unless premium.cache.persistent
+    private final List<PremiumSource> resolutionOrder = new ArrayList<>();
+    private final boolean trustLoginData;
+    private final Map<PremiumSource, LongAdder> resolved = new EnumMap<>(PremiumSource.class);
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final Queue<Runnable> waiting = new ArrayDeque<>(); // Guarded by this
+    private int active; // Guarded by this
+    private final List<PendingLookup> batch = new ArrayList<>(); // Guarded by this
+    private ScheduledFuture<?> batchTimer; // Guarded by this
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    public PremiumLookupService(ConfigManager config, CacheManager cacheManager, JavaPlugin plugin) {
+        this.config = config;
+        this.cacheManager = cacheManager;
+        this.plugin = plugin;
+        String url = config.getPremiumApiUrl();
+        this.apiUrl = url.endsWith("/") ? url : url + "/";
+        this.timeout = Duration.ofMillis(config.getApiTimeoutMs());
+        this.maxConcurrent = Math.max(1, config.getPremiumMaxConcurrentRequests());
+        this.bulkApiUrl = config.getPremiumBulkApiUrl();
+        this.batchSize = config.isPremiumBatchingEnabled() ? Math.max(1, config.getPremiumBatchSize()) : 1;
+        this.batchWindowMs = Math.max(0, config.getPremiumBatchWindowMs());
+        this.trustLoginData = Bukkit.getOnlineMode() || config.isPremiumProxyAuthenticated();
+        for (String name : config.getPremiumResolutionOrder()) {
+            PremiumSource source = PremiumSource.fromConfigName(name);
+            if (source == null) {
+                plugin.getLogger().warning("Unknown premium resolution step '" + name + "' ignored");
+            } else if (!resolutionOrder.contains(source)) {
+                resolutionOrder.add(source);
+            }
+        }
+        for (PremiumSource source : PremiumSource.values()) {
+            resolved.put(source, new LongAdder());
+        }
+
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "SecureAuth-Premium-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+            .executor(executor)
+            .connectTimeout(timeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+        if (config.isPremiumCachePersistent()) {
+            statusStore = new PremiumStatusStore(new File(plugin.getDataFolder(), "premium-cache.txt"),
+                TimeUnit.DAYS.toMillis(config.getPremiumCacheTtlDays()),
+                TimeUnit.HOURS.toMillis(config.getCrackedCacheTtlHours()), plugin);
+            statusStore.load();
+            executor.scheduleWithFixedDelay(statusStore::save, 5, 5, TimeUnit.MINUTES);
+        } else {
+            statusStore = null;
+        }
+    }
+
+    /**
+     * Whether the player is premium, from the first step of the resolution chain that
+     * can tell. API failures resolve to the fail-safe answer rather than failing the
+     * future; if no step can tell, the player is treated as cracked.
+     */
+    public CompletableFuture<Boolean> isPremium(Player player) {
+        String name = player.getName().toLowerCase();
+        for (PremiumSource source : resolutionOrder) {
+            Boolean premium;
+            switch (source) {
+                case UUID:
+                    premium = trustLoginData ? fromUuid(player) : null;
+                    break;
+                case PROFILE:
+                    premium = trustLoginData ? fromProfile(player) : null;
+                    break;
+                case CACHE:
+                    premium = fromCache(name);
+                    break;
+                default:
+                    return lookup(name); // Counted when the lookup finishes
+            }
+            if (premium != null) {
+                resolved.get(source).increment();
+                return CompletableFuture.completedFuture(premium);
+            }
+        }
+        resolved.get(PremiumSource.UNRESOLVED).increment();
+        return CompletableFuture.completedFuture(false);
+    }
+
+    /**
+     * Version 4 uuids are only issued by Mojang; version 3 ones matching the name are
+     * the server's offline uuids. Anything else (e.g. Bedrock players) is left open.
+     */
+    private static Boolean fromUuid(Player player) {
+        UUID playerId = player.getUniqueId();
+        if (playerId.version() == 4) {
+            return true;
+        }
+        UUID offline = UUID.nameUUIDFromBytes(("OfflinePlayer:" + player.getName()).getBytes(StandardCharsets.UTF_8));
+        return playerId.equals(offline) ? false : null;
+    }
+
+    /**
+     * Signed textures can only come from a Mojang session; without them nothing is known
+     */
+    private static Boolean fromProfile(Player player) {
+        for (ProfileProperty property : player.getPlayerProfile().getProperties()) {
+            if ("textures".equals(property.getName()) && property.getSignature() != null) {
+                return true;
+            }
+        }
+        return null;
+    }
+
+    private Boolean fromCache(String name) {
+        Boolean cached = cacheManager.getPremiumStatus(name);
+        if (cached != null) {
+            return cached;
+        }
+        PremiumStatus stored = statusStore == null ? null : statusStore.get(name);
+        if (stored != null) {
+            cacheManager.setPremiumStatus(name, stored.isPremium());
+            return stored.isPremium();
+        }
+        return null;
+    }
+
+    /**
+     * Ask the API about a name, sharing a lookup already in flight for it
+     */
+    private CompletableFuture<Boolean> lookup(String name) {
+        CompletableFuture<Boolean> lookup = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(name, lookup);
+        if (existing != null) {
+            return existing;
+        }
+        lookup.whenComplete((premium, error) -> inFlight.remove(name, lookup));
+        lookups.increment();
+        if (!VALID_NAME.matcher(name).matches()) {
+            finish(name, lookup, false, true); // No Mojang account can have this name
+        } else if (batchSize > 1) {
+            enqueue(new PendingLookup(name, lookup));
+        } else {
+            acquire(() -> request(name).whenComplete((premium, error) -> {
+                release();
+                if (error != null) {
+                    plugin.getLogger().warning("Premium check failed for " + name + ": " + error.getMessage());
+                    finish(name, lookup, !config.isFailSafeCracked(), false);
+                } else {
+                    finish(name, lookup, premium, true);
+                }
+            }));
+        }
+        return lookup;
+    }
+
+    /**
+     * @param answered whether the API answered; fail-safe guesses are only kept in memory
+     */
+    private void finish(String name, CompletableFuture<Boolean> lookup, boolean premium, boolean answered) {
+        resolved.get(answered ? PremiumSource.API : PremiumSource.FAIL_SAFE).increment();
+        cacheManager.setPremiumStatus(name, premium);
+        if (answered && statusStore != null) {
+            statusStore.put(name, premium);
+        }
+        lookup.complete(premium);
+    }
+
+    private void enqueue(PendingLookup pending) {
+        List<PendingLookup> full = null;
+        synchronized (this) {
+            batch.add(pending);
+            if (batch.size() >= batchSize) {
+                full = takeBatch();
+            } else if (batchTimer == null) {
+                try {
+                    batchTimer = executor.schedule(this::flushBatch, batchWindowMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    full = takeBatch(); // Shutting down; send what there is
+                }
+            }
+        }
+        if (full != null) {
+            sendBatch(full);
+        }
+    }
+
+    private void flushBatch() {
+        List<PendingLookup> names;
+        synchronized (this) {
+            batchTimer = null;
+            names = takeBatch();
+        }
+        if (!names.isEmpty()) {
+            sendBatch(names);
+        }
+    }
+
+    private List<PendingLookup> takeBatch() {
+        List<PendingLookup> names = new ArrayList<>(batch);
+        batch.clear();
+        if (batchTimer != null) {
+            batchTimer.cancel(false);
+            batchTimer = null;
+        }
+        return names;
+    }
+
+    private void sendBatch(List<PendingLookup> names) {
+        acquire(() -> requestBatch(names).whenComplete((premiumNames, error) -> {
+            release();
+            if (error != null) {
+                plugin.getLogger().warning("Premium check failed for " + names.size() + " players: " + error.getMessage());
+            }
+            for (PendingLookup pending : names) {
+                if (error == null) {
+                    finish(pending.name, pending.future, premiumNames.contains(pending.name), true);
+                } else {
+                    finish(pending.name, pending.future, !config.isFailSafeCracked(), false);
+                }
+            }
+        }));
+    }
+
+    /**
+     * POST the names to the bulk endpoint
+     *
+     * @return the lower-case names that have a profile
+     */
+    private CompletableFuture<Set<String>> requestBatch(List<PendingLookup> names) {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < names.size(); i++) {
+            body.append(i == 0 ? "\"" : ",\"").append(names.get(i).name).append('"'); // Validated, no escaping needed
+        }
+        body.append(']');
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(bulkApiUrl))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+            requests.increment();
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("HTTP " + response.statusCode());
+                    }
+                    Set<String> found = new HashSet<>();
+                    Matcher matcher = PROFILE_NAME.matcher(response.body());
+                    while (matcher.find()) {
+                        found.add(matcher.group(1).toLowerCase());
+                    }
+                    return found;
+                });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Boolean> request(String name) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(apiUrl + name))
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+            requests.increment();
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> response.statusCode() == 200);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e); // Name not valid in a URL, or the client is shut down
+        }
+    }
+
+    /**
+     * Start the task now if fewer than the limit are running, otherwise when one finishes
+     */
+    private void acquire(Runnable task) {
+        synchronized (this) {
+            if (active >= maxConcurrent) {
+                waiting.add(task);
+                return;
+            }
+            active++;
+        }
+        task.run();
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                active--;
+                return;
+            }
+        }
+        try {
+            executor.execute(next); // Keeps the permit; not run inline to avoid deep completion chains
+        } catch (RejectedExecutionException e) {
+            next.run(); // Shutting down; the request fails fast and resolves to the fail-safe answer
+        }
+    }
+
+    /**
+     * Lookups waiting for a free request slot
+     */
+    public synchronized int getQueuedLookups() {
+        return waiting.size();
+    }
+
+    /**
+     * Players (or, for the api and fail-safe sources, names) resolved by a source
+     */
+    public long getResolvedCount(PremiumSource source) {
+        return resolved.get(source).sum();
+    }
+
+    /**
+     * Names looked up on the API (cache misses)
+     */
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    /**
+     * HTTP requests sent for those lookups
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        if (statusStore != null) {
+            statusStore.save();
+        }
+        try {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                plugin.getLogger().log(Level.WARNING, "Premium lookups did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.excrele.premium;
+
+/**
+ * Where a premium answer came from. The first four are the steps of the resolution
+ * chain, configured by name in premium.resolution-order.
+ */
+public enum PremiumSource {
+    /** Mojang-issued (version 4) or offline (version 3) player uuid */
+    UUID("uuid"),
+    /** Mojang-signed textures forwarded with the player's profile */
+    PROFILE("profile"),
+    /** In-memory or persistent premium cache */
+    CACHE("cache"),
+    /** Mojang profile API */
+    API("api"),
+    /** The API failed and premium.fail-safe-cracked decided */
+    FAIL_SAFE("fail-safe"),
+    /** No step in the chain could tell; treated as cracked */
+    UNRESOLVED("unresolved");
+
+    private final String configName;
+
+    PremiumSource(String configName) {
+        this.configName = configName;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * The chain step with this config name, or null
+     */
+    static PremiumSource fromConfigName(String name) {
+        for (PremiumSource source : values()) {
+            if (source.ordinal() <= API.ordinal() && source.configName.equalsIgnoreCase(name.trim())) {
+                return source;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.excrele.premium;
+
+import com.excrele.cache.PremiumStatus;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Second tier of the premium cache, kept in premium-cache.txt so lookups survive
+ * restarts.
+ *
+ * Entries live much longer than in the in-memory tier: premium names rarely stop being
+ * premium, while a cracked name can be bought at any time, so the two have separate
+ * lifetimes. Only real API answers are stored, never the fail-safe answer given when
+ * the API is down. The file is rewritten in the background when something changed and
+ * once more on shutdown; expired entries are dropped then.
+ */
+class PremiumStatusStore {
+    private static final String HEADER = "# SecureAuth premium cache v1";
+
+    private final File file;
+    private final JavaPlugin plugin;
+    private final long premiumTtlMs;
+    private final long crackedTtlMs;
+    private final Map<String, PremiumStatus> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    PremiumStatusStore(File file, long premiumTtlMs, long crackedTtlMs, JavaPlugin plugin) {
+        this.file = file;
+        this.plugin = plugin;
+        this.premiumTtlMs = premiumTtlMs;
+        this.crackedTtlMs = crackedTtlMs;
+    }
+
+    void load() {
+        if (!file.exists()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (line.startsWith("#") || fields.length != 3) {
+                    continue;
+                }
+                try {
+                    PremiumStatus status = new PremiumStatus("1".equals(fields[1]), Long.parseLong(fields[2]));
+                    if (!isExpired(status, now)) {
+                        entries.put(fields[0], status);
+                    }
+                } catch (NumberFormatException e) {
+                    // Skip a damaged line; the name is looked up again
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to read " + file.getName() + "; premium names will be looked up again", e);
+        }
+    }
+
+    /**
+     * The stored status, or null if there is none or it expired
+     */
+    PremiumStatus get(String name) {
+        PremiumStatus status = entries.get(name);
+        return status == null || isExpired(status, System.currentTimeMillis()) ? null : status;
+    }
+
+    void put(String name, boolean premium) {
+        entries.put(name, new PremiumStatus(premium, System.currentTimeMillis()));
+        dirty = true;
+    }
+
+    private boolean isExpired(PremiumStatus status, long now) {
+        return status.isOlderThan(status.isPremium() ? premiumTtlMs : crackedTtlMs, now);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Rewrite the file if anything changed since the last save
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(status -> isExpired(status, now));
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Map.Entry<String, PremiumStatus> entry : entries.entrySet()) {
+                    PremiumStatus status = entry.getValue();
+                    writer.write(entry.getKey() + "\t" + (status.isPremium() ? "1" : "0") + "\t" + status.getCheckedAt());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true; // Try again next time
+            plugin.getLogger().log(Level.WARNING, "Failed to save " + file.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.excrele;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the plugin's classes without a server.
+ *
+ * A mocked Bukkit server is installed once per JVM. Its scheduler runs sync tasks on a
+ * single "Server thread", which is the only thread {@link Bukkit#isPrimaryThread()}
+ * reports as primary, and async tasks on a daemon pool. Repeating and delayed tasks are
+ * accepted but never run, so tests drive flushes and cleanups themselves.
+ */
+public final class TestServer {
+    private static final ExecutorService MAIN = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Server thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger ASYNC_ID = new AtomicInteger();
+    private static final ExecutorService ASYNC = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Scheduler-Async-" + ASYNC_ID.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Thread MAIN_THREAD;
+    private static final Server SERVER;
+
+    static {
+        try {
+            MAIN_THREAD = MAIN.submit(Thread::currentThread).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+
+        BukkitScheduler scheduler = mock(BukkitScheduler.class);
+        when(scheduler.runTask(any(Plugin.class), any(Runnable.class))).thenAnswer(call -> {
+            MAIN.execute(call.getArgument(1));
+            return mock(BukkitTask.class);
+        });
+        when(scheduler.runTaskAsynchronously(any(Plugin.class), any(Runnable.class))).thenAnswer(call -> {
+            ASYNC.execute(call.getArgument(1));
+            return mock(BukkitTask.class);
+        });
+        when(scheduler.runTaskLater(any(Plugin.class), any(Runnable.class), anyLong()))
+            .thenAnswer(call -> mock(BukkitTask.class));
+        when(scheduler.runTaskLaterAsynchronously(any(Plugin.class), any(Runnable.class), anyLong()))
+            .thenAnswer(call -> mock(BukkitTask.class));
+        when(scheduler.runTaskTimer(any(Plugin.class), any(Runnable.class), anyLong(), anyLong()))
+            .thenAnswer(call -> mock(BukkitTask.class));
+        when(scheduler.runTaskTimerAsynchronously(any(Plugin.class), any(Runnable.class), anyLong(), anyLong()))
+            .thenAnswer(call -> mock(BukkitTask.class));
+
+        SERVER = mock(Server.class);
+        when(SERVER.getScheduler()).thenReturn(scheduler);
+        when(SERVER.isPrimaryThread()).thenAnswer(call -> Thread.currentThread() == MAIN_THREAD);
+        when(SERVER.getLogger()).thenReturn(Logger.getLogger("Server"));
+        install(SERVER);
+    }
+
+    private TestServer() {
+    }
+
+    /**
+     * Set the Bukkit singleton directly: Bukkit.setServer also prints build information
+     * that a mocked server cannot provide
+     */
+    private static void install(Server server) {
+        try {
+            Field field = Bukkit.class.getDeclaredField("server");
+            field.setAccessible(true);
+            if (field.get(null) == null) {
+                field.set(null, server);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot install the test server", e);
+        }
+    }
+
+    /**
+     * A plugin whose data folder is the given directory, with a config.yml holding the
+     * given settings as path/value pairs ("database.type", "sqlite", ...). Settings not
+     * listed fall back to the ConfigManager defaults.
+     */
+    public static JavaPlugin plugin(Path dataFolder, Object... settings) {
+        if (settings.length % 2 != 0) {
+            throw new IllegalArgumentException("Settings must be path/value pairs");
+        }
+        File folder = dataFolder.toFile();
+        YamlConfiguration config = new YamlConfiguration();
+        for (int i = 0; i < settings.length; i += 2) {
+            config.set((String) settings[i], settings[i + 1]);
+        }
+        try {
+            config.save(new File(folder, "config.yml"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        JavaPlugin plugin = mock(JavaPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(folder);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("SecureAuth"));
+        when(plugin.getServer()).thenReturn(SERVER);
+        when(plugin.getName()).thenReturn("SecureAuth");
+        when(plugin.isEnabled()).thenReturn(true);
+        return plugin;
+    }
+
+    /**
+     * Run a task on the server thread and wait for its result
+     */
+    public static <T> T onMainThread(Callable<T> task) throws Exception {
+        try {
+            return MAIN.submit(task).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until every task queued on the server thread so far has run
+     */
+    public static void drainMainThread() throws Exception {
+        onMainThread(() -> null);
+    }
+}
@@ -0,0 +1,59 @@
+package com.excrele.auth;
+
+import de.mkammerer.argon2.Argon2;
+import de.mkammerer.argon2.Argon2Factory;
+import de.mkammerer.argon2.Argon2Factory.Argon2Types;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per Argon2i hash of the bundled Java implementation against libargon2 through
+ * argon2-jvm (security.argon2.backend "java" and "native"), at the default
+ * security.argon2 settings: 64 MiB, 3 iterations, 4 lanes.
+ *
+ * Run with: mvn -P benchmark test -Dbenchmark=Argon2BackendBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class Argon2BackendBenchmark {
+    private static final int MEMORY_KIB = 65536;
+    private static final int ITERATIONS = 3;
+    private static final int PARALLELISM = 4;
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"java", "native"})
+    public String backend;
+
+    private Argon2 argon2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("native".equals(backend)) {
+            argon2 = Argon2Factory.create(Argon2Types.ARGON2i);
+        }
+    }
+
+    @Benchmark
+    public String hash() {
+        if (argon2 != null) {
+            return argon2.hash(ITERATIONS, MEMORY_KIB, PARALLELISM, PASSWORD.toCharArray());
+        }
+        return JavaArgon2.hash(Argon2Types.ARGON2i, ITERATIONS, MEMORY_KIB, PARALLELISM, PASSWORD);
+    }
+}
@@ -0,0 +1,122 @@
+package com.excrele.auth;
+
+import com.excrele.TestServer;
+import com.excrele.cache.CacheManager;
+import com.excrele.config.ConfigManager;
+import com.excrele.database.AccountDao;
+import com.excrele.database.DatabaseManager;
+import com.excrele.premium.PremiumLookupService;
+import com.excrele.security.IPFilterManager;
+import com.excrele.statistics.StatisticsManager;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Register, login and password changes must never touch the database on the server
+ * thread: storage runs on the database pool, hashing on the hashing pool, and only the
+ * replies come back to the server thread.
+ */
+class AuthFlowThreadingTest {
+    @TempDir
+    Path dataFolder;
+
+    private DatabaseManager databaseManager;
+    private AccountDao accountDao;
+    private PasswordManager passwordManager;
+    private SessionManager sessionManager;
+    private AuthManager authManager;
+    private final List<String> sessionThreads = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        JavaPlugin plugin = TestServer.plugin(dataFolder,
+            "database.type", "sqlite",
+            "security.hash-algorithm", "bcrypt",
+            "security.bcrypt.cost-factor", 4,
+            "security.two-factor-auth.enabled", true);
+        ConfigManager config = new ConfigManager(plugin);
+        databaseManager = new DatabaseManager(config, new CacheManager(config, plugin), plugin);
+        accountDao = new AccountDao(config, databaseManager, plugin);
+        passwordManager = new PasswordManager(config, plugin);
+
+        sessionManager = mock(SessionManager.class);
+        when(sessionManager.isLoggedIn(any(UUID.class))).thenReturn(true);
+        doAnswer(call -> sessionThreads.add(Thread.currentThread().getName()))
+            .when(sessionManager).setLoggedIn(any(UUID.class), anyBoolean());
+        doAnswer(call -> sessionThreads.add(Thread.currentThread().getName()))
+            .when(sessionManager).setLoggedIn(any(UUID.class), anyBoolean(), anyString());
+
+        authManager = new AuthManager(config, passwordManager, databaseManager, accountDao, sessionManager,
+            mock(RateLimitManager.class), mock(IPFilterManager.class),
+            new TwoFactorAuthManager(config, databaseManager, plugin), mock(PasswordRecoveryManager.class),
+            mock(StatisticsManager.class), mock(PremiumLookupService.class), plugin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordManager.shutdown();
+        accountDao.shutdown();
+        databaseManager.close();
+    }
+
+    @Test
+    void authFlowsKeepJdbcOffTheServerThread() throws Exception {
+        Player player = player(UUID.randomUUID(), "Alex");
+
+        assertTrue(TestServer.onMainThread(() -> authManager.register(player, "hunter22", "hunter22"))
+            .get(10, TimeUnit.SECONDS));
+        assertFalse(TestServer.onMainThread(() -> authManager.login(player, "wrong-password"))
+            .get(10, TimeUnit.SECONDS));
+        assertTrue(TestServer.onMainThread(() -> authManager.login(player, "hunter22"))
+            .get(10, TimeUnit.SECONDS));
+        assertTrue(TestServer.onMainThread(() -> authManager.changePassword(player, "hunter22", "hunter33", "hunter33"))
+            .get(10, TimeUnit.SECONDS));
+        assertTrue(TestServer.onMainThread(() -> authManager.login(player, "hunter33"))
+            .get(10, TimeUnit.SECONDS));
+
+        assertEquals(0, databaseManager.getPrimaryThreadConnections());
+        assertEquals(List.of("Server thread", "Server thread", "Server thread"), sessionThreads);
+    }
+
+    @Test
+    void connectionsOnTheServerThreadAreCounted() throws Exception {
+        TestServer.onMainThread(() -> {
+            try (Connection connection = databaseManager.getConnection()) {
+                return connection.isValid(1);
+            }
+        });
+
+        assertEquals(1, databaseManager.getPrimaryThreadConnections());
+    }
+
+    private static Player player(UUID id, String name) {
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(id);
+        when(player.getName()).thenReturn(name);
+        when(player.isOnline()).thenReturn(true);
+        when(player.getAddress()).thenReturn(new InetSocketAddress("127.0.0.1", 25565));
+        return player;
+    }
+}
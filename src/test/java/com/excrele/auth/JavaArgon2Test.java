@@ -0,0 +1,101 @@
+package com.excrele.auth;
+
+import de.mkammerer.argon2.Argon2;
+import de.mkammerer.argon2.Argon2Factory;
+import de.mkammerer.argon2.Argon2Factory.Argon2Types;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Known answers from the reference implementation (src/test/resources/argon2/vectors.tsv)
+ * plus cross-checks against the native library the JNA backend uses.
+ */
+class JavaArgon2Test {
+
+    static Stream<Arguments> vectors() throws IOException {
+        InputStream in = JavaArgon2Test.class.getResourceAsStream("/argon2/vectors.tsv");
+        assertNotNull(in, "argon2/vectors.tsv is missing");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            List<Arguments> vectors = reader.lines()
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(line -> line.split("\t", -1))
+                .map(fields -> Arguments.of(Argon2Types.valueOf(fields[0]), Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+                    fields[5], fields[6], fields[7], fields[8]))
+                .toList();
+            return vectors.stream();
+        }
+    }
+
+    @ParameterizedTest(name = "{0} v={1} t={2} m={3} p={4}")
+    @MethodSource("vectors")
+    void matchesTheReferenceImplementation(Argon2Types type, int version, int iterations, int memoryKib,
+                                           int parallelism, String password, String salt, String tag, String encoded) {
+        byte[] expected = HexFormat.of().parseHex(tag);
+
+        byte[] actual = JavaArgon2.compute(type, version, iterations, memoryKib, parallelism,
+            password.getBytes(StandardCharsets.UTF_8), HexFormat.of().parseHex(salt), expected.length);
+
+        assertEquals(tag, HexFormat.of().formatHex(actual));
+        assertTrue(JavaArgon2.verify(encoded, password));
+        assertFalse(JavaArgon2.verify(encoded, password + "x"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Argon2Types.class)
+    void hashesRoundTrip(Argon2Types type) {
+        String hash = JavaArgon2.hash(type, 2, 1024, 2, "hunter22");
+
+        assertTrue(hash.startsWith("$" + type.name().toLowerCase() + "$v=19$m=1024,t=2,p=2$"), hash);
+        assertTrue(JavaArgon2.verify(hash, "hunter22"));
+        assertFalse(JavaArgon2.verify(hash, "hunter23"));
+    }
+
+    @Test
+    void rejectsMalformedHashes() {
+        assertFalse(JavaArgon2.verify("$argon2id$v=19$m=1024,t=2$c29tZXNhbHQ", "password"));
+        assertFalse(JavaArgon2.verify("$argon2x$v=19$m=1024,t=2,p=1$c29tZXNhbHQ$AAAAAAAA", "password"));
+        assertFalse(JavaArgon2.verify("$argon2id$v=18$m=1024,t=2,p=1$c29tZXNhbHQ$AAAAAAAA", "password"));
+        assertFalse(JavaArgon2.verify("$argon2id$v=19$m=4,t=2,p=1$c29tZXNhbHQ$AAAAAAAA", "password"));
+        assertFalse(JavaArgon2.verify("$argon2id$v=19$m=1024,t=x,p=1$c29tZXNhbHQ$AAAAAAAA", "password"));
+        assertFalse(JavaArgon2.verify("$argon2id$v=19$m=1024,t=2,p=1$!!!$AAAAAAAA", "password"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Argon2Types.class)
+    void interoperatesWithTheNativeLibrary(Argon2Types type) {
+        Argon2 argon2;
+        try {
+            argon2 = Argon2Factory.create(type);
+        } catch (LinkageError e) {
+            argon2 = null;
+        }
+        assumeTrue(argon2 != null, "No native argon2 for this platform");
+
+        String nativeHash = argon2.hash(2, 1024, 2, "hunter22".toCharArray());
+        assertTrue(JavaArgon2.verify(nativeHash, "hunter22"));
+        assertFalse(JavaArgon2.verify(nativeHash, "hunter23"));
+
+        String javaHash = JavaArgon2.hash(type, 2, 1024, 2, "hunter22");
+        assertTrue(argon2.verify(javaHash, "hunter22".toCharArray()));
+        assertFalse(argon2.verify(javaHash, "hunter23".toCharArray()));
+    }
+}
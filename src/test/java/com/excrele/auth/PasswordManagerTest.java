@@ -0,0 +1,58 @@
+package com.excrele.auth;
+
+import com.excrele.TestServer;
+import com.excrele.config.ConfigManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordManagerTest {
+    private static final String BCRYPT_BODY = "$abcdefghijklmnopqrstuuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123";
+    private static final String ARGON2_TAIL = "$c29tZXNhbHQ$aGFzaGhhc2hoYXNo";
+
+    @TempDir
+    Path dataFolder;
+
+    private PasswordManager passwordManager;
+
+    @AfterEach
+    void tearDown() {
+        passwordManager.shutdown();
+    }
+
+    private void open(Object... settings) {
+        JavaPlugin plugin = TestServer.plugin(dataFolder, settings);
+        passwordManager = new PasswordManager(new ConfigManager(plugin), plugin);
+    }
+
+    @Test
+    void bcryptRehashesOnlyWeakerCosts() {
+        open("security.hash-algorithm", "bcrypt", "security.bcrypt.cost-factor", 10);
+
+        assertTrue(passwordManager.needsRehash("$2a$08" + BCRYPT_BODY));
+        assertFalse(passwordManager.needsRehash("$2a$10" + BCRYPT_BODY));
+        assertFalse(passwordManager.needsRehash("$2y$12" + BCRYPT_BODY)); // Not downgraded
+        assertTrue(passwordManager.needsRehash("$argon2i$v=19$m=65536,t=3,p=4" + ARGON2_TAIL));
+    }
+
+    @Test
+    void argon2RehashesOnlyWeakerParametersOrAnotherType() {
+        open("security.hash-algorithm", "argon2", "security.argon2.memory", 65536,
+            "security.argon2.iterations", 3, "security.argon2.parallelism", 4);
+
+        assertFalse(passwordManager.needsRehash("$argon2i$v=19$m=65536,t=3,p=4" + ARGON2_TAIL));
+        assertFalse(passwordManager.needsRehash("$argon2i$v=19$m=131072,t=4,p=4" + ARGON2_TAIL)); // Not downgraded
+        assertTrue(passwordManager.needsRehash("$argon2i$v=19$m=32768,t=3,p=4" + ARGON2_TAIL));
+        assertTrue(passwordManager.needsRehash("$argon2i$v=19$m=65536,t=2,p=4" + ARGON2_TAIL));
+        assertTrue(passwordManager.needsRehash("$argon2i$v=19$m=65536,t=3,p=2" + ARGON2_TAIL));
+        assertTrue(passwordManager.needsRehash("$argon2i$v=16$m=65536,t=3,p=4" + ARGON2_TAIL));
+        assertTrue(passwordManager.needsRehash("$argon2id$v=19$m=65536,t=3,p=4" + ARGON2_TAIL));
+        assertTrue(passwordManager.needsRehash("$2a$12" + BCRYPT_BODY));
+    }
+}
@@ -0,0 +1,91 @@
+package com.excrele.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    private static List<UUID> uuids(int count) {
+        List<UUID> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        return uuids;
+    }
+
+    private static double falsePositiveRate(BloomFilter filter, int trials) {
+        int falsePositives = 0;
+        for (UUID absent : uuids(trials)) {
+            if (filter.mightContain(absent)) {
+                falsePositives++;
+            }
+        }
+        return (double) falsePositives / trials;
+    }
+
+    @Test
+    void addedUuidsAreAlwaysFound() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01, 1 << 20);
+        List<UUID> added = uuids(10_000);
+        added.forEach(filter::put);
+
+        for (UUID id : added) {
+            assertTrue(filter.mightContain(id));
+        }
+    }
+
+    @Test
+    void falsePositivesStayNearTheConfiguredRate() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01, 1 << 20);
+        uuids(10_000).forEach(filter::put);
+
+        double measured = falsePositiveRate(filter, 100_000);
+        assertTrue(measured < 0.02, "false-positive rate " + measured);
+        assertEquals(measured, filter.getFalsePositiveRate(), 0.005);
+    }
+
+    @Test
+    void estimatesTheNumberOfEntries() {
+        BloomFilter filter = BloomFilter.create(20_000, 0.01, 1 << 20);
+        uuids(10_000).forEach(filter::put);
+
+        assertEquals(10_000, filter.getApproximateCount(), 500);
+    }
+
+    @Test
+    void memoryCapRaisesTheRateButKeepsEveryEntry() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.001, 4096);
+        List<UUID> added = uuids(10_000);
+        added.forEach(filter::put);
+
+        assertEquals(4096, filter.getMemoryBytes());
+        for (UUID id : added) {
+            assertTrue(filter.mightContain(id));
+        }
+        assertTrue(falsePositiveRate(filter, 10_000) > 0.001);
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() {
+        BloomFilter filter = BloomFilter.create(40_000, 0.01, 1 << 20);
+        List<List<UUID>> batches = List.of(uuids(10_000), uuids(10_000), uuids(10_000), uuids(10_000));
+
+        CompletableFuture.allOf(batches.stream()
+            .map(batch -> CompletableFuture.runAsync(() -> batch.forEach(filter::put)))
+            .toArray(CompletableFuture[]::new)).join();
+
+        for (List<UUID> batch : batches) {
+            for (UUID id : batch) {
+                assertTrue(filter.mightContain(id));
+            }
+        }
+        assertEquals(40_000, filter.getApproximateCount(), 2_000);
+    }
+}
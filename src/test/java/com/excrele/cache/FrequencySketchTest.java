@@ -0,0 +1,54 @@
+package com.excrele.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    @Test
+    void unseenKeysHaveNoFrequency() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int key = 0; key < 100; key++) {
+            assertEquals(0, sketch.frequency(key));
+        }
+    }
+
+    @Test
+    void countsUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment("hot");
+            assertEquals(Math.min(i, 15), sketch.frequency("hot"));
+        }
+    }
+
+    @Test
+    void neverUnderestimates() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int key = 0; key < 500; key++) {
+            for (int i = 0; i < key % 8; i++) {
+                sketch.increment(key);
+            }
+        }
+        for (int key = 0; key < 500; key++) {
+            assertTrue(sketch.frequency(key) >= key % 8, "frequency of " + key);
+        }
+    }
+
+    @Test
+    void halvesCountersAfterTheSamplePeriod() {
+        FrequencySketch sketch = new FrequencySketch(16); // Resets after 160 increments
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"));
+
+        for (int key = 0; key < 145; key++) {
+            sketch.increment(key);
+        }
+
+        assertTrue(sketch.frequency("hot") <= 8, "frequency after aging: " + sketch.frequency("hot"));
+    }
+}
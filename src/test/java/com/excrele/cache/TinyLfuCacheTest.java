@@ -0,0 +1,154 @@
+package com.excrele.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TinyLfuCacheTest {
+
+    private static TinyLfuCache<Integer, String> cache(int maximumSize) {
+        return new TinyLfuCache<>(maximumSize, 0, 0, Runnable::run);
+    }
+
+    @Test
+    void loadsOnceAndCountsHits() {
+        TinyLfuCache<Integer, String> cache = cache(100);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("v1", cache.get(1, key -> "v" + key + (loads.incrementAndGet() > 1 ? "!" : "")));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void nullResultsAreNotCached() {
+        TinyLfuCache<Integer, String> cache = cache(100);
+
+        assertNull(cache.get(1, key -> null));
+        assertEquals("v", cache.get(1, key -> "v"));
+    }
+
+    @Test
+    void staysWithinItsMaximumSize() {
+        TinyLfuCache<Integer, String> cache = cache(100);
+        for (int key = 0; key < 10_000; key++) {
+            cache.get(key, String::valueOf);
+            assertTrue(cache.size() <= 100);
+        }
+        assertTrue(cache.getEvictions() > 0);
+    }
+
+    @Test
+    void oneOffKeysDoNotFlushFrequentlyReadOnes() {
+        TinyLfuCache<Integer, String> cache = cache(100);
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 50; key++) {
+                cache.get(key, String::valueOf);
+            }
+        }
+
+        for (int key = 1_000; key < 11_000; key++) {
+            cache.get(key, String::valueOf);
+        }
+
+        int retained = 0;
+        for (int key = 0; key < 50; key++) {
+            if (cache.getIfPresent(key) != null) {
+                retained++;
+            }
+        }
+        assertTrue(retained >= 45, "frequently read keys retained: " + retained);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        TinyLfuCache<Integer, String> cache = cache(100);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get(1, key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "v";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> cache.get(1, key -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals("v", first.get(5, TimeUnit.SECONDS));
+        assertEquals("v", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void loadOverlappingAnInvalidationIsNotCached() {
+        TinyLfuCache<Integer, String> cache = cache(100);
+
+        String loaded = cache.get(1, key -> {
+            cache.invalidate(key); // A write commits while the old value is being read
+            return "stale";
+        });
+
+        assertEquals("stale", loaded);
+        assertNull(cache.getIfPresent(1));
+    }
+
+    @Test
+    void putIfAbsentIsRejectedAfterAnInvalidation() {
+        TinyLfuCache<Integer, String> cache = cache(100);
+        long invalidations = cache.getInvalidationCount();
+        cache.invalidate(2);
+
+        assertFalse(cache.putIfAbsent(1, "preloaded", invalidations));
+        assertTrue(cache.putIfAbsent(1, "preloaded", cache.getInvalidationCount()));
+        assertFalse(cache.putIfAbsent(1, "again", cache.getInvalidationCount()));
+        assertEquals("preloaded", cache.getIfPresent(1));
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() throws Exception {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, 1, 0, Runnable::run);
+        cache.get(1, key -> "old");
+        Thread.sleep(5);
+
+        assertNull(cache.getIfPresent(1));
+        assertEquals("new", cache.get(1, key -> "new"));
+    }
+
+    @Test
+    void oldEntriesAreServedWhileRefreshing() throws Exception {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, 0, 1, Runnable::run);
+        cache.get(1, key -> "old");
+        Thread.sleep(5);
+
+        assertEquals("old", cache.get(1, key -> "new"));
+        assertEquals(1, cache.getRefreshes());
+        assertEquals("new", cache.getIfPresent(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.excrele.database;
+
+import com.excrele.TestServer;
+import com.excrele.cache.CacheManager;
+import com.excrele.config.ConfigManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountMembershipTest {
+    @TempDir
+    Path dataFolder;
+
+    private DatabaseManager databaseManager;
+
+    @AfterEach
+    void tearDown() {
+        databaseManager.close();
+    }
+
+    private AccountMembership open() throws InterruptedException {
+        JavaPlugin plugin = TestServer.plugin(dataFolder,
+            "database.type", "sqlite",
+            "database.account-filter.enabled", true);
+        ConfigManager config = new ConfigManager(plugin);
+        databaseManager = new DatabaseManager(config, new CacheManager(config, plugin), plugin);
+        AccountMembership membership = databaseManager.getAccountMembership();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!membership.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(membership.isReady());
+        return membership;
+    }
+
+    @Test
+    void unknownAccountsAreAnsweredWithoutAQuery() throws Exception {
+        AccountMembership membership = open();
+        UUID stranger = UUID.randomUUID();
+
+        assertFalse(databaseManager.hasPassword(stranger));
+        assertEquals(1, membership.getSkippedLookups());
+    }
+
+    @Test
+    void committedWritesAreAddedImmediately() throws Exception {
+        AccountMembership membership = open();
+        UUID player = UUID.randomUUID();
+
+        databaseManager.setPassword(player, "hash");
+
+        assertTrue(membership.mightExist(player));
+        assertEquals("hash", databaseManager.getPasswordHash(player));
+    }
+
+    @Test
+    void storedAccountsAreLoadedAtStartup() throws Exception {
+        open();
+        UUID registered = UUID.randomUUID();
+        UUID twoFactorOnly = UUID.randomUUID();
+        databaseManager.setPassword(registered, "hash");
+        databaseManager.set2FASecret(twoFactorOnly, "secret");
+        databaseManager.close();
+
+        AccountMembership membership = open();
+
+        assertTrue(membership.mightExist(registered));
+        assertTrue(membership.mightExist(twoFactorOnly));
+        assertEquals("hash", databaseManager.getPasswordHash(registered));
+    }
+}
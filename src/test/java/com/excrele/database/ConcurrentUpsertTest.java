@@ -0,0 +1,128 @@
+package com.excrele.database;
+
+import com.excrele.TestServer;
+import com.excrele.cache.CacheManager;
+import com.excrele.config.ConfigManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many threads writing the same accounts at once. Every write is a single upsert, so
+ * none may fail on a duplicate key or deadlock the pool, and each account ends up with
+ * exactly one row per table.
+ */
+class ConcurrentUpsertTest {
+    private static final int THREADS = 8;
+    private static final int ACCOUNTS = 25;
+
+    @TempDir
+    Path dataFolder;
+
+    private final List<LogRecord> problems = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                problems.add(record);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private DatabaseManager databaseManager;
+
+    @AfterEach
+    void tearDown() {
+        Logger.getLogger("SecureAuth").removeHandler(handler);
+        if (databaseManager != null) {
+            databaseManager.close();
+        }
+    }
+
+    @ParameterizedTest(name = "wal={0}")
+    @ValueSource(booleans = {true, false})
+    void concurrentWritesLeaveOneRowPerAccount(boolean wal) throws Exception {
+        JavaPlugin plugin = TestServer.plugin(dataFolder,
+            "database.type", "sqlite",
+            "database.sqlite.wal", wal);
+        ConfigManager config = new ConfigManager(plugin);
+        databaseManager = new DatabaseManager(config, new CacheManager(config, plugin), plugin);
+        Logger.getLogger("SecureAuth").addHandler(handler);
+
+        List<UUID> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(UUID.randomUUID());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for (UUID account : accounts) {
+                    databaseManager.setPassword(account, "hash-" + thread);
+                    databaseManager.set2FASecret(account, "secret-" + thread);
+                    databaseManager.set2FABackupCodes(account, List.of("code-" + thread));
+                    databaseManager.setSecurityQuestion(account, "question-" + thread, "answer-" + thread);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(problems.isEmpty(), () -> "Writes logged problems: " + problems.get(0).getMessage());
+        for (String table : List.of("secureauth_passwords", "secureauth_2fa", "secureauth_recovery")) {
+            assertEquals(ACCOUNTS, count("SELECT COUNT(*) FROM " + table), table + " rows");
+            assertEquals(ACCOUNTS, count("SELECT COUNT(DISTINCT uuid) FROM " + table), table + " accounts");
+        }
+        for (UUID account : accounts) {
+            assertTrue(databaseManager.getPasswordHash(account).startsWith("hash-"));
+            assertTrue(databaseManager.get2FASecret(account).startsWith("secret-"));
+        }
+    }
+
+    private int count(String sql) throws Exception {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.excrele.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MigrationJobTest {
+    @TempDir
+    Path folder;
+
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    private HikariDataSource sqlite(String name) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + folder.resolve(name).toAbsolutePath());
+        config.setMaximumPoolSize(1);
+        HikariDataSource dataSource = new HikariDataSource(config);
+        dataSources.add(dataSource);
+        return dataSource;
+    }
+
+    /**
+     * Store accounts; every second one has 2FA and every third a security question
+     *
+     * @return the rows stored
+     */
+    private static long seed(HikariDataSource dataSource, String type, int accounts) throws SQLException {
+        long rows = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseManager.createTables(conn, type);
+            conn.setAutoCommit(false);
+            for (MigrationJob.Table table : MigrationJob.Table.values()) {
+                String[] columns = table.getColumns();
+                try (PreparedStatement stmt = conn.prepareStatement(DatabaseManager.upsertSql(type,
+                        table.getTableName(), columns, columns[1]))) {
+                    int every = table.ordinal() + 1;
+                    for (int i = 0; i < accounts; i += every) {
+                        stmt.setBytes(1, Uuids.toBytes(UUID.nameUUIDFromBytes(("account-" + i).getBytes())));
+                        for (int c = 1; c < columns.length; c++) {
+                            if (columns[c].endsWith("_at")) {
+                                stmt.setLong(c + 1, 1_700_000_000_000L + i);
+                            } else {
+                                stmt.setString(c + 1, columns[c] + "-" + i);
+                            }
+                        }
+                        stmt.addBatch();
+                        rows++;
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            conn.commit();
+        }
+        return rows;
+    }
+
+    private static long count(HikariDataSource dataSource, String table) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM " + table);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private MigrationJob job(HikariDataSource source, String targetType, HikariDataSource target,
+                             int chunkSize, int parallelism, int maxRowsPerSecond) {
+        return new MigrationJob("sqlite", null, source, targetType, target,
+            folder.resolve("migration.checkpoint").toFile(), chunkSize, parallelism, maxRowsPerSecond);
+    }
+
+    private static void assertVerified(MigrationJob job) throws Exception {
+        for (MigrationJob.Verification result : job.verify()) {
+            assertTrue(result.matches(), result.getTable() + ": " + result.getSourceRows() + " -> " + result.getTargetRows());
+        }
+    }
+
+    @Test
+    void copiesAndVerifiesEveryTable() throws Exception {
+        HikariDataSource source = sqlite("source.db");
+        HikariDataSource target = sqlite("target.db");
+        long rows = seed(source, "sqlite", 1000);
+        MigrationJob job = job(source, "sqlite", target, 64, 4, 0);
+
+        assertEquals(1, job.getParallelism()); // SQLite has a single writer
+        assertEquals(rows, job.copy(null, (table, copied, total) -> { }));
+
+        assertVerified(job);
+        assertEquals(1000, count(target, "secureauth_passwords"));
+        assertEquals(500, count(target, "secureauth_2fa"));
+        assertEquals(334, count(target, "secureauth_recovery"));
+    }
+
+    @Test
+    void resumesAfterAnInterruptedRun() throws Exception {
+        HikariDataSource source = sqlite("source.db");
+        HikariDataSource target = sqlite("target.db");
+        long rows = seed(source, "sqlite", 1000);
+        MigrationJob interrupted = job(source, "sqlite", target, 64, 1, 0);
+
+        assertThrows(IllegalStateException.class, () -> interrupted.copy(null, (table, copied, total) -> {
+            if (table == MigrationJob.Table.TWO_FACTOR && copied >= 128) {
+                throw new IllegalStateException("Server stopped");
+            }
+        }));
+
+        MigrationJob resumed = job(source, "sqlite", target, 64, 1, 0);
+        Properties checkpoint = resumed.loadCheckpoint();
+        assertNotNull(checkpoint);
+        assertEquals("TWO_FACTOR", checkpoint.getProperty("table"));
+
+        AtomicLong firstReport = new AtomicLong(-1);
+        long copied = resumed.copy(checkpoint, (table, done, total) -> firstReport.compareAndSet(-1, done));
+
+        assertEquals(rows, copied);
+        assertEquals(128, firstReport.get()); // Progress starts from the rows already copied
+        assertVerified(resumed);
+    }
+
+    @Test
+    void throttlesWrites() throws Exception {
+        HikariDataSource source = sqlite("source.db");
+        HikariDataSource target = sqlite("target.db");
+        long rows = seed(source, "sqlite", 300); // 550 rows at 1000 rows/s
+        MigrationJob job = job(source, "sqlite", target, 50, 1, 1000);
+
+        long started = System.nanoTime();
+        job.copy(null, (table, copied, total) -> { });
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        assertTrue(elapsedMs >= (rows - 50) * 1000 / 1000, "copied " + rows + " rows in " + elapsedMs + "ms");
+        assertVerified(job);
+    }
+
+    /**
+     * Times a SQLite-to-MySQL copy sequentially and with parallel uuid ranges. Needs a
+     * MySQL server whose database may be emptied, e.g.
+     * mvn test -Dtest=MigrationJobTest -Dsecureauth.test.mysql-url=jdbc:mysql://localhost/secureauth_test
+     *     -Dsecureauth.test.mysql-user=root -Dsecureauth.test.mysql-password=secret
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "secureauth.test.mysql-url", matches = ".+")
+    void parallelRangesSpeedUpCopiesToMysql() throws Exception {
+        HikariDataSource source = sqlite("source.db");
+        long rows = seed(source, "sqlite", 200_000);
+        source.getHikariConfigMXBean().setMaximumPoolSize(8);
+
+        double sequential = timeMysqlCopy(source, rows, 1);
+        double parallel = timeMysqlCopy(source, rows, 8);
+
+        System.out.printf("Copied %d rows: 1 worker %.0f rows/s, 8 workers %.0f rows/s (%.1fx)%n",
+            rows, sequential, parallel, parallel / sequential);
+    }
+
+    private double timeMysqlCopy(HikariDataSource source, long rows, int parallelism) throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(System.getProperty("secureauth.test.mysql-url"));
+        config.setUsername(System.getProperty("secureauth.test.mysql-user", "root"));
+        config.setPassword(System.getProperty("secureauth.test.mysql-password", ""));
+        config.setMaximumPoolSize(parallelism);
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        try (HikariDataSource target = new HikariDataSource(config)) {
+            try (Connection conn = target.getConnection(); Statement stmt = conn.createStatement()) {
+                for (MigrationJob.Table table : MigrationJob.Table.values()) {
+                    stmt.execute("DROP TABLE IF EXISTS " + table.getTableName());
+                }
+                stmt.execute("DROP TABLE IF EXISTS " + SchemaMigrator.VERSION_TABLE);
+            }
+            new File(folder.toFile(), "migration.checkpoint").delete();
+
+            MigrationJob job = job(source, "mysql", target, 1000, parallelism, 0);
+            assertEquals(parallelism, job.getParallelism());
+            long started = System.nanoTime();
+            assertEquals(rows, job.copy(null, (table, copied, total) -> { }));
+            double seconds = (System.nanoTime() - started) / 1e9;
+            assertVerified(job);
+            return rows / seconds;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.excrele.database;
+
+import com.excrele.TestServer;
+import com.excrele.cache.CacheManager;
+import com.excrele.config.ConfigManager;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class MigrationToolTest {
+    @TempDir
+    Path dataFolder;
+
+    private DatabaseManager databaseManager;
+
+    @AfterEach
+    void tearDown() {
+        databaseManager.close();
+    }
+
+    @Test
+    void migratingIntoTheActiveDatabaseRefreshesItsCaches() throws Exception {
+        JavaPlugin plugin = TestServer.plugin(dataFolder,
+            "database.type", "sqlite",
+            "database.account-filter.enabled", true);
+        ConfigManager config = new ConfigManager(plugin);
+        databaseManager = new DatabaseManager(config, new CacheManager(config, plugin), plugin);
+        AccountMembership membership = databaseManager.getAccountMembership();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!membership.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        UUID account = UUID.randomUUID();
+        FileAccountStore store = new FileAccountStore(dataFolder.resolve("passwords.txt").toFile(), false, 0.5, plugin);
+        store.open();
+        store.put(account, "hash");
+        store.close();
+        assertFalse(databaseManager.hasPassword(account)); // Remembered as unknown
+
+        assertTrue(new MigrationTool(config, plugin, databaseManager).migrate("file", "sqlite", true, mock(CommandSender.class)));
+
+        deadline = System.currentTimeMillis() + 10_000;
+        while (!databaseManager.hasPassword(account) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("hash", databaseManager.getPasswordHash(account));
+    }
+}
@@ -0,0 +1,201 @@
+package com.excrele.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigratorTest {
+    @TempDir
+    Path folder;
+
+    private Connection conn;
+
+    @BeforeEach
+    void open() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite:" + folder.resolve("secureauth.db").toAbsolutePath());
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        conn.close();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * The tables as plugin versions before schema versioning created them
+     */
+    private List<UUID> createLegacyTables(int accounts) throws SQLException {
+        execute("CREATE TABLE secureauth_passwords (uuid VARCHAR(36) PRIMARY KEY, password_hash TEXT NOT NULL, " +
+            "created_at BIGINT NOT NULL, last_changed BIGINT NOT NULL)");
+        execute("CREATE TABLE secureauth_2fa (uuid VARCHAR(36) PRIMARY KEY, secret_key TEXT NOT NULL, " +
+            "backup_codes TEXT, enabled_at BIGINT NOT NULL)");
+        execute("CREATE TABLE secureauth_recovery (uuid VARCHAR(36) PRIMARY KEY, security_question TEXT, " +
+            "security_answer TEXT)");
+
+        List<UUID> ids = new ArrayList<>();
+        conn.setAutoCommit(false);
+        try (PreparedStatement passwords = conn.prepareStatement("INSERT INTO secureauth_passwords VALUES (?, ?, ?, ?)");
+             PreparedStatement twoFactor = conn.prepareStatement("INSERT INTO secureauth_2fa VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < accounts; i++) {
+                UUID id = UUID.randomUUID();
+                ids.add(id);
+                passwords.setString(1, id.toString());
+                passwords.setString(2, "hash-" + i);
+                passwords.setLong(3, i);
+                passwords.setLong(4, i);
+                passwords.addBatch();
+                if (i % 10 == 0) {
+                    twoFactor.setString(1, id.toString());
+                    twoFactor.setString(2, "secret-" + i);
+                    twoFactor.setString(3, "a,b");
+                    twoFactor.setLong(4, i);
+                    twoFactor.addBatch();
+                }
+            }
+            passwords.executeBatch();
+            twoFactor.executeBatch();
+        }
+        execute("INSERT INTO secureauth_passwords VALUES ('not-a-uuid', 'hash', 0, 0)");
+        conn.commit();
+        conn.setAutoCommit(true);
+        return ids;
+    }
+
+    private String passwordHash(UUID id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT password_hash FROM secureauth_passwords WHERE uuid = ?")) {
+            stmt.setBytes(1, Uuids.toBytes(id));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    @Test
+    void createsAFreshDatabaseAtTheCurrentVersion() throws SQLException {
+        List<String> applied = SchemaMigrator.migrate(conn, "sqlite");
+
+        assertEquals(SchemaMigrator.CURRENT_VERSION, applied.size());
+        assertEquals(SchemaMigrator.CURRENT_VERSION, SchemaMigrator.currentVersion(conn));
+        assertTrue(SchemaMigrator.migrate(conn, "sqlite").isEmpty());
+    }
+
+    @Test
+    void convertsLegacyStringKeysToBinary() throws SQLException {
+        List<UUID> ids = createLegacyTables(1000);
+
+        SchemaMigrator.migrate(conn, "sqlite");
+
+        assertEquals(1000, queryLong("SELECT COUNT(*) FROM secureauth_passwords")); // The malformed key is dropped
+        assertEquals(100, queryLong("SELECT COUNT(*) FROM secureauth_2fa"));
+        assertEquals(1000, queryLong("SELECT COUNT(*) FROM secureauth_passwords WHERE LENGTH(uuid) = 16"));
+        assertEquals("hash-0", passwordHash(ids.get(0)));
+        assertEquals("hash-999", passwordHash(ids.get(999)));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM sqlite_master WHERE name = 'idx_secureauth_passwords_last_changed'"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM sqlite_master WHERE name = 'idx_secureauth_2fa_enabled_at'"));
+    }
+
+    @Test
+    void resumesAfterACrashPartWayThrough() throws SQLException {
+        List<UUID> ids = createLegacyTables(100);
+        SchemaMigrator.migrate(conn, "sqlite");
+        // As if the server stopped after converting the passwords table but before recording it
+        execute("DELETE FROM " + SchemaMigrator.VERSION_TABLE + " WHERE version >= 2");
+        execute("CREATE TABLE secureauth_passwords_old (uuid VARCHAR(36) PRIMARY KEY)");
+        execute("CREATE TABLE secureauth_2fa_v2 (uuid BLOB PRIMARY KEY)");
+
+        List<String> applied = SchemaMigrator.migrate(conn, "sqlite");
+
+        assertEquals(2, applied.size());
+        assertFalse(tableExists("secureauth_passwords_old"));
+        assertFalse(tableExists("secureauth_2fa_v2"));
+        assertEquals("hash-42", passwordHash(ids.get(42)));
+        assertEquals(SchemaMigrator.CURRENT_VERSION, SchemaMigrator.currentVersion(conn));
+    }
+
+    @Test
+    void refusesANewerSchema() throws SQLException {
+        SchemaMigrator.migrate(conn, "sqlite");
+        execute("INSERT INTO " + SchemaMigrator.VERSION_TABLE + " VALUES (" + (SchemaMigrator.CURRENT_VERSION + 1) +
+            ", 'From a later plugin version', 0)");
+
+        assertThrows(SQLException.class, () -> SchemaMigrator.migrate(conn, "sqlite"));
+    }
+
+    /**
+     * The database size and point-lookup time for 20k accounts with string keys and
+     * with binary keys
+     */
+    @Test
+    void binaryKeysShrinkTheDatabase() throws SQLException {
+        List<UUID> ids = createLegacyTables(20_000);
+        execute("VACUUM");
+        long stringBytes = queryLong("PRAGMA page_count") * queryLong("PRAGMA page_size");
+        long stringNanos = timeLookups(ids, id -> id.toString().getBytes());
+
+        SchemaMigrator.migrate(conn, "sqlite");
+        execute("DROP INDEX idx_secureauth_passwords_last_changed"); // Compare the key b-trees alone
+        execute("VACUUM");
+        long binaryBytes = queryLong("PRAGMA page_count") * queryLong("PRAGMA page_size");
+        long binaryNanos = timeLookups(ids, Uuids::toBytes);
+
+        System.out.printf("20000 accounts: string keys %d KiB, %.1fus/lookup; binary keys %d KiB, %.1fus/lookup%n",
+            stringBytes / 1024, stringNanos / 1000.0 / ids.size(), binaryBytes / 1024, binaryNanos / 1000.0 / ids.size());
+        assertTrue(binaryBytes < stringBytes, binaryBytes + " >= " + stringBytes);
+    }
+
+    private long timeLookups(List<UUID> ids, Function<UUID, byte[]> key) throws SQLException {
+        long started = System.nanoTime();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT password_hash FROM secureauth_passwords WHERE uuid = ?")) {
+            for (UUID id : ids) {
+                byte[] bytes = key.apply(id);
+                if (bytes.length == 16) {
+                    stmt.setBytes(1, bytes);
+                } else {
+                    stmt.setString(1, new String(bytes));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertTrue(rs.next());
+                }
+            }
+        }
+        return System.nanoTime() - started;
+    }
+}
@@ -0,0 +1,119 @@
+package com.excrele.database;
+
+import com.excrele.TestServer;
+import com.excrele.cache.CacheManager;
+import com.excrele.config.ConfigManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Concurrent logins against the real DatabaseManager: eight threads look up password
+ * hashes of random accounts while one thread changes a password every 5ms (about 200
+ * writes a second). Compares WAL with its read pool and single writer against the
+ * rollback journal with one shared connection. The account cache is sized to one
+ * entry so every lookup queries SQLite.
+ *
+ * Run with: mvn -P benchmark test -Dbenchmark=SqliteLoginBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-XX:+EnableDynamicAgentLoading")
+public class SqliteLoginBenchmark {
+    private static final int ACCOUNTS = 20_000;
+
+    @Param({"true", "false"})
+    public boolean wal;
+
+    private Path dataFolder;
+    private DatabaseManager databaseManager;
+    private UUID[] accounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = Files.createTempDirectory("secureauth-benchmark");
+        JavaPlugin plugin = TestServer.plugin(dataFolder,
+            "database.type", "sqlite",
+            "database.sqlite.wal", wal,
+            "database.cache.maximum-size", 1,
+            "database.account-filter.enabled", false);
+        ConfigManager config = new ConfigManager(plugin);
+        databaseManager = new DatabaseManager(config, new CacheManager(config, plugin), plugin);
+
+        accounts = new UUID[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = UUID.randomUUID();
+        }
+        String[] columns = MigrationJob.Table.PASSWORDS.getColumns();
+        String sql = DatabaseManager.upsertSql("sqlite", MigrationJob.Table.PASSWORDS.getTableName(), columns, columns[1]);
+        databaseManager.executeWrite(conn -> {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (UUID account : accounts) {
+                    stmt.setBytes(1, Uuids.toBytes(account));
+                    stmt.setString(2, "$2a$10$" + account);
+                    stmt.setLong(3, 0);
+                    stmt.setLong(4, 0);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        databaseManager.close();
+        try (Stream<Path> files = Files.walk(dataFolder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private UUID randomAccount() {
+        return accounts[ThreadLocalRandom.current().nextInt(ACCOUNTS)];
+    }
+
+    @Benchmark
+    @Group("login")
+    @GroupThreads(8)
+    public String lookup() {
+        return databaseManager.getPasswordHash(randomAccount());
+    }
+
+    @Benchmark
+    @Group("login")
+    @GroupThreads(1)
+    public void changePassword() throws InterruptedException {
+        databaseManager.setPassword(randomAccount(), "$2a$10$changed");
+        Thread.sleep(5);
+    }
+}
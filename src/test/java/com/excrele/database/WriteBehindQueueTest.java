@@ -0,0 +1,183 @@
+package com.excrele.database;
+
+import com.excrele.TestServer;
+import com.excrele.cache.CacheManager;
+import com.excrele.config.ConfigManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+    private static final long NEVER = 3_600_000;
+
+    @TempDir
+    Path dataFolder;
+
+    private DatabaseManager databaseManager;
+
+    @AfterEach
+    void tearDown() {
+        databaseManager.close();
+    }
+
+    private void open(int batchSize) {
+        JavaPlugin plugin = TestServer.plugin(dataFolder,
+            "database.type", "sqlite",
+            "database.write-behind.enabled", true,
+            "database.write-behind.flush-interval-ms", NEVER,
+            "database.write-behind.batch-size", batchSize);
+        ConfigManager config = new ConfigManager(plugin);
+        databaseManager = new DatabaseManager(config, new CacheManager(config, plugin), plugin);
+    }
+
+    @Test
+    void repeatedWritesToAnAccountCoalesce() throws Exception {
+        open(500);
+        UUID account = UUID.randomUUID();
+
+        databaseManager.setPassword(account, "first");
+        databaseManager.setPassword(account, "second");
+        databaseManager.setPassword(account, "third");
+        databaseManager.set2FASecret(account, "secret");
+        databaseManager.delete2FASecret(account);
+
+        assertEquals(2, databaseManager.getPendingWrites()); // The last password and the 2FA deletion
+        assertNull(storedHash(account));
+
+        databaseManager.drainWrites();
+
+        assertEquals(0, databaseManager.getPendingWrites());
+        assertEquals("third", storedHash(account));
+        assertEquals(0, count("SELECT COUNT(*) FROM secureauth_2fa"));
+    }
+
+    @Test
+    void queuedWritesAreReadBeforeTheyAreFlushed() {
+        open(500);
+        UUID account = UUID.randomUUID();
+
+        databaseManager.setPassword(account, "hash");
+        databaseManager.set2FABackupCodes(account, List.of("a", "b"));
+
+        assertTrue(databaseManager.hasPassword(account));
+        assertEquals("hash", databaseManager.getPasswordHash(account));
+        assertEquals(List.of("a", "b"), databaseManager.get2FABackupCodes(account));
+
+        databaseManager.drainWrites();
+
+        assertEquals("hash", databaseManager.getPasswordHash(account));
+        assertEquals(List.of("a", "b"), databaseManager.get2FABackupCodes(account));
+    }
+
+    @Test
+    void fullBatchFlushesWithoutWaitingForTheInterval() throws Exception {
+        open(3);
+        for (int i = 0; i < 3; i++) {
+            databaseManager.setPassword(UUID.randomUUID(), "hash-" + i);
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (databaseManager.getPendingWrites() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, databaseManager.getPendingWrites());
+        assertEquals(3, count("SELECT COUNT(*) FROM secureauth_passwords"));
+    }
+
+    @Test
+    void closeFlushesWhatIsQueued() throws Exception {
+        open(500);
+        UUID account = UUID.randomUUID();
+        databaseManager.setPassword(account, "hash");
+
+        databaseManager.close();
+        open(500);
+
+        assertEquals("hash", storedHash(account));
+        assertFalse(databaseManager.getPendingWrites() > 0);
+    }
+
+    @Test
+    void aRejectedAccountDoesNotHoldBackTheOthers() throws Exception {
+        open(500);
+        List<LogRecord> severe = new CopyOnWriteArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.SEVERE) {
+                    severe.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger("SecureAuth");
+        logger.addHandler(handler);
+        try {
+            UUID rejected = UUID.randomUUID();
+            UUID account = UUID.randomUUID();
+            databaseManager.setPassword(rejected, null); // Violates NOT NULL
+            databaseManager.setPassword(account, "hash");
+
+            databaseManager.drainWrites();
+
+            assertEquals("hash", storedHash(account));
+            assertEquals(1, databaseManager.getPendingWrites());
+
+            for (int attempt = 1; attempt < WriteBehindQueue.MAX_ATTEMPTS; attempt++) {
+                databaseManager.drainWrites();
+            }
+
+            assertEquals(0, databaseManager.getPendingWrites());
+            assertNull(storedHash(rejected));
+            assertEquals(1, severe.size());
+            assertTrue(severe.get(0).getMessage().contains(rejected.toString()));
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+
+    private String storedHash(UUID account) throws Exception {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT password_hash FROM secureauth_passwords WHERE uuid = ?")) {
+            stmt.setBytes(1, Uuids.toBytes(account));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private int count(String sql) throws Exception {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
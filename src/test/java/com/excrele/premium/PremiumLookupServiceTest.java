@@ -0,0 +1,235 @@
+package com.excrele.premium;
+
+import com.excrele.TestServer;
+import com.excrele.cache.CacheManager;
+import com.excrele.config.ConfigManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the premium lookups against a local stub of the Mojang profile API, where
+ * every name starting with "p" is premium.
+ */
+class PremiumLookupServiceTest {
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]*)\"");
+
+    @TempDir
+    Path dataFolder;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private final AtomicInteger singleRequests = new AtomicInteger();
+    private final AtomicInteger bulkRequests = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private PremiumLookupService service;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/profiles/", exchange -> {
+            singleRequests.incrementAndGet();
+            String name = exchange.getRequestURI().getPath().substring("/profiles/".length());
+            respond(exchange, name.startsWith("p") ? 200 : 404,
+                name.startsWith("p") ? "{\"id\":\"0\",\"name\":\"" + name + "\"}" : "");
+        });
+        server.createContext("/bulk", exchange -> {
+            bulkRequests.incrementAndGet();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            StringBuilder profiles = new StringBuilder("[");
+            Matcher matcher = QUOTED.matcher(body);
+            while (matcher.find()) {
+                if (matcher.group(1).startsWith("p")) {
+                    // The API answers with the account's own capitalisation
+                    profiles.append(profiles.length() == 1 ? "" : ",")
+                        .append("{\"id\":\"0\",\"name\":\"").append(matcher.group(1).toUpperCase()).append("\"}");
+                }
+            }
+            respond(exchange, 200, profiles.append(']').toString());
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        int running = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(running, Math::max);
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrent.decrementAndGet();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private PremiumLookupService service(boolean batching, int batchSize, int maxConcurrentRequests) {
+        return service(batching, batchSize, 25, maxConcurrentRequests, "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    private PremiumLookupService service(boolean batching, int batchSize, long batchWindowMs, int maxConcurrentRequests,
+                                         String baseUrl) {
+        JavaPlugin plugin = TestServer.plugin(dataFolder,
+            "premium.api-url", baseUrl + "/profiles/",
+            "premium.batch.api-url", baseUrl + "/bulk",
+            "premium.batch.enabled", batching,
+            "premium.batch.size", batchSize,
+            "premium.batch.window-ms", batchWindowMs,
+            "premium.max-concurrent-requests", maxConcurrentRequests,
+            "premium.resolution-order", List.of("cache", "api"),
+            "premium.cache.persistent", false,
+            "premium.api-timeout-ms", 2000);
+        ConfigManager config = new ConfigManager(plugin);
+        service = new PremiumLookupService(config, new CacheManager(config, plugin), plugin);
+        return service;
+    }
+
+    private static Player player(String name) {
+        Player player = mock(Player.class);
+        when(player.getName()).thenReturn(name);
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        return player;
+    }
+
+    @Test
+    void answersFromTheApiAndThenFromTheCache() throws Exception {
+        PremiumLookupService lookups = service(false, 1, 4);
+
+        assertTrue(lookups.isPremium(player("Premium_One")).get(5, TimeUnit.SECONDS));
+        assertFalse(lookups.isPremium(player("cracked")).get(5, TimeUnit.SECONDS));
+        assertTrue(lookups.isPremium(player("premium_one")).get(5, TimeUnit.SECONDS));
+
+        assertEquals(2, singleRequests.get());
+        assertEquals(2, lookups.getResolvedCount(PremiumSource.API));
+        assertEquals(1, lookups.getResolvedCount(PremiumSource.CACHE));
+    }
+
+    @Test
+    void concurrentLookupsOfANameShareOneRequest() throws Exception {
+        PremiumLookupService lookups = service(false, 1, 4);
+        release = new CountDownLatch(1);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(lookups.isPremium(player("pSameName")));
+        }
+        release.countDown();
+
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, singleRequests.get());
+        assertEquals(1, lookups.getRequestCount());
+    }
+
+    @Test
+    void limitsRequestsInFlight() throws Exception {
+        PremiumLookupService lookups = service(false, 1, 2);
+        release = new CountDownLatch(1);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(lookups.isPremium(player("p" + i)));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (concurrent.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(4, lookups.getQueuedLookups());
+        release.countDown();
+
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, maxConcurrent.get());
+        assertEquals(6, singleRequests.get());
+    }
+
+    @Test
+    void unreachableApiResolvesToTheFailSafeAnswer() throws Exception {
+        int closedPort;
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        PremiumLookupService lookups = service(false, 1, 25, 4, "http://127.0.0.1:" + closedPort);
+
+        assertFalse(lookups.isPremium(player("pSomeone")).get(5, TimeUnit.SECONDS));
+        assertEquals(1, lookups.getResolvedCount(PremiumSource.FAIL_SAFE));
+    }
+
+    @Test
+    void batchesNamesIntoBulkRequests() throws Exception {
+        // Only full batches are sent, however slowly the names arrive
+        PremiumLookupService lookups = service(true, 10, 60_000, 4, "http://127.0.0.1:" + server.getAddress().getPort());
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(lookups.isPremium(player((i % 2 == 0 ? "p" : "c") + i)));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0, results.get(i).get(5, TimeUnit.SECONDS), "name " + i);
+        }
+        assertEquals(10, bulkRequests.get());
+        assertEquals(0, singleRequests.get());
+        assertEquals(100, lookups.getLookupCount());
+        assertEquals(10, lookups.getRequestCount());
+    }
+
+    @Test
+    void partialBatchIsSentWhenTheWindowCloses() throws Exception {
+        PremiumLookupService lookups = service(true, 10, 4);
+
+        CompletableFuture<Boolean> first = lookups.isPremium(player("pFirst"));
+        CompletableFuture<Boolean> second = lookups.isPremium(player("cSecond"));
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, bulkRequests.get());
+    }
+}